@@ -0,0 +1,65 @@
+package io.hellorin.edusearchai.benchmark;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic data shared by the benchmarks, generated from fixed seeds so that runs are comparable.
+ */
+final class BenchmarkData {
+
+    static final int DIMENSION = 1536;
+
+    private static final String[] WORDS = {
+            "energy", "cell", "function", "theorem", "proof", "matrix", "vector", "equation", "history", "river",
+            "language", "protein", "market", "price", "light", "wave", "number", "prime", "graph", "algorithm"
+    };
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * @return A text of sentences of 5 to 24 words, with a paragraph break every 10 sentences
+     */
+    static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 200);
+        int sentences = 0;
+        while (text.length() < length) {
+            int words = 5 + random.nextInt(20);
+            for (int i = 0; i < words; i++) {
+                text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append(++sentences % 10 == 0 ? ".\n\n" : ". ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Fills a repository with documents holding random embeddings and short random contents,
+     * in batches so that the embeddings of a single batch only are held outside the repository.
+     */
+    static void fill(DocumentRepository repository, int rows, long seed) {
+        Random random = new Random(seed);
+        for (int from = 0; from < rows; from += BATCH_SIZE) {
+            List<Document> batch = new ArrayList<>(BATCH_SIZE);
+            for (int row = from; row < Math.min(rows, from + BATCH_SIZE); row++) {
+                batch.add(new Document("doc-" + row, "Document " + row, randomText(random, 200),
+                        randomVector(random, DIMENSION), "source-" + (row / 100) + ".pdf", row));
+            }
+            repository.saveAll(batch);
+        }
+    }
+}
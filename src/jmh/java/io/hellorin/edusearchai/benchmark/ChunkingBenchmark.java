@@ -0,0 +1,42 @@
+package io.hellorin.edusearchai.benchmark;
+
+import io.hellorin.edusearchai.component.CharacterChunker;
+import io.hellorin.edusearchai.component.Chunker;
+import io.hellorin.edusearchai.component.SentenceChunker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking of large extracted texts, with the settings of the default configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class ChunkingBenchmark {
+
+    @Param({"character", "sentence"})
+    private String chunkerType;
+
+    @Param({"1000000", "10000000"})
+    private int textLength;
+
+    private Chunker chunker;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        chunker = "character".equals(chunkerType) ? new CharacterChunker(1000) : new SentenceChunker(300, 40);
+        text = BenchmarkData.randomText(new Random(3), textLength);
+    }
+
+    @Benchmark
+    public int chunk(Blackhole blackhole) {
+        return chunker.chunk(text, true, blackhole::consume);
+    }
+}
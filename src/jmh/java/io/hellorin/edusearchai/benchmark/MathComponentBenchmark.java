@@ -0,0 +1,44 @@
+package io.hellorin.edusearchai.benchmark;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Similarity of two embeddings, with the scalar and the SIMD vector scorers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MathComponentBenchmark {
+
+    @Param({"scalar", "simd"})
+    private String scorer;
+
+    private MathComponent mathComponent;
+    private float[] first;
+    private float[] second;
+
+    @Setup
+    public void setUp() {
+        mathComponent = new MathComponent(scorer);
+        Random random = new Random(42);
+        first = BenchmarkData.randomVector(random, BenchmarkData.DIMENSION);
+        second = BenchmarkData.randomVector(random, BenchmarkData.DIMENSION);
+    }
+
+    @Benchmark
+    public double cosineSimilarity() {
+        return mathComponent.cosineSimilarity(first, second);
+    }
+
+    @Benchmark
+    public double dotProduct() {
+        return mathComponent.dotProduct(first, second);
+    }
+}
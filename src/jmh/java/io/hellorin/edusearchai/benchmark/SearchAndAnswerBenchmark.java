@@ -0,0 +1,100 @@
+package io.hellorin.edusearchai.benchmark;
+
+import io.hellorin.edusearchai.component.AnswerCacheComponent;
+import io.hellorin.edusearchai.component.ContextAssemblyComponent;
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.component.SorryClassifier;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.hellorin.edusearchai.repository.VectorStoreFactory;
+import io.hellorin.edusearchai.service.InDocumentSearchService;
+import io.hellorin.edusearchai.service.RetrievalService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end answer of a question against stub chat and embedding models that answer instantly,
+ * so that the overhead of retrieval, prompt building and the asynchronous flow is measured on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SearchAndAnswerBenchmark {
+
+    private static final int QUERIES = 64;
+    private static final String COURSE_ANSWER = "The answer, as explained in the course. ".repeat(10)
+            + "\nSources: course.pdf";
+
+    @Param({"10000"})
+    private int rows;
+
+    @Param({"hybrid", "vector", "lexical"})
+    private String retrieval;
+
+    @Param({"0"})
+    private int cachedAnswers;
+
+    private InDocumentSearchService searchService;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MathComponent mathComponent = new MathComponent("simd");
+        InMemoryDocumentRepository documentRepository = new InMemoryDocumentRepository(mathComponent,
+                new ParallelScanComponent(), new VectorStoreFactory());
+        InMemoryNotesDocumentRepository notesRepository = new InMemoryNotesDocumentRepository(mathComponent,
+                new ParallelScanComponent(), new VectorStoreFactory());
+        BenchmarkData.fill(documentRepository, rows, 4);
+        BenchmarkData.fill(notesRepository, rows / 10, 5);
+
+        RetrievalService retrievalService = new RetrievalService(null, retrieval, 20, new SimpleMeterRegistry()) {
+            @Override
+            public float[] embedQuery(String query) {
+                return "lexical".equals(retrieval)
+                        ? null
+                        : BenchmarkData.randomVector(new Random(query.hashCode()), BenchmarkData.DIMENSION);
+            }
+        };
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                String answer = prompt.getContents().contains("Sidenotes:") ? "Sidenotes answer" : COURSE_ANSWER;
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+            }
+        };
+        searchService = new InDocumentSearchService(chatModel, retrievalService, new SorryClassifier(),
+                new AnswerCacheComponent(mathComponent, cachedAnswers, 0.95, 3600),
+                new ContextAssemblyComponent(mathComponent, 8, 1500, 0.7, 0.9),
+                documentRepository, notesRepository, 8, 2000, 30000, false, new SimpleMeterRegistry());
+
+        Random random = new Random(6);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = BenchmarkData.randomText(random, 40);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        searchService.shutdown();
+    }
+
+    @Benchmark
+    public String searchAndAnswer() {
+        return searchService.searchAndAnswer(queries[next++ & (QUERIES - 1)]);
+    }
+}
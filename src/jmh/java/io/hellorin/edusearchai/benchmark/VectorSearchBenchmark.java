@@ -0,0 +1,75 @@
+package io.hellorin.edusearchai.benchmark;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.repository.VectorStoreFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of an in-memory repository of synthetic 1536 dimension embeddings, by similarity and by BM25.
+ * Scans use the parallel scan component with the default threshold of the application, so the larger
+ * repositories are scanned in parallel as in production.
+ * The store is reserved for the number of rows, so it is never copied while growing: one million unquantized
+ * embeddings take 6.1 GB of heap, plus about 1 GB for the contents and the lexical index.
+ * Pass {@code -p rows=10000,100000} on machines with less than 10 GB of free memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx10g"})
+public class VectorSearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"none", "int8"})
+    private String quantization;
+
+    private ParallelScanComponent parallelScanComponent;
+    private InMemoryDocumentRepository repository;
+    private float[][] queries;
+    private String[] textQueries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parallelScanComponent = new ParallelScanComponent(20_000, 0);
+        repository = new InMemoryDocumentRepository(new MathComponent("simd"), parallelScanComponent,
+                new VectorStoreFactory(quantization, 0, 96, 4096));
+        repository.reserve(rows);
+        BenchmarkData.fill(repository, rows, 1);
+
+        Random random = new Random(2);
+        queries = new float[QUERIES][];
+        textQueries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = BenchmarkData.randomVector(random, BenchmarkData.DIMENSION);
+            textQueries[i] = BenchmarkData.randomText(random, 30);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelScanComponent.shutdown();
+    }
+
+    @Benchmark
+    public List<Document> findSimilarDocuments() {
+        return repository.findSimilarDocuments(queries[next++ & (QUERIES - 1)], 3);
+    }
+
+    @Benchmark
+    public List<Document> findLexicalDocuments() {
+        return repository.findLexicalDocuments(textQueries[next++ & (QUERIES - 1)], 3);
+    }
+}
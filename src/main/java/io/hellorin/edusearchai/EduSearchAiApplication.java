@@ -1,12 +1,21 @@
 package io.hellorin.edusearchai;
 
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.repository.HnswDocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
 import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.hellorin.edusearchai.repository.VectorStoreFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import io.hellorin.edusearchai.config.DocumentLoader;
-import io.hellorin.edusearchai.service.PDFProcessingService;
-import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.service.DocumentIngestionService;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+
+import java.util.function.Supplier;
 
 @SpringBootApplication
 public class EduSearchAiApplication {
@@ -14,10 +23,64 @@ public class EduSearchAiApplication {
         SpringApplication.run(EduSearchAiApplication.class, args);
     }
 
+    /**
+     * Repository of the course documents, see {@link #createRepository}.
+     */
+    @Bean
+    public DocumentRepository documentRepository(MathComponent mathComponent,
+                                                 ParallelScanComponent parallelScanComponent,
+                                                 VectorStoreFactory vectorStoreFactory,
+                                                 @Value("${app.search.index:exact}") String index,
+                                                 @Value("${app.search.index.hnsw.m:16}") int m,
+                                                 @Value("${app.search.index.hnsw.ef-construction:200}") int efConstruction,
+                                                 @Value("${app.search.index.hnsw.ef-search:100}") int efSearch) {
+        return createRepository(index, () -> new InMemoryDocumentRepository(mathComponent, parallelScanComponent,
+                vectorStoreFactory), mathComponent, parallelScanComponent, m, efConstruction, efSearch);
+    }
+
+    /**
+     * Repository of the notes, see {@link #createRepository}.
+     */
+    @Bean
+    public DocumentRepository notesDocumentRepository(MathComponent mathComponent,
+                                                      ParallelScanComponent parallelScanComponent,
+                                                      VectorStoreFactory vectorStoreFactory,
+                                                      @Value("${app.search.index:exact}") String index,
+                                                      @Value("${app.search.index.hnsw.m:16}") int m,
+                                                      @Value("${app.search.index.hnsw.ef-construction:200}") int efConstruction,
+                                                      @Value("${app.search.index.hnsw.ef-search:100}") int efSearch) {
+        return createRepository(index, () -> new InMemoryNotesDocumentRepository(mathComponent, parallelScanComponent,
+                vectorStoreFactory), mathComponent, parallelScanComponent, m, efConstruction, efSearch);
+    }
+
+    /**
+     * Creates a repository according to the configured similarity search index.
+     *
+     * @param index "exact" to scan every stored vector, see the in-memory repositories, or "hnsw" to search
+     *              an HNSW graph over full precision vectors, ignoring the quantization
+     * @param exact Creates the in-memory repository used by the exact index
+     * @throws IllegalArgumentException if the index is unknown
+     */
+    static DocumentRepository createRepository(String index, Supplier<DocumentRepository> exact,
+                                               MathComponent mathComponent, ParallelScanComponent parallelScanComponent,
+                                               int m, int efConstruction, int efSearch) {
+        if ("exact".equalsIgnoreCase(index)) {
+            return exact.get();
+        }
+        if ("hnsw".equalsIgnoreCase(index)) {
+            return new HnswDocumentRepository(mathComponent, parallelScanComponent, m, efConstruction, efSearch);
+        }
+        throw new IllegalArgumentException("Unknown search index: " + index);
+    }
+
     @Bean
-    public DocumentLoader documentLoader(PDFProcessingService pdfProcessingService, 
-                                       InMemoryDocumentRepository documentRepository,
-                                       InMemoryNotesDocumentRepository inMemoryNotesDocumentRepository) {
-        return new DocumentLoader(pdfProcessingService, documentRepository, inMemoryNotesDocumentRepository);
+    public DocumentLoader documentLoader(DocumentIngestionService documentIngestionService,
+                                       @Qualifier("documentRepository") DocumentRepository documentRepository,
+                                       @Qualifier("notesDocumentRepository") DocumentRepository notesDocumentRepository,
+                                       @Value("${app.index.directory:}") String indexDirectory,
+                                       @Value("${app.documents.location:classpath:}") String documentsLocation,
+                                       @Value("${app.documents.watch:false}") boolean watch) {
+        return new DocumentLoader(documentIngestionService, documentRepository, notesDocumentRepository,
+                indexDirectory, documentsLocation, watch);
     }
 } 
\ No newline at end of file
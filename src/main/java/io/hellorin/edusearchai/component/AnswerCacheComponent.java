@@ -0,0 +1,244 @@
+package io.hellorin.edusearchai.component;
+
+import io.hellorin.edusearchai.model.AnswerPart;
+import io.hellorin.edusearchai.model.DocumentFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of answers, so that repeated and near-duplicate questions are answered without calling the chat model.
+ * <ul>
+ *     <li>Exact lookup: questions are keyed by their text, with case and whitespace normalized, and can be
+ *     found before the query embedding is computed.</li>
+ *     <li>Similarity lookup: otherwise, the cached question whose embedding is the most similar to the query
+ *     embedding is used, if their cosine similarity reaches the configured threshold. It is disabled by
+ *     default: embeddings of questions asking different things, such as "What is a prime number?" and
+ *     "What is not a prime number?", commonly exceed a cosine similarity of 0.95, so the threshold must be
+ *     tuned against the questions of the embedding model in use before enabling it.</li>
+ * </ul>
+ * Each answer is valid for the generation of the repositories it was computed from, see
+ * {@link io.hellorin.edusearchai.repository.DocumentRepository#getGeneration()}: any change to the documents
+ * invalidates every answer computed before it. Answers also expire after a time to live, and the least
+ * recently used ones are evicted once the configured size is reached.
+ * Questions asked within a {@link DocumentFilter} scope only share answers with questions of the same scope.
+ * Hits and misses are counted for monitoring.
+ */
+@Component
+public class AnswerCacheComponent {
+
+    private record Key(String question, DocumentFilter scope) {
+    }
+
+    private record Entry(float[] normalizedEmbedding, long generation, long expiresAtNanos, List<AnswerPart> answer) {
+    }
+
+    private final MathComponent mathComponent;
+    private final int maxEntries;
+    private final double similarityThreshold;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<Key, Entry> entries;
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder similarHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries Maximum number of cached answers, 0 to disable the cache
+     * @param similarityThreshold Minimum cosine similarity between two questions to share their answer,
+     *                            above 1 to only use exact lookups
+     * @param ttlSeconds Time after which an answer expires
+     */
+    @Autowired
+    public AnswerCacheComponent(MathComponent mathComponent,
+                                @Value("${app.search.answer-cache.max-entries:1000}") int maxEntries,
+                                @Value("${app.search.answer-cache.similarity-threshold:2.0}") double similarityThreshold,
+                                @Value("${app.search.answer-cache.ttl-seconds:3600}") long ttlSeconds) {
+        this(mathComponent, maxEntries, similarityThreshold, ttlSeconds, System::nanoTime);
+    }
+
+    AnswerCacheComponent(MathComponent mathComponent, int maxEntries, double similarityThreshold, long ttlSeconds,
+                         LongSupplier clock) {
+        this.mathComponent = mathComponent;
+        this.maxEntries = maxEntries;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks the answer to a question up, by its text then, if an embedding is given, by similarity.
+     *
+     * @param query The question
+     * @param queryEmbedding The embedding of the question, null for an exact lookup only
+     * @param generation The current generation of the repositories the answer is computed from
+     * @return The cached answer, or null on a miss
+     */
+    public List<AnswerPart> get(String query, float[] queryEmbedding, long generation) {
+        return get(query, DocumentFilter.ALL, queryEmbedding, generation);
+    }
+
+    /**
+     * Looks the answer to a question asked within a scope up, by its text then, if an embedding is given,
+     * by similarity with the questions of the same scope.
+     *
+     * @param query The question
+     * @param scope The filter of the documents the answer is computed from
+     * @param queryEmbedding The embedding of the question, null for an exact lookup only
+     * @param generation The current generation of the repositories the answer is computed from
+     * @return The cached answer, or null on a miss
+     */
+    public List<AnswerPart> get(String query, DocumentFilter scope, float[] queryEmbedding, long generation) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        Key key = new Key(normalize(query), scope);
+        long now = clock.getAsLong();
+        Key[] keys = null;
+        Entry[] values = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && isValid(entry, generation, now)) {
+                exactHits.increment();
+                return entry.answer();
+            }
+            // Copy the entries so that they are compared to the query without holding the lock
+            if (queryEmbedding != null && similarityThreshold <= 1.0) {
+                keys = new Key[entries.size()];
+                values = new Entry[entries.size()];
+                int i = 0;
+                for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+                    keys[i] = candidate.getKey();
+                    values[i++] = candidate.getValue();
+                }
+            }
+        }
+        if (keys != null) {
+            List<AnswerPart> answer = findSimilar(keys, values, mathComponent.normalize(queryEmbedding), scope,
+                    generation, now);
+            if (answer != null) {
+                similarHits.increment();
+                return answer;
+            }
+        }
+        // Exact lookups made before the embedding is known are not counted, the similarity lookup follows them
+        if (queryEmbedding != null) {
+            misses.increment();
+        }
+        return null;
+    }
+
+    /**
+     * Caches the answer to a question.
+     *
+     * @param query The question
+     * @param queryEmbedding The embedding of the question, null if the answer can only be found by exact lookup
+     * @param generation The generation of the repositories, read before the answer was computed
+     * @param answer The answer
+     */
+    public void put(String query, float[] queryEmbedding, long generation, List<AnswerPart> answer) {
+        put(query, DocumentFilter.ALL, queryEmbedding, generation, answer);
+    }
+
+    /**
+     * Caches the answer to a question asked within a scope.
+     *
+     * @param query The question
+     * @param scope The filter of the documents the answer was computed from
+     * @param queryEmbedding The embedding of the question, null if the answer can only be found by exact lookup
+     * @param generation The generation of the repositories, read before the answer was computed
+     * @param answer The answer
+     */
+    public void put(String query, DocumentFilter scope, float[] queryEmbedding, long generation,
+                    List<AnswerPart> answer) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        float[] normalizedEmbedding = queryEmbedding == null ? null : mathComponent.normalize(queryEmbedding);
+        Entry entry = new Entry(normalizedEmbedding, generation, clock.getAsLong() + ttlNanos, List.copyOf(answer));
+        synchronized (entries) {
+            entries.put(new Key(normalize(query), scope), entry);
+        }
+    }
+
+    public long getExactHits() {
+        return exactHits.sum();
+    }
+
+    public long getSimilarHits() {
+        return similarHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of cached answers, including expired and invalidated ones not removed yet
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Scans a copy of the cached questions of a scope for the one most similar to the query, then removes the
+     * stale entries found on the way unless they were replaced meanwhile.
+     */
+    private List<AnswerPart> findSimilar(Key[] keys, Entry[] values, float[] normalizedQuery, DocumentFilter scope,
+                                         long generation, long now) {
+        int best = -1;
+        double bestSimilarity = similarityThreshold;
+        List<Integer> stale = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            Entry entry = values[i];
+            if (!isValid(entry, generation, now)) {
+                stale.add(i);
+                continue;
+            }
+            if (!keys[i].scope().equals(scope) || entry.normalizedEmbedding() == null
+                    || entry.normalizedEmbedding().length != normalizedQuery.length) {
+                continue;
+            }
+            double similarity = mathComponent.dotProduct(normalizedQuery, entry.normalizedEmbedding());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        synchronized (entries) {
+            for (int i : stale) {
+                entries.remove(keys[i], values[i]);
+            }
+            // Look the best entry up again to mark it as recently used
+            if (best >= 0) {
+                entries.get(keys[best]);
+            }
+        }
+        return best < 0 ? null : values[best].answer();
+    }
+
+    private static boolean isValid(Entry entry, long generation, long now) {
+        return entry.generation() == generation && now - entry.expiresAtNanos() < 0;
+    }
+
+    private static String normalize(String query) {
+        return query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,46 @@
+package io.hellorin.edusearchai.component;
+
+import java.util.function.Consumer;
+
+/**
+ * {@link Chunker} cutting the text every chunk size characters, moved back to the previous whitespace
+ * so that words are not broken. Chunks do not overlap and ignore sentence boundaries.
+ */
+public class CharacterChunker implements Chunker {
+
+    private final int chunkSize;
+
+    /**
+     * @param chunkSize The maximum size of each chunk, in characters
+     */
+    public CharacterChunker(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int chunk(CharSequence text, boolean last, Consumer<String> chunkConsumer) {
+        int start = 0;
+        while (start < text.length() && (last || text.length() - start > chunkSize)) {
+            int end = Math.min(start + chunkSize, text.length());
+            if (end < text.length()) {
+                // Try to find a good breaking point (space or newline)
+                while (end > start && !Character.isWhitespace(text.charAt(end - 1))) {
+                    end--;
+                }
+                if (end == start) {
+                    // If no good breaking point found, just cut at chunkSize
+                    end = Math.min(start + chunkSize, text.length());
+                }
+            }
+            String chunk = text.subSequence(start, end).toString().trim();
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+            }
+            start = end;
+        }
+        return start;
+    }
+}
@@ -0,0 +1,39 @@
+package io.hellorin.edusearchai.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits extracted text into the chunks that are embedded and searched.
+ * Implementations only differ in where they break the text, so they are interchangeable
+ * and selected once at startup by {@link io.hellorin.edusearchai.service.PDFProcessingService}.
+ * <p>
+ * Text can be chunked incrementally as it is extracted: a chunk is only emitted once enough of the
+ * following text is known for its end to be final, and the caller keeps the rest for the next call.
+ */
+public interface Chunker {
+
+    /**
+     * Splits the beginning of a text into chunks.
+     *
+     * @param text The text to split
+     * @param last Whether the text is complete; if not, the text after the last emitted chunk is left
+     *             for a later call, once more text is appended to it
+     * @param chunkConsumer Receives the non-blank chunks, in order
+     * @return Index of the first character needed by the next call, the text before it can be discarded
+     */
+    int chunk(CharSequence text, boolean last, Consumer<String> chunkConsumer);
+
+    /**
+     * Splits a complete text into chunks.
+     *
+     * @param text The text to split
+     * @return List of text chunks
+     */
+    default List<String> chunk(CharSequence text) {
+        List<String> chunks = new ArrayList<>();
+        chunk(text, true, chunks::add);
+        return chunks;
+    }
+}
@@ -0,0 +1,202 @@
+package io.hellorin.edusearchai.component;
+
+import io.hellorin.edusearchai.model.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Assembles the retrieved documents into the context of a prompt.
+ * <ul>
+ *     <li>Documents are re-ranked by Maximal Marginal Relevance: each pick maximizes its relevance to the query
+ *     minus its similarity to the documents already picked, so the context covers more of the question than
+ *     overlapping chunks of the same passage would.</li>
+ *     <li>Near-duplicates of a picked document are dropped, e.g. neighbouring chunks sharing most of their text
+ *     or the same passage found in two PDFs.</li>
+ *     <li>Documents are added in that order as long as they fit the token budget, estimated by the
+ *     {@link TokenEstimator}. The first document is truncated rather than dropped if it is too long alone.</li>
+ * </ul>
+ * Relevance is the cosine similarity to the query embedding when every document has an embedding, otherwise
+ * the retrieval rank. Two documents are compared by the cosine similarity of their embeddings when both have
+ * one, otherwise by the Jaccard similarity of their terms.
+ */
+@Component
+public class ContextAssemblyComponent {
+
+    private static final String TITLE = "Title: ";
+    private static final String SOURCE = "\nSource: ";
+    private static final String CONTENT = "\nContent: ";
+    private static final String SEPARATOR = "\n\n";
+
+    private final MathComponent mathComponent;
+    private final int candidates;
+    private final int tokenBudget;
+    private final double lambda;
+    private final double duplicateThreshold;
+
+    /**
+     * @param candidates Number of documents retrieved for a prompt, before re-ranking and packing
+     * @param tokenBudget Maximum estimated tokens of the assembled context
+     * @param lambda Weight of relevance against diversity, from 0 (diversity only) to 1 (relevance only)
+     * @param duplicateThreshold Minimum similarity of a document to a picked one to be dropped as a near-duplicate,
+     *                           above 1 to keep every document
+     */
+    @Autowired
+    public ContextAssemblyComponent(MathComponent mathComponent,
+                                    @Value("${app.search.context.candidates:8}") int candidates,
+                                    @Value("${app.search.context.token-budget:1500}") int tokenBudget,
+                                    @Value("${app.search.context.mmr-lambda:0.7}") double lambda,
+                                    @Value("${app.search.context.duplicate-threshold:0.9}") double duplicateThreshold) {
+        this.mathComponent = mathComponent;
+        this.candidates = candidates;
+        this.tokenBudget = tokenBudget;
+        this.lambda = lambda;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    /**
+     * @return Number of documents to retrieve for a prompt
+     */
+    public int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Re-ranks, de-duplicates and packs the retrieved documents into the token budget.
+     *
+     * @param documents The retrieved documents, most relevant first
+     * @param queryEmbedding The embedding of the query, null if the documents were retrieved lexically
+     * @return The context, one block of title, source and content per document
+     */
+    public String assemble(List<Document> documents, float[] queryEmbedding) {
+        List<Document> selected = select(documents, queryEmbedding);
+
+        int budget = TokenEstimator.chars(tokenBudget);
+        int length = 0;
+        for (Document document : selected) {
+            length += SEPARATOR.length() + entryLength(document);
+        }
+        StringBuilder context = new StringBuilder(Math.min(length, budget));
+        for (Document document : selected) {
+            int separator = context.isEmpty() ? 0 : SEPARATOR.length();
+            int remaining = budget - context.length() - separator;
+            int entryLength = entryLength(document);
+            if (entryLength <= remaining) {
+                if (separator > 0) {
+                    context.append(SEPARATOR);
+                }
+                appendEntry(context, document, entryLength);
+            } else if (context.isEmpty()) {
+                appendEntry(context, document, remaining);
+            }
+        }
+        return context.toString();
+    }
+
+    /**
+     * Orders the documents by Maximal Marginal Relevance, dropping near-duplicates.
+     */
+    List<Document> select(List<Document> documents, float[] queryEmbedding) {
+        int count = documents.size();
+        boolean embedded = queryEmbedding != null
+                && documents.stream().allMatch(document -> document.getEmbedding() != null);
+        double[] relevance = new double[count];
+        List<Set<String>> terms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Document document = documents.get(i);
+            relevance[i] = embedded
+                    ? mathComponent.cosineSimilarity(queryEmbedding, document.getEmbedding())
+                    : 1.0 - (double) i / count;
+            terms.add(document.getEmbedding() == null ? terms(document.getContent()) : null);
+        }
+
+        // Highest similarity of each remaining document to the picked ones, NaN once picked or dropped
+        double[] redundancy = new double[count];
+        List<Document> selected = new ArrayList<>(count);
+        while (true) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (Double.isNaN(redundancy[i])) {
+                    continue;
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * redundancy[i];
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0) {
+                return selected;
+            }
+            selected.add(documents.get(best));
+            redundancy[best] = Double.NaN;
+            for (int i = 0; i < count; i++) {
+                if (Double.isNaN(redundancy[i])) {
+                    continue;
+                }
+                double similarity = similarity(documents.get(best), terms.get(best), documents.get(i), terms.get(i));
+                redundancy[i] = similarity >= duplicateThreshold ? Double.NaN : Math.max(redundancy[i], similarity);
+            }
+        }
+    }
+
+    private double similarity(Document first, Set<String> firstTerms, Document second, Set<String> secondTerms) {
+        if (first.getEmbedding() != null && second.getEmbedding() != null) {
+            return mathComponent.cosineSimilarity(first.getEmbedding(), second.getEmbedding());
+        }
+        return jaccard(firstTerms != null ? firstTerms : terms(first.getContent()),
+                secondTerms != null ? secondTerms : terms(second.getContent()));
+    }
+
+    private static double jaccard(Set<String> first, Set<String> second) {
+        if (first.isEmpty() && second.isEmpty()) {
+            return 1.0;
+        }
+        int shared = 0;
+        for (String term : first) {
+            if (second.contains(term)) {
+                shared++;
+            }
+        }
+        return (double) shared / (first.size() + second.size() - shared);
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text != null) {
+            Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+"))
+                    .filter(term -> !term.isEmpty())
+                    .forEach(terms::add);
+        }
+        return terms;
+    }
+
+    private static int entryLength(Document document) {
+        return TITLE.length() + length(document.getTitle()) + SOURCE.length() + length(document.getSource())
+                + CONTENT.length() + length(document.getContent());
+    }
+
+    /**
+     * Appends a document, truncating its content so that the entry is at most the given length.
+     */
+    private static void appendEntry(StringBuilder context, Document document, int maxLength) {
+        context.append(TITLE).append(document.getTitle())
+                .append(SOURCE).append(document.getSource())
+                .append(CONTENT);
+        String content = String.valueOf(document.getContent());
+        int contentLength = maxLength - (entryLength(document) - length(document.getContent()));
+        context.append(content, 0, Math.max(0, Math.min(content.length(), contentLength)));
+    }
+
+    private static int length(String text) {
+        return String.valueOf(text).length();
+    }
+}
@@ -0,0 +1,226 @@
+package io.hellorin.edusearchai.component;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of embeddings keyed by the embedding model and the SHA-256 hash of the embedded text.
+ * <ul>
+ *     <li>Memory tier: least recently used entries are evicted once the configured size is reached.</li>
+ *     <li>Disk tier (optional, disabled by default): one file per entry holding the raw little-endian floats,
+ *     so embeddings survive restarts. Memory misses fall back to it and promote the entry to memory.
+ *     Every distinct text embedded is written, search queries included, so the tier holds at most the
+ *     configured number of entries: once full, new embeddings are only kept in memory. Entries are never
+ *     evicted from disk, the directory can be deleted to reclaim it.</li>
+ * </ul>
+ * Hits and misses are counted for monitoring.
+ */
+@Component
+public class EmbeddingCacheComponent {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCacheComponent.class);
+
+    private final Map<String, float[]> memory;
+    private final Path directory;
+    private final int maxDiskEntries;
+    private final AtomicInteger diskEntries;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean diskFull = new AtomicBoolean();
+
+    /**
+     * @param maxEntries Maximum number of embeddings kept in memory, 0 to disable the memory tier
+     * @param directory Directory of the disk tier, blank to disable it
+     * @param maxDiskEntries Maximum number of embeddings written to the disk tier, existing files included
+     */
+    @Autowired
+    public EmbeddingCacheComponent(@Value("${app.embedding.cache.max-entries:10000}") int maxEntries,
+                                   @Value("${app.embedding.cache.directory:}") String directory,
+                                   @Value("${app.embedding.cache.disk.max-entries:100000}") int maxDiskEntries) {
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.maxDiskEntries = maxDiskEntries;
+        this.diskEntries = new AtomicInteger(countDiskEntries());
+    }
+
+    /**
+     * Computes the cache key of a text embedded by a model.
+     *
+     * @param model Name of the embedding model
+     * @param text The embedded text
+     * @return Hex-encoded SHA-256 of the model name and the text
+     */
+    public String key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Looks an embedding up, first in memory then on disk.
+     *
+     * @param key Key computed by {@link #key(String, String)}
+     * @return A copy of the cached embedding, or null on a miss
+     */
+    public float[] get(String key) {
+        float[] embedding;
+        synchronized (memory) {
+            embedding = memory.get(key);
+        }
+        if (embedding != null) {
+            memoryHits.increment();
+            return embedding.clone();
+        }
+
+        embedding = readFromDisk(key);
+        if (embedding != null) {
+            diskHits.increment();
+            synchronized (memory) {
+                memory.put(key, embedding);
+            }
+            return embedding.clone();
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores an embedding in both tiers.
+     *
+     * @param key Key computed by {@link #key(String, String)}
+     * @param embedding The embedding to cache, copied by the cache
+     */
+    public void put(String key, float[] embedding) {
+        float[] copy = embedding.clone();
+        synchronized (memory) {
+            memory.put(key, copy);
+        }
+        writeToDisk(key, copy);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of embeddings in the disk tier
+     */
+    public int getDiskEntries() {
+        return diskEntries.get();
+    }
+
+    /**
+     * @return Number of embeddings in the memory tier
+     */
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    private float[] readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = diskPath(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            float[] embedding = new float[buffer.remaining() / Float.BYTES];
+            buffer.asFloatBuffer().get(embedding);
+            return embedding;
+        } catch (IOException e) {
+            logger.warn("Could not read cached embedding {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, float[] embedding) {
+        if (directory == null) {
+            return;
+        }
+        Path file = diskPath(key);
+        if (Files.exists(file)) {
+            // Same model and text, hence the same embedding
+            return;
+        }
+        if (diskEntries.incrementAndGet() > maxDiskEntries) {
+            diskEntries.decrementAndGet();
+            if (diskFull.compareAndSet(false, true)) {
+                logger.warn("Embedding cache directory {} holds {} entries, new embeddings are only cached in memory",
+                        directory, maxDiskEntries);
+            }
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asFloatBuffer().put(embedding);
+            Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            diskEntries.decrementAndGet();
+            logger.warn("Could not write cached embedding {}: {}", file, e.getMessage());
+        }
+    }
+
+    private int countDiskEntries() {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            return (int) files.filter(file -> file.getFileName().toString().endsWith(".emb")).count();
+        } catch (IOException e) {
+            logger.warn("Could not count cached embeddings in {}: {}", directory, e.getMessage());
+            return 0;
+        }
+    }
+
+    private Path diskPath(String key) {
+        // Shard by the first byte of the hash to keep directories small
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".emb");
+    }
+}
@@ -1,11 +1,71 @@
 package io.hellorin.edusearchai.component;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 @Component
 public class MathComponent {
+    private static final Logger logger = LoggerFactory.getLogger(MathComponent.class);
+
+    static final String VECTOR_API_MODULE = "jdk.incubator.vector";
+
+    private final VectorScorer vectorScorer;
+
+    /**
+     * Creates a math component using the scalar scorer.
+     */
+    public MathComponent() {
+        this(new ScalarVectorScorer());
+    }
+
+    public MathComponent(VectorScorer vectorScorer) {
+        this.vectorScorer = vectorScorer;
+    }
+
+    /**
+     * Creates a math component using the configured scorer.
+     * When "simd" is requested but the JVM was not started with
+     * {@code --add-modules jdk.incubator.vector}, the scalar scorer is used instead.
+     *
+     * @param vectorScorer Either "simd" or "scalar"
+     */
+    @Autowired
+    public MathComponent(@Value("${app.search.vector-scorer:scalar}") String vectorScorer) {
+        this(createVectorScorer(vectorScorer));
+    }
+
+    /**
+     * Checks whether the Vector API module is part of the boot layer, i.e. whether the JVM
+     * was started with {@code --add-modules jdk.incubator.vector}.
+     * This check does not load {@link SimdVectorScorer} nor any class of the module.
+     *
+     * @return true if the SIMD scorer can be instantiated
+     */
+    public static boolean isVectorApiEnabled() {
+        return ModuleLayer.boot().findModule(VECTOR_API_MODULE).isPresent();
+    }
+
+    VectorScorer getVectorScorer() {
+        return vectorScorer;
+    }
+
+    private static VectorScorer createVectorScorer(String name) {
+        if ("simd".equalsIgnoreCase(name)) {
+            if (isVectorApiEnabled()) {
+                logger.info("Using SIMD vector scorer");
+                return new SimdVectorScorer();
+            }
+            logger.warn("SIMD vector scorer requested but module {} is not enabled, falling back to scalar scorer",
+                    VECTOR_API_MODULE);
+        } else if (!"scalar".equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("Unknown vector scorer: " + name);
+        }
+        return new ScalarVectorScorer();
+    }
+
     /**
      * Calculates the cosine similarity between two vectors.
      * Cosine similarity measures the cosine of the angle between two vectors,
@@ -16,8 +76,8 @@ public class MathComponent {
      * @return Cosine similarity score between the vectors
      * @throws IllegalArgumentException if vectors have different dimensions
      */
-    public double cosineSimilarity(List<Float> vec1, List<Float> vec2) {
-        if (vec1.size() != vec2.size()) {
+    public double cosineSimilarity(float[] vec1, float[] vec2) {
+        if (vec1.length != vec2.length) {
             throw new IllegalArgumentException("Vectors must have the same dimension");
         }
 
@@ -25,12 +85,89 @@ public class MathComponent {
         double norm1 = 0.0;
         double norm2 = 0.0;
 
-        for (int i = 0; i < vec1.size(); i++) {
-            dotProduct += vec1.get(i) * vec2.get(i);
-            norm1 += vec1.get(i) * vec1.get(i);
-            norm2 += vec2.get(i) * vec2.get(i);
+        for (int i = 0; i < vec1.length; i++) {
+            dotProduct += vec1[i] * vec2[i];
+            norm1 += vec1[i] * vec1[i];
+            norm2 += vec2[i] * vec2[i];
         }
 
         return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
     }
+
+    /**
+     * Calculates the dot product between two vectors.
+     * For vectors of unit length this is equal to their cosine similarity.
+     *
+     * @param vec1 First vector
+     * @param vec2 Second vector
+     * @return Dot product of the vectors
+     * @throws IllegalArgumentException if vectors have different dimensions
+     */
+    public double dotProduct(float[] vec1, float[] vec2) {
+        if (vec1.length != vec2.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+        return vectorScorer.dotProduct(vec1, 0, vec2, 0, vec1.length);
+    }
+
+    /**
+     * Calculates the dot product between a vector and a slice of a larger array,
+     * e.g. one row of a contiguous vector store.
+     *
+     * @param vec Vector to compare
+     * @param data Array holding the other vector
+     * @param offset Index of the first component of the other vector in data
+     * @return Dot product of the vector and the slice
+     */
+    public double dotProduct(float[] vec, float[] data, int offset) {
+        return vectorScorer.dotProduct(vec, 0, data, offset, vec.length);
+    }
+
+    /**
+     * Calculates the dot product between two slices of the same array,
+     * e.g. two rows of a contiguous vector store.
+     *
+     * @param data Array holding both vectors
+     * @param offset1 Index of the first component of the first vector
+     * @param offset2 Index of the first component of the second vector
+     * @param length Number of components of each vector
+     * @return Dot product of the two slices
+     */
+    public double dotProduct(float[] data, int offset1, int offset2, int length) {
+        return vectorScorer.dotProduct(data, offset1, data, offset2, length);
+    }
+
+    /**
+     * Returns a copy of the vector scaled to unit length.
+     * A zero vector is returned unchanged (as a copy) since it has no direction.
+     *
+     * @param vec The vector to normalize
+     * @return A new vector with a Euclidean norm of 1
+     */
+    public float[] normalize(float[] vec) {
+        float[] normalized = vec.clone();
+        normalizeInPlace(normalized);
+        return normalized;
+    }
+
+    /**
+     * Scales the vector to unit length in place, e.g. to normalize rows read into a reused buffer.
+     * A zero vector is left unchanged.
+     *
+     * @param vec The vector to normalize
+     */
+    public void normalizeInPlace(float[] vec) {
+        double norm = 0.0;
+        for (float v : vec) {
+            norm += v * v;
+        }
+        if (norm == 0.0) {
+            return;
+        }
+
+        double scale = 1.0 / Math.sqrt(norm);
+        for (int i = 0; i < vec.length; i++) {
+            vec[i] = (float) (vec[i] * scale);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package io.hellorin.edusearchai.component;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits a scan over a range of rows into contiguous segments and processes them in parallel
+ * on a dedicated {@link ForkJoinPool}. Scans smaller than the configured threshold stay on the
+ * calling thread, where the cost of scheduling would outweigh the gain.
+ */
+@Component
+public class ParallelScanComponent {
+
+    /**
+     * Work done on one segment of rows, producing a partial result that the caller merges.
+     * @param <R> Type of the partial result
+     */
+    @FunctionalInterface
+    public interface SegmentTask<R> {
+        /**
+         * @param from First row of the segment (inclusive)
+         * @param to Last row of the segment (exclusive)
+         * @return Partial result for the segment
+         */
+        R apply(int from, int to);
+    }
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a component that scans on the calling thread only.
+     */
+    public ParallelScanComponent() {
+        this(Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * @param parallelThreshold Minimum number of rows for a scan to be split across threads
+     * @param parallelism Number of segments and worker threads, 0 to use all available processors
+     */
+    @Autowired
+    public ParallelScanComponent(@Value("${app.search.parallel-threshold:20000}") int parallelThreshold,
+                                 @Value("${app.search.parallelism:0}") int parallelism) {
+        this.parallelThreshold = parallelThreshold;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Applies the task to contiguous segments covering rows [0, rows).
+     * The first segment runs on the calling thread while the others run on the pool.
+     *
+     * @param rows Total number of rows to scan
+     * @param task Work to do on each segment
+     * @param <R> Type of the partial results
+     * @return One partial result per segment, in row order
+     */
+    public <R> List<R> scan(int rows, SegmentTask<R> task) {
+        return scan(rows, rows, task);
+    }
+
+    /**
+     * Like {@link #scan(int, SegmentTask)}, for tasks that only process some of the rows, e.g. the rows
+     * matching a filter: the scan is split depending on the number of rows actually processed.
+     *
+     * @param rows Total number of rows to scan
+     * @param candidates Number of rows the task processes
+     * @param task Work to do on each segment
+     * @param <R> Type of the partial results
+     * @return One partial result per segment, in row order
+     */
+    public <R> List<R> scan(int rows, int candidates, SegmentTask<R> task) {
+        int segments = candidates < parallelThreshold ? 1 : Math.min(pool.getParallelism(), rows);
+        if (segments <= 1) {
+            return List.of(task.apply(0, rows));
+        }
+
+        int segmentSize = (rows + segments - 1) / segments;
+        List<ForkJoinTask<R>> forked = new ArrayList<>(segments - 1);
+        for (int from = segmentSize; from < rows; from += segmentSize) {
+            int segmentFrom = from;
+            int segmentTo = Math.min(from + segmentSize, rows);
+            forked.add(pool.submit(() -> task.apply(segmentFrom, segmentTo)));
+        }
+
+        List<R> results = new ArrayList<>(segments);
+        results.add(task.apply(0, Math.min(segmentSize, rows)));
+        for (ForkJoinTask<R> segment : forked) {
+            results.add(segment.join());
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
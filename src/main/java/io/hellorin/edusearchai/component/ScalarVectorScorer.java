@@ -0,0 +1,17 @@
+package io.hellorin.edusearchai.component;
+
+/**
+ * Plain Java implementation of {@link VectorScorer}, accumulating in double precision.
+ * Always available and used as the fallback when the JDK Vector API is not enabled.
+ */
+public class ScalarVectorScorer implements VectorScorer {
+
+    @Override
+    public double dotProduct(float[] vec1, int offset1, float[] vec2, int offset2, int length) {
+        double dotProduct = 0.0;
+        for (int i = 0; i < length; i++) {
+            dotProduct += vec1[offset1 + i] * vec2[offset2 + i];
+        }
+        return dotProduct;
+    }
+}
@@ -0,0 +1,127 @@
+package io.hellorin.edusearchai.component;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * {@link Chunker} sizing chunks by an estimated number of tokens and breaking them at sentence
+ * or paragraph ends, so that a chunk holds whole sentences whenever possible.
+ * <ul>
+ *     <li>A chunk is closed once it would exceed the token budget. It ends at its last sentence end if that
+ *     keeps at least half of the budget, otherwise at the last whitespace, and only as a last resort in a word.</li>
+ *     <li>The next chunk starts with the trailing sentences of the previous one, up to the overlap budget,
+ *     so that a passage cut between two chunks can still be found as a whole.</li>
+ * </ul>
+ * The text is read in a single pass: sentence ends and the last whitespace are recorded as the text is
+ * scanned, so closing a chunk never scans the text backwards, and each chunk is copied exactly once.
+ */
+public class SentenceChunker implements Chunker {
+
+    private final int maxChars;
+    private final int overlapChars;
+
+    /**
+     * @param maxTokens Maximum size of each chunk, in estimated tokens
+     * @param overlapTokens Maximum size of the text repeated at the start of the next chunk, in estimated tokens
+     */
+    public SentenceChunker(int maxTokens, int overlapTokens) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (overlapTokens < 0 || overlapTokens * 2 >= maxTokens) {
+            throw new IllegalArgumentException("Chunk overlap must be less than half of the chunk size");
+        }
+        this.maxChars = TokenEstimator.chars(maxTokens);
+        this.overlapChars = TokenEstimator.chars(overlapTokens);
+    }
+
+    @Override
+    public int chunk(CharSequence text, boolean last, Consumer<String> chunkConsumer) {
+        int length = text.length();
+        // Sentence ends of the current chunk, as offsets of the whitespace following them, in ascending order
+        int[] boundaries = new int[16];
+        int head = 0;
+        int tail = 0;
+        int chunkStart = 0;
+        int lastWhitespace = -1;
+
+        for (int pos = 0; pos < length; pos++) {
+            if (Character.isWhitespace(text.charAt(pos))) {
+                lastWhitespace = pos;
+                if (isSentenceEnd(text, pos)) {
+                    if (tail == boundaries.length) {
+                        boundaries = tail - head > boundaries.length / 2
+                                ? Arrays.copyOfRange(boundaries, head, head + boundaries.length * 2)
+                                : Arrays.copyOfRange(boundaries, head, head + boundaries.length);
+                        tail -= head;
+                        head = 0;
+                    }
+                    boundaries[tail++] = pos;
+                }
+            }
+            if (pos + 1 - chunkStart <= maxChars) {
+                continue;
+            }
+
+            int end;
+            if (tail > head && boundaries[tail - 1] - chunkStart >= maxChars / 2) {
+                end = boundaries[tail - 1];
+            } else if (lastWhitespace > chunkStart) {
+                end = lastWhitespace;
+            } else {
+                end = pos;
+            }
+            emit(text, chunkStart, end, chunkConsumer);
+
+            // Start the next chunk at the earliest sentence end within the overlap budget
+            int nextStart = end;
+            for (int i = tail - 1; i >= head; i--) {
+                int boundary = boundaries[i];
+                if (boundary >= end) {
+                    continue;
+                }
+                if (end - boundary > overlapChars || pos + 1 - boundary >= maxChars) {
+                    break;
+                }
+                nextStart = boundary;
+            }
+            chunkStart = nextStart;
+            while (head < tail && boundaries[head] <= chunkStart) {
+                head++;
+            }
+        }
+
+        if (!last) {
+            return chunkStart;
+        }
+        emit(text, chunkStart, length, chunkConsumer);
+        return length;
+    }
+
+    private static void emit(CharSequence text, int start, int end, Consumer<String> chunkConsumer) {
+        String chunk = text.subSequence(start, end).toString().trim();
+        if (!chunk.isEmpty()) {
+            chunkConsumer.accept(chunk);
+        }
+    }
+
+    /**
+     * @param pos Offset of a whitespace character
+     * @return Whether the whitespace follows a sentence terminator, possibly closed by a quote or parenthesis,
+     *         or ends a blank line
+     */
+    private static boolean isSentenceEnd(CharSequence text, int pos) {
+        if (pos == 0) {
+            return false;
+        }
+        char previous = text.charAt(pos - 1);
+        if (text.charAt(pos) == '\n'
+                && (previous == '\n' || (previous == '\r' && pos >= 2 && text.charAt(pos - 2) == '\n'))) {
+            return true;
+        }
+        if ((previous == '"' || previous == '\'' || previous == ')' || previous == '”') && pos >= 2) {
+            previous = text.charAt(pos - 2);
+        }
+        return previous == '.' || previous == '!' || previous == '?';
+    }
+}
@@ -0,0 +1,33 @@
+package io.hellorin.edusearchai.component;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorScorer} built on the JDK Vector API, using the preferred species of the
+ * running CPU (e.g. 8 lanes on AVX2, 16 lanes on AVX-512) and fused multiply-add accumulation.
+ * This class must only be initialized when the {@code jdk.incubator.vector} module is enabled,
+ * see {@link MathComponent#isVectorApiEnabled()}: its static initializer loads the module.
+ */
+public class SimdVectorScorer implements VectorScorer {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public double dotProduct(float[] vec1, int offset1, float[] vec2, int offset2, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector v1 = FloatVector.fromArray(SPECIES, vec1, offset1 + i);
+            FloatVector v2 = FloatVector.fromArray(SPECIES, vec2, offset2 + i);
+            acc = v1.fma(v2, acc);
+        }
+        float dotProduct = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotProduct += vec1[offset1 + i] * vec2[offset2 + i];
+        }
+        return dotProduct;
+    }
+}
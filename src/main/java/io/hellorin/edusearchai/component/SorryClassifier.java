@@ -0,0 +1,115 @@
+package io.hellorin.edusearchai.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Pattern;
+
+/**
+ * Decides locally whether a course answer is a sorry message, i.e. the course context did not hold the answer.
+ * <p>
+ * The course prompt asks the model to start such answers with {@link #NOT_FOUND_MARKER}, which settles the
+ * question when the model complies. Otherwise a small logistic model over a few regular expression features
+ * (apologies, statements that information is missing, references to the context, short answers, cited sources)
+ * estimates the probability of a sorry message. Its weights are set by hand, not trained.
+ * Probabilities between the two thresholds are reported as {@link Verdict#UNSURE}, for the caller to decide,
+ * e.g. by asking the chat model.
+ */
+@Component
+public class SorryClassifier {
+
+    public static final String NOT_FOUND_MARKER = "<NOT_FOUND>";
+
+    private static final int SHORT_ANSWER_LENGTH = 300;
+    private static final double BIAS = -3.0;
+    private static final double APOLOGY_WEIGHT = 2.5;
+    private static final double MISSING_INFORMATION_WEIGHT = 3.0;
+    private static final double CONTEXT_REFERENCE_WEIGHT = 1.0;
+    private static final double SHORT_ANSWER_WEIGHT = 1.0;
+    private static final double SOURCES_WEIGHT = -1.5;
+
+    private static final Pattern APOLOGY = Pattern.compile(
+            "\\b(sorry|apologi[sz]e|unfortunately|désolée?|malheureusement)\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private static final Pattern MISSING_INFORMATION = Pattern.compile(
+            "\\b(cannot|can't|could not|couldn't|unable to|not able to)\\s+(be\\s+)?(find|found|answer|locate|provide)"
+                    + "|\\b(does not|doesn't|do not|don't)\\s+(contain|include|mention|cover|provide)"
+                    + "|\\bno (relevant )?(information|mention|details)\\b"
+                    + "|\\bnot (mentioned|covered|found|provided|available)\\b"
+                    + "|ne contient pas|n'est pas (mentionné|abordé|couvert)|aucune information",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private static final Pattern CONTEXT_REFERENCE = Pattern.compile(
+            "\\b(provided|given|course)\\s+(context|material|content|documents?)\\b|\\bcontexte\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private static final Pattern SOURCES = Pattern.compile("\\bsources?\\s*:", Pattern.CASE_INSENSITIVE);
+
+    public enum Verdict {
+        SORRY, ANSWER, UNSURE
+    }
+
+    private final double answerThreshold;
+    private final double sorryThreshold;
+
+    public SorryClassifier() {
+        this(0.3, 0.7);
+    }
+
+    /**
+     * @param answerThreshold Probability below which an answer is classified as a real answer
+     * @param sorryThreshold Probability from which an answer is classified as a sorry message
+     */
+    @Autowired
+    public SorryClassifier(@Value("${app.search.sorry.answer-threshold:0.3}") double answerThreshold,
+                           @Value("${app.search.sorry.sorry-threshold:0.7}") double sorryThreshold) {
+        if (answerThreshold > sorryThreshold) {
+            throw new IllegalArgumentException("The answer threshold must not exceed the sorry threshold");
+        }
+        this.answerThreshold = answerThreshold;
+        this.sorryThreshold = sorryThreshold;
+    }
+
+    /**
+     * @param answer The course answer
+     * @return Whether the answer is a sorry message, or UNSURE if the classifier cannot tell
+     */
+    public Verdict classify(String answer) {
+        double probability = sorryProbability(answer);
+        if (probability >= sorryThreshold) {
+            return Verdict.SORRY;
+        }
+        return probability < answerThreshold ? Verdict.ANSWER : Verdict.UNSURE;
+    }
+
+    /**
+     * @param answer The course answer, may be null
+     * @return Estimated probability that the answer is a sorry message
+     */
+    public double sorryProbability(String answer) {
+        if (answer == null || answer.isBlank()) {
+            return 1.0;
+        }
+        if (answer.contains(NOT_FOUND_MARKER)) {
+            return 1.0;
+        }
+        double z = BIAS
+                + APOLOGY_WEIGHT * feature(APOLOGY.matcher(answer).find())
+                + MISSING_INFORMATION_WEIGHT * feature(MISSING_INFORMATION.matcher(answer).find())
+                + CONTEXT_REFERENCE_WEIGHT * feature(CONTEXT_REFERENCE.matcher(answer).find())
+                + SHORT_ANSWER_WEIGHT * feature(answer.length() < SHORT_ANSWER_LENGTH)
+                + SOURCES_WEIGHT * feature(SOURCES.matcher(answer).find());
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    /**
+     * @param answer The course answer, may be null
+     * @return The answer without the not found marker
+     */
+    public static String stripMarker(String answer) {
+        return answer == null ? null : answer.replace(NOT_FOUND_MARKER, "").strip();
+    }
+
+    private static double feature(boolean present) {
+        return present ? 1.0 : 0.0;
+    }
+}
@@ -0,0 +1,29 @@
+package io.hellorin.edusearchai.component;
+
+/**
+ * Rough token counts of English text, about four characters per token for OpenAI tokenizers.
+ * Used wherever text has to fit a token budget without running an actual tokenizer.
+ */
+public final class TokenEstimator {
+
+    public static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * @param text The text to measure
+     * @return Estimated number of tokens of the text
+     */
+    public static int estimate(CharSequence text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @param tokens A number of tokens
+     * @return Estimated number of characters of a text of that many tokens
+     */
+    public static int chars(int tokens) {
+        return tokens * CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,21 @@
+package io.hellorin.edusearchai.component;
+
+/**
+ * Computes dot products between float vectors.
+ * Implementations only differ in how the inner loop is executed (scalar or SIMD),
+ * so they are interchangeable and selected once at startup by {@link MathComponent}.
+ */
+public interface VectorScorer {
+
+    /**
+     * Calculates the dot product of two vector slices of the same length.
+     *
+     * @param vec1 Array holding the first vector
+     * @param offset1 Index of the first component of the first vector
+     * @param vec2 Array holding the second vector
+     * @param offset2 Index of the first component of the second vector
+     * @param length Number of components to multiply
+     * @return Dot product of the two slices
+     */
+    double dotProduct(float[] vec1, int offset1, float[] vec2, int offset2, int length);
+}
@@ -0,0 +1,94 @@
+package io.hellorin.edusearchai.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches document folders on the file system and runs a callback when files are added, modified or removed.
+ * Events are debounced: callbacks only run once the folders stayed quiet for a while, so copying a large PDF
+ * triggers a single update. Callbacks run on the watcher thread, never on a request thread.
+ */
+public class DocumentFolderWatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentFolderWatcher.class);
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Runnable> callbacks = new ConcurrentHashMap<>();
+    private final long quietPeriodMillis;
+    private final Thread thread;
+
+    /**
+     * @param quietPeriodMillis Time without events to wait for before running the callbacks
+     * @throws IOException if the watch service cannot be created
+     */
+    public DocumentFolderWatcher(long quietPeriodMillis) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.thread = new Thread(this::run, "document-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Registers a folder. Folders sharing the same callback instance trigger it once per quiet period.
+     *
+     * @param folder The folder to watch, not recursively
+     * @param onChange Callback run after files of the folder changed
+     * @throws IOException if the folder cannot be watched
+     */
+    public void watch(Path folder, Runnable onChange) throws IOException {
+        WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        callbacks.put(key, onChange);
+        logger.info("Watching {} for document changes", folder);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Runnable> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    key.pollEvents();
+                    Runnable callback = callbacks.get(key);
+                    if (callback != null) {
+                        changed.add(callback);
+                    }
+                    key.reset();
+                    key = watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                for (Runnable callback : changed) {
+                    try {
+                        callback.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Error while applying document changes: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+}
@@ -1,85 +1,252 @@
 package io.hellorin.edusearchai.config;
 
-import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.hellorin.edusearchai.repository.PersistentVectorIndex;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.mock.web.MockMultipartFile;
-import io.hellorin.edusearchai.service.PDFProcessingService;
-import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.service.DocumentIngestionService;
 import io.hellorin.edusearchai.model.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.HexFormat;
 
 /**
  * A Spring Boot CommandLineRunner implementation that loads PDF documents from specified folders
  * during application startup. This class is responsible for:
  * <ul>
  *     <li>Scanning designated folders for PDF files</li>
- *     <li>Converting found PDFs into MultipartFile objects</li>
- *     <li>Processing the PDFs using PDFProcessingService</li>
- *     <li>Storing the processed documents in the appropriate document repository</li>
+ *     <li>Processing the PDFs through the DocumentIngestionService pipeline, which parses, embeds and
+ *     stores them in the appropriate document repository concurrently</li>
  * </ul>
+ * Indexing is incremental: each PDF is fingerprinted with the SHA-256 of its content, and only new or
+ * changed PDFs are processed. PDFs are identified by their path relative to the documents location, which
+ * is also the source of their documents, so PDFs of the same name in different folders are distinct.
+ * New and changed PDFs go through the ingestion pipeline, which replaces the documents of each PDF once it
+ * is embedded, so PDFs become searchable one after another, a PDF being re-embedded stays searchable and a
+ * failed embedding leaves the documents of its PDF unchanged. When an index directory is configured, documents
+ * and fingerprints are restored from a {@link PersistentVectorIndex} per repository on startup, and every change
+ * applied to the repository is recorded in it, in segments of a bounded number of documents.
+ * <p>
+ * Optionally, the folders are watched so that changes are applied while the application runs.
+ * This requires the documents to be located on the file system, e.g. with {@code app.documents.location=file:./}.
  */
-public class DocumentLoader implements CommandLineRunner {
+public class DocumentLoader implements CommandLineRunner, AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(DocumentLoader.class);
-    private final PDFProcessingService pdfProcessingService;
-    private final InMemoryDocumentRepository inMemoryDocumentRepository;
-    private final InMemoryNotesDocumentRepository inMemoryNotesDocumentRepository;
+    private static final long WATCH_QUIET_PERIOD_MILLIS = 1000;
+    private static final int DOCUMENTS_PER_SEGMENT = 10_000;
+
+    /**
+     * Folders whose documents are stored in the same repository and persistent index.
+     *
+     * @param folders The paths to the folders, relative to the documents location
+     * @param repository The repository receiving the documents
+     * @param index The persistent index, may be null
+     * @param fingerprints Fingerprint of each indexed PDF, by source
+     */
+    record DocumentFolders(List<String> folders, DocumentRepository repository, PersistentVectorIndex index,
+                           Map<String, String> fingerprints) {
+    }
+
+    private final DocumentIngestionService documentIngestionService;
+    private final DocumentRepository documentRepository;
+    private final DocumentRepository notesDocumentRepository;
     private final ResourcePatternResolver resolver;
+    private final String documentsLocation;
+    private final boolean watch;
+    private final DocumentFolders standardFolders;
+    private final DocumentFolders notesFolders;
+    private DocumentFolderWatcher watcher;
 
-    public DocumentLoader(PDFProcessingService pdfProcessingService, 
-                          InMemoryDocumentRepository inMemoryDocumentRepository,
-                          InMemoryNotesDocumentRepository inMemoryNotesDocumentRepository) {
-        this.pdfProcessingService = pdfProcessingService;
-        this.inMemoryDocumentRepository = inMemoryDocumentRepository;
-        this.inMemoryNotesDocumentRepository = inMemoryNotesDocumentRepository;
+    /**
+     * @param indexDirectory Directory of the persistent index, null or blank to embed every document on startup
+     * @param documentsLocation Location of the document folders, e.g. {@code classpath:} or {@code file:/data/}
+     * @param watch Whether the document folders are watched for changes after startup
+     */
+    public DocumentLoader(DocumentIngestionService documentIngestionService,
+                          DocumentRepository documentRepository,
+                          DocumentRepository notesDocumentRepository,
+                          String indexDirectory,
+                          String documentsLocation,
+                          boolean watch) {
+        this.documentIngestionService = documentIngestionService;
+        this.documentRepository = documentRepository;
+        this.notesDocumentRepository = notesDocumentRepository;
         this.resolver = new PathMatchingResourcePatternResolver();
+        this.documentsLocation = documentsLocation;
+        this.watch = watch;
+        boolean persistent = indexDirectory != null && !indexDirectory.isBlank();
+        this.standardFolders = new DocumentFolders(List.of("documents/public", "documents/courses"),
+                documentRepository,
+                persistent ? new PersistentVectorIndex(Path.of(indexDirectory, "standard")) : null,
+                new HashMap<>());
+        this.notesFolders = new DocumentFolders(List.of("documents/notes"),
+                notesDocumentRepository,
+                persistent ? new PersistentVectorIndex(Path.of(indexDirectory, "notes")) : null,
+                new HashMap<>());
     }
 
     /**
-     * Loads all PDF documents from a specified folder path.
+     * Restores the documents of a persistent index into a repository.
+     *
+     * @param index The index to read, may be null
+     * @param repository The repository receiving the documents
+     * @return Fingerprint of each restored source
+     * @throws IOException if the index cannot be read
+     */
+    Map<String, String> restoreIndex(PersistentVectorIndex index, DocumentRepository repository) throws IOException {
+        if (index == null) {
+            return new HashMap<>();
+        }
+        int restored = repository.restore(index);
+        if (restored > 0) {
+            logger.info("Restored {} documents from the persistent index", restored);
+        }
+        return index.fingerprints();
+    }
+
+    /**
+     * Finds the PDF documents of a folder.
      *
      * @param folderPath The path to the folder containing PDF documents
-     * @return List of processed Document objects
-     * @throws IOException if there are issues reading the files
+     * @return The PDFs, by source
+     * @throws IOException if the folder cannot be listed
      */
-    List<Document> loadFolder(String folderPath) throws IOException {
-        Resource[] resources = resolver.getResources("classpath:" + folderPath + "/*.pdf");
-        List<MultipartFile> files = new ArrayList<>();
-        
-        for (Resource resource : resources) {
+    Map<String, DocumentIngestionService.Pdf> findPdfs(String folderPath) throws IOException {
+        Map<String, DocumentIngestionService.Pdf> pdfs = new LinkedHashMap<>();
+        for (Resource resource : resolver.getResources(documentsLocation + folderPath + "/*.pdf")) {
             String filename = resource.getFilename();
             if (filename != null) {
-                byte[] content = resource.getInputStream().readAllBytes();
-                MultipartFile file = new MockMultipartFile(
-                    filename,
-                    filename,
-                    "application/pdf",
-                    content
-                );
-                files.add(file);
+                String source = source(folderPath, filename);
+                pdfs.put(source, new DocumentIngestionService.Pdf(source, resource, collection(folderPath)));
+            }
+        }
+        return pdfs;
+    }
+
+    /**
+     * @param folderPath The path to a folder of PDF documents
+     * @param filename The filename of a PDF of the folder
+     * @return The source of the documents of the PDF: its path relative to the documents location,
+     *         e.g. {@code documents/courses/algebra.pdf}
+     */
+    static String source(String folderPath, String filename) {
+        return folderPath + "/" + filename;
+    }
+
+    /**
+     * @param folderPath The path to a folder of PDF documents
+     * @return The collection of the documents of the folder: its name, e.g. {@code courses}
+     */
+    static String collection(String folderPath) {
+        return folderPath.substring(folderPath.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Brings a repository in line with the PDFs of its folders: new and changed PDFs are ingested,
+     * and the documents of changed and deleted PDFs are removed. Unchanged PDFs are not read again
+     * beyond computing their fingerprint.
+     * If ingestion fails, the PDFs indexed before the failure are recorded, so the next synchronization
+     * only retries the others.
+     *
+     * @param documentFolders The folders to synchronize
+     * @return Number of newly ingested documents
+     * @throws IOException if there are issues reading the files or writing the index
+     */
+    synchronized int synchronize(DocumentFolders documentFolders) throws IOException {
+        Map<String, DocumentIngestionService.Pdf> pdfs = new LinkedHashMap<>();
+        for (String folderPath : documentFolders.folders()) {
+            pdfs.putAll(findPdfs(folderPath));
+        }
+
+        Map<String, String> changedFingerprints = new LinkedHashMap<>();
+        List<DocumentIngestionService.Pdf> changedPdfs = new ArrayList<>();
+        for (Map.Entry<String, DocumentIngestionService.Pdf> pdf : pdfs.entrySet()) {
+            String fingerprint = fingerprint(pdf.getValue().resource());
+            if (!fingerprint.equals(documentFolders.fingerprints().get(pdf.getKey()))) {
+                changedFingerprints.put(pdf.getKey(), fingerprint);
+                changedPdfs.add(pdf.getValue());
             }
         }
-        
-        if (!files.isEmpty()) {
-            logger.info("Loading {} PDF documents from {}...", files.size(), folderPath);
-            List<Document> processedDocs = pdfProcessingService.processPDFs(files);
-            logger.info("Documents loaded successfully from {}!", folderPath);
-            
-            // Print document information
-            for (Document doc : processedDocs) {
-                logger.info("Loaded document: {} (ID: {})", doc.getSource(), doc.getId());
+        Set<String> removedSources = new HashSet<>(documentFolders.fingerprints().keySet());
+        removedSources.removeAll(pdfs.keySet());
+
+        if (changedPdfs.isEmpty() && removedSources.isEmpty()) {
+            logger.info("No PDF document changed in {}.", documentFolders.folders());
+            return 0;
+        }
+        logger.info("{} new or changed and {} deleted PDF documents in {}", changedPdfs.size(),
+                removedSources.size(), documentFolders.folders());
+
+        if (!removedSources.isEmpty()) {
+            documentFolders.repository().replaceSources(removedSources, List.of());
+            if (documentFolders.index() != null) {
+                documentFolders.index().update(List.of(), Map.of(), removedSources);
             }
-            return processedDocs;
-        } else {
-            logger.info("No PDF documents found in {} folder.", folderPath);
-            return new ArrayList<>();
+            documentFolders.fingerprints().keySet().removeAll(removedSources);
+        }
+
+        IndexedPdfs indexedPdfs = new IndexedPdfs(documentFolders, changedFingerprints);
+        try {
+            return documentIngestionService.ingest(changedPdfs, documentFolders.repository(), indexedPdfs);
+        } finally {
+            // Record the PDFs indexed before a failure too, they are in the repository already
+            indexedPdfs.flush();
+        }
+    }
+
+    /**
+     * Records the fingerprints of the indexed PDFs and persists their documents, in segments of at most
+     * {@link #DOCUMENTS_PER_SEGMENT} documents unless a PDF alone has more.
+     */
+    private static final class IndexedPdfs implements DocumentIngestionService.IndexListener {
+        private final DocumentFolders documentFolders;
+        private final Map<String, String> changedFingerprints;
+        private final Map<String, String> pendingFingerprints = new LinkedHashMap<>();
+        private final List<Document> pendingDocuments = new ArrayList<>();
+
+        IndexedPdfs(DocumentFolders documentFolders, Map<String, String> changedFingerprints) {
+            this.documentFolders = documentFolders;
+            this.changedFingerprints = changedFingerprints;
+        }
+
+        @Override
+        public synchronized void indexed(DocumentIngestionService.Pdf pdf, List<Document> documents)
+                throws IOException {
+            if (!pendingDocuments.isEmpty()
+                    && pendingDocuments.size() + documents.size() > DOCUMENTS_PER_SEGMENT) {
+                flush();
+            }
+            pendingFingerprints.put(pdf.source(), changedFingerprints.get(pdf.source()));
+            if (documentFolders.index() != null) {
+                pendingDocuments.addAll(documents);
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            if (pendingFingerprints.isEmpty()) {
+                return;
+            }
+            if (documentFolders.index() != null) {
+                documentFolders.index().update(pendingDocuments, pendingFingerprints, Set.of());
+                logger.info("Persisted {} documents to the index", pendingDocuments.size());
+            }
+            documentFolders.fingerprints().putAll(pendingFingerprints);
+            pendingFingerprints.clear();
+            pendingDocuments.clear();
         }
     }
 
@@ -94,34 +261,78 @@ public class DocumentLoader implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         try {
-            // Load public and courses documents
-            List<String> standardFolders = List.of("documents/public", "documents/courses");
-            List<Document> standardDocs = new ArrayList<>();
-            
-            for (String folder : standardFolders) {
-                List<Document> folderDocs = loadFolder(folder);
-                standardDocs.addAll(folderDocs);
-            }
-            
-            // Load notes documents
-            List<Document> notesDocs = loadFolder("documents/notes");
-            
-            // Save documents to appropriate repositories
-            if (!standardDocs.isEmpty()) {
-                inMemoryDocumentRepository.saveAll(standardDocs);
+            for (DocumentFolders documentFolders : List.of(standardFolders, notesFolders)) {
+                // Restore documents embedded during previous runs, then apply the changes made since
+                documentFolders.fingerprints().putAll(
+                        restoreIndex(documentFolders.index(), documentFolders.repository()));
+                synchronize(documentFolders);
             }
-            if (!notesDocs.isEmpty()) {
-                inMemoryNotesDocumentRepository.saveAll(notesDocs);
-            }
-            
+
             // Print repository status
             logger.info("\nRepository Status:");
-            logger.info("Total standard documents: {}", inMemoryDocumentRepository.size());
-            logger.info("Total notes documents: {}", inMemoryNotesDocumentRepository.size());
-            
+            logger.info("Total standard documents: {}", documentRepository.size());
+            logger.info("Total notes documents: {}", notesDocumentRepository.size());
+
+            if (watch) {
+                startWatching();
+            }
         } catch (Exception e) {
             logger.error("Error in document loading process: {}", e.getMessage(), e);
             System.exit(1);
         }
     }
-} 
\ No newline at end of file
+
+    private void startWatching() throws IOException {
+        watcher = new DocumentFolderWatcher(WATCH_QUIET_PERIOD_MILLIS);
+        for (DocumentFolders documentFolders : List.of(standardFolders, notesFolders)) {
+            Runnable onChange = () -> {
+                try {
+                    synchronize(documentFolders);
+                } catch (IOException e) {
+                    logger.error("Could not apply changes of {}: {}", documentFolders.folders(), e.getMessage(), e);
+                }
+            };
+            for (String folderPath : documentFolders.folders()) {
+                Resource folder = resolver.getResource(documentsLocation + folderPath);
+                if (folder.exists() && folder.isFile()) {
+                    watcher.watch(folder.getFile().toPath(), onChange);
+                } else {
+                    logger.warn("Cannot watch {}, it is not a folder on the file system", folder);
+                }
+            }
+        }
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * @return Hex-encoded SHA-256 of the content of the resource
+     */
+    private static String fingerprint(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    DocumentFolders getStandardFolders() {
+        return standardFolders;
+    }
+
+    DocumentFolders getNotesFolders() {
+        return notesFolders;
+    }
+}
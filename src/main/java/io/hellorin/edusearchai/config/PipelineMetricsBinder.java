@@ -0,0 +1,77 @@
+package io.hellorin.edusearchai.config;
+
+import io.hellorin.edusearchai.component.AnswerCacheComponent;
+import io.hellorin.edusearchai.component.EmbeddingCacheComponent;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the counters kept by the caches and repositories as meters.
+ * Those counters are plain {@link java.util.concurrent.atomic.LongAdder}s on the hot path; meters only read them
+ * when metrics are scraped, so searches never touch the meter registry to count cache hits or scanned candidates.
+ */
+@Component
+public class PipelineMetricsBinder implements MeterBinder {
+
+    private final EmbeddingCacheComponent embeddingCache;
+    private final AnswerCacheComponent answerCache;
+    private final Map<String, DocumentRepository> repositories;
+
+    public PipelineMetricsBinder(EmbeddingCacheComponent embeddingCache,
+                                 AnswerCacheComponent answerCache,
+                                 @Qualifier("documentRepository") DocumentRepository documentRepository,
+                                 @Qualifier("notesDocumentRepository") DocumentRepository notesDocumentRepository) {
+        this.embeddingCache = embeddingCache;
+        this.answerCache = answerCache;
+        this.repositories = Map.of("courses", documentRepository, "notes", notesDocumentRepository);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, "edusearch.embedding.cache", "memory_hit", embeddingCache,
+                EmbeddingCacheComponent::getMemoryHits);
+        counter(registry, "edusearch.embedding.cache", "disk_hit", embeddingCache,
+                EmbeddingCacheComponent::getDiskHits);
+        counter(registry, "edusearch.embedding.cache", "miss", embeddingCache,
+                EmbeddingCacheComponent::getMisses);
+        Gauge.builder("edusearch.embedding.cache.size", embeddingCache, EmbeddingCacheComponent::size)
+                .description("Embeddings in the memory tier of the embedding cache")
+                .register(registry);
+        Gauge.builder("edusearch.embedding.cache.disk.size", embeddingCache, EmbeddingCacheComponent::getDiskEntries)
+                .description("Embeddings in the disk tier of the embedding cache")
+                .register(registry);
+
+        counter(registry, "edusearch.answer.cache", "exact_hit", answerCache, AnswerCacheComponent::getExactHits);
+        counter(registry, "edusearch.answer.cache", "similar_hit", answerCache, AnswerCacheComponent::getSimilarHits);
+        counter(registry, "edusearch.answer.cache", "miss", answerCache, AnswerCacheComponent::getMisses);
+        Gauge.builder("edusearch.answer.cache.size", answerCache, AnswerCacheComponent::size)
+                .description("Answers in the answer cache")
+                .register(registry);
+
+        repositories.forEach((name, repository) -> {
+            FunctionCounter.builder("edusearch.search.candidates", repository, DocumentRepository::getCandidatesScanned)
+                    .tag("repository", name)
+                    .description("Stored vectors scored by brute-force similarity searches")
+                    .register(registry);
+            Gauge.builder("edusearch.repository.documents", repository, DocumentRepository::size)
+                    .tag("repository", name)
+                    .description("Documents stored in the repository")
+                    .register(registry);
+        });
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, String result, T source,
+                                    ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, source, count)
+                .tag("result", result)
+                .register(registry);
+    }
+}
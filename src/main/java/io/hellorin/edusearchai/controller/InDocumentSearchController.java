@@ -1,13 +1,24 @@
 package io.hellorin.edusearchai.controller;
 
+import io.hellorin.edusearchai.model.AnswerPart;
+import io.hellorin.edusearchai.model.DocumentFilter;
 import io.hellorin.edusearchai.service.InDocumentSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Locale;
 
 /**
  * REST Controller for handling document search operations.
  * This controller provides endpoints for searching and retrieving information from documents.
+ * Both endpoints can restrict the course documents an answer is computed from with optional query parameters:
+ * {@code collection} and {@code source}, which may be repeated to accept any of several values, and
+ * {@code since} and {@code until}, inclusive bounds of the document timestamps in epoch milliseconds.
  */
 @RestController
 @RequestMapping("/api/search")
@@ -24,17 +35,64 @@ public class InDocumentSearchController {
      * Endpoint to search within documents and get answers based on the provided query.
      *
      * @param query The search query string to look for in the documents
+     * @param collections Collections the course documents must belong to, any collection if absent
+     * @param sources Sources the course documents must come from, any source if absent
+     * @param since Minimum timestamp of the course documents, no lower bound if absent
+     * @param until Maximum timestamp of the course documents, no upper bound if absent
      * @return ResponseEntity containing either:
      *         - The answer to the query if successful
      *         - A bad request response if the query is empty or null
      */
     @PostMapping("/query")
-    public ResponseEntity<String> searchInDocuments(@RequestBody String query) {
+    public ResponseEntity<String> searchInDocuments(@RequestBody String query,
+                                                    @RequestParam(value = "collection", required = false) List<String> collections,
+                                                    @RequestParam(value = "source", required = false) List<String> sources,
+                                                    @RequestParam(required = false) Long since,
+                                                    @RequestParam(required = false) Long until) {
         if (query == null || query.trim().isEmpty()) {
             return ResponseEntity.badRequest().body("Query cannot be empty");
         }
 
-        String answer = inDocumentSearchService.searchAndAnswer(query);
+        String answer = inDocumentSearchService.searchAndAnswer(query,
+                DocumentFilter.of(sources, collections, since, until));
         return ResponseEntity.ok(answer);
     }
+
+    /**
+     * Endpoint streaming the answer to a query as Server-Sent Events, as the chat model produces it.
+     * Each event holds a piece of text as a JSON {@link AnswerPart}, so that line breaks survive the event
+     * framing; events named {@code course} come first, followed by events named {@code sidenotes} unless
+     * the course answer is a sorry message.
+     *
+     * @param query The search query string to look for in the documents
+     * @param collections Collections the course documents must belong to, any collection if absent
+     * @param sources Sources the course documents must come from, any source if absent
+     * @param since Minimum timestamp of the course documents, no lower bound if absent
+     * @param until Maximum timestamp of the course documents, no upper bound if absent
+     * @return ResponseEntity containing either:
+     *         - The stream of answer events if successful
+     *         - A bad request response with a single {@code error} event if the query is empty or null
+     */
+    @PostMapping(value = "/query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<?>>> streamSearchInDocuments(
+            @RequestBody String query,
+            @RequestParam(value = "collection", required = false) List<String> collections,
+            @RequestParam(value = "source", required = false) List<String> sources,
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Long until) {
+        if (query == null || query.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Flux.just(
+                    ServerSentEvent.builder("Query cannot be empty").event("error").build()));
+        }
+
+        return ResponseEntity.ok(inDocumentSearchService.searchAndAnswerStream(query,
+                        DocumentFilter.of(sources, collections, since, until))
+                .map(InDocumentSearchController::toEvent));
+    }
+
+    private static ServerSentEvent<?> toEvent(AnswerPart part) {
+        return ServerSentEvent.builder(part)
+                .event(part.section().name().toLowerCase(Locale.ROOT))
+                .build();
+    }
 } 
\ No newline at end of file
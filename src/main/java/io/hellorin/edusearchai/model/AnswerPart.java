@@ -0,0 +1,14 @@
+package io.hellorin.edusearchai.model;
+
+/**
+ * A piece of a streamed answer, as produced by the chat model.
+ *
+ * @param section The section of the answer the text belongs to
+ * @param text The text, to be appended to the previous parts of the same section
+ */
+public record AnswerPart(Section section, String text) {
+
+    public enum Section {
+        COURSE, SIDENOTES
+    }
+}
@@ -1,24 +1,32 @@
 package io.hellorin.edusearchai.model;
 
-import java.util.List;
-
 public class Document {
     private String id;
     private String title;
     private String content;
-    private List<Float> embedding;
+    private float[] embedding;
     private String source;
     private long timestamp;
+    private String collection;
 
     public Document() {}
 
-    public Document(String id, String title, String content, List<Float> embedding, String source, long timestamp) {
+    public Document(String id, String title, String content, float[] embedding, String source, long timestamp) {
+        this(id, title, content, embedding, source, timestamp, null);
+    }
+
+    /**
+     * @param collection The collection the document belongs to, e.g. the course folder of its source, may be null
+     */
+    public Document(String id, String title, String content, float[] embedding, String source, long timestamp,
+                    String collection) {
         this.id = id;
         this.title = title;
         this.content = content;
         this.embedding = embedding;
         this.source = source;
         this.timestamp = timestamp;
+        this.collection = collection;
     }
 
     // Getters and Setters
@@ -46,11 +54,11 @@ public class Document {
         this.content = content;
     }
 
-    public List<Float> getEmbedding() {
+    public float[] getEmbedding() {
         return embedding;
     }
 
-    public void setEmbedding(List<Float> embedding) {
+    public void setEmbedding(float[] embedding) {
         this.embedding = embedding;
     }
 
@@ -69,4 +77,12 @@ public class Document {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
 } 
\ No newline at end of file
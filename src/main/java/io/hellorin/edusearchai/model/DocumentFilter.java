@@ -0,0 +1,74 @@
+package io.hellorin.edusearchai.model;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Restricts a search to the documents matching every given condition. Within a condition, a document
+ * matches if it has any of the given values; a condition without values matches every document.
+ *
+ * @param sources Sources the documents must come from, empty for any source
+ * @param collections Collections the documents must belong to, empty for any collection
+ * @param since Minimum timestamp of the documents (inclusive), null for no lower bound
+ * @param until Maximum timestamp of the documents (inclusive), null for no upper bound
+ */
+public record DocumentFilter(Set<String> sources, Set<String> collections, Long since, Long until) {
+
+    /**
+     * Filter matching every document.
+     */
+    public static final DocumentFilter ALL = new DocumentFilter(Set.of(), Set.of(), null, null);
+
+    public DocumentFilter {
+        sources = sources == null ? Set.of() : Set.copyOf(sources);
+        collections = collections == null ? Set.of() : Set.copyOf(collections);
+    }
+
+    /**
+     * Creates a filter from optional request values.
+     *
+     * @param sources Sources the documents must come from, null or empty for any source
+     * @param collections Collections the documents must belong to, null or empty for any collection
+     * @param since Minimum timestamp of the documents, null for no lower bound
+     * @param until Maximum timestamp of the documents, null for no upper bound
+     * @return The filter, {@link #ALL} if no condition is given
+     */
+    public static DocumentFilter of(Collection<String> sources, Collection<String> collections, Long since,
+                                    Long until) {
+        DocumentFilter filter = new DocumentFilter(sources == null ? null : Set.copyOf(sources),
+                collections == null ? null : Set.copyOf(collections), since, until);
+        return filter.isUnrestricted() ? ALL : filter;
+    }
+
+    /**
+     * @return Whether the filter matches every document
+     */
+    public boolean isUnrestricted() {
+        return sources.isEmpty() && collections.isEmpty() && since == null && until == null;
+    }
+
+    /**
+     * @return Whether the filter has a timestamp condition
+     */
+    public boolean hasTimeRange() {
+        return since != null || until != null;
+    }
+
+    /**
+     * @param timestamp The timestamp of a document
+     * @return Whether the timestamp is within the time range of the filter
+     */
+    public boolean matchesTimestamp(long timestamp) {
+        return (since == null || timestamp >= since) && (until == null || timestamp <= until);
+    }
+
+    /**
+     * @param document The document to test
+     * @return Whether the document matches every condition of the filter
+     */
+    public boolean matches(Document document) {
+        return (sources.isEmpty() || sources.contains(document.getSource()))
+                && (collections.isEmpty() || collections.contains(document.getCollection()))
+                && matchesTimestamp(document.getTimestamp());
+    }
+}
@@ -1,38 +1,456 @@
 package io.hellorin.edusearchai.repository;
 
 import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
 import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
 
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
+/**
+ * Base class of the document repositories, answering similarity and lexical searches.
+ * <p>
+ * Searches never contend with writes: they run on the last {@link Snapshot} published by a writer, an
+ * immutable view of the documents, their vectors and their lexical index read through a single volatile
+ * field. Writers are serialized by the lock of the repository and prepare the next generation of the indexes
+ * without affecting published snapshots, then publish it at once at the end of each batch, so a search
+ * sees either none or all of a batch.
+ * <p>
+ * Writers maintain two maps next to the vector store and the lexical index:
+ * 1. documentsById: Maps document IDs to their corresponding Document objects (without embedding)
+ * 2. documentsBySource: Maps source identifiers to lists of documents from that source
+ * Implementations choose the vector store and how similarity searches use it, and can hook into the end
+ * of each write batch with {@link #afterWrite()}.
+ * <p>
+ * Searches can be restricted by a {@link DocumentFilter}. Similarity searches evaluate it on the
+ * {@link MetadataIndex} of the snapshot before scoring, so only the matching rows are scanned.
+ */
 public abstract class DocumentRepository {
 
+    /**
+     * Immutable view of the repository as of the end of a write batch.
+     *
+     * @param generation Number of batches published before this one, included
+     * @param documentsById Documents by id, without embedding
+     * @param vectors Normalized embeddings of the documents
+     * @param lexical Lexical index of the content of the documents
+     * @param metadata Metadata of the rows of the vectors, for filtered searches
+     */
+    protected record Snapshot(long generation, HashTrieMap<String, Document> documentsById, VectorStore.Snapshot vectors,
+                              LexicalIndex.Snapshot lexical, MetadataIndex metadata) {
+    }
+
     private final MathComponent mathComponent;
+    private final ParallelScanComponent parallelScanComponent;
+    private final VectorStore vectorStore;
+    private final LexicalIndex lexicalIndex = new LexicalIndex();
+    private final Map<String, Document> documentsById = new HashMap<>();
+    private final Map<String, List<Document>> documentsBySource = new HashMap<>();
+    // Documents added, replaced or deleted since the last publication
+    private final Set<String> changedIds = new HashSet<>();
+    private final LongAdder candidatesScanned = new LongAdder();
+    private volatile Snapshot snapshot;
 
-    protected DocumentRepository(MathComponent mathComponent) {
+    /**
+     * @param vectorStore The store holding the normalized embedding of every searchable document
+     */
+    protected DocumentRepository(MathComponent mathComponent, ParallelScanComponent parallelScanComponent,
+                                 VectorStore vectorStore) {
         this.mathComponent = mathComponent;
+        this.parallelScanComponent = parallelScanComponent;
+        this.vectorStore = vectorStore;
+        this.snapshot = new Snapshot(0, HashTrieMap.empty(), vectorStore.snapshot(), lexicalIndex.snapshot(),
+                MetadataIndex.EMPTY);
     }
 
     /**
      * Finds documents similar to the query embedding using cosine similarity.
+     * Stored embeddings are normalized at save time, so only the query is normalized here
+     * and each row of the {@link VectorStore} is scored with a plain dot product. The best
+     * candidates are kept in a {@link TopKSelector}, so the corpus is never sorted as a whole.
+     * Large repositories are scanned in parallel segments, each with its own selector.
+     * The search runs on the last published {@link Snapshot}, without locking.
+     * When the store is quantized, codes are scored against the full precision query instead and
+     * the best candidates are optionally re-ranked with their full precision vectors.
      * @param queryEmbedding The embedding vector to compare against
      * @param limit Maximum number of similar documents to return
-     * @return List of documents sorted by similarity (most similar first)
+     * @return List of documents sorted by similarity (most similar first), carrying their normalized embedding
      */
-    public List<Document> findSimilarDocuments(List<Float> queryEmbedding, int limit) {
-        return getDocumentsById().values().stream()
-                .filter(doc -> doc.getEmbedding() != null && !doc.getEmbedding().isEmpty())
-                .map(doc -> Map.entry(doc, mathComponent.cosineSimilarity(queryEmbedding, doc.getEmbedding())))
-                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
-                .limit(limit)
-                .map(Map.Entry::getKey)
-                .toList();
+    public List<Document> findSimilarDocuments(float[] queryEmbedding, int limit) {
+        return findSimilarDocuments(queryEmbedding, limit, DocumentFilter.ALL);
+    }
+
+    /**
+     * Finds the documents matching a filter that are the most similar to the query embedding, like
+     * {@link #findSimilarDocuments(float[], int)}. The rows matching the filter are looked up in the
+     * {@link MetadataIndex} first, and only those are scored.
+     * @param queryEmbedding The embedding vector to compare against
+     * @param limit Maximum number of similar documents to return
+     * @param filter The filter the documents must match
+     * @return List of documents sorted by similarity (most similar first), carrying their normalized embedding
+     */
+    public List<Document> findSimilarDocuments(float[] queryEmbedding, int limit, DocumentFilter filter) {
+        float[] normalizedQuery = mathComponent.normalize(queryEmbedding);
+        int k = Math.max(limit, 0);
+
+        Snapshot current = snapshot;
+        VectorStore.Snapshot store = current.vectors();
+        if (store.rows() > 0 && store.dimension() != normalizedQuery.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+        BitSet allowed = current.metadata().rows(filter);
+        if (allowed != null && allowed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TopKSelector topK = store.isQuantized()
+                ? scanQuantized(store, allowed, normalizedQuery, k)
+                : scan(store, allowed, normalizedQuery, k);
+
+        List<Document> similarDocuments = new ArrayList<>(topK.size());
+        for (int row : topK.sortedIndices()) {
+            Document document = current.documentsById().get(store.id(row));
+            if (document != null) {
+                similarDocuments.add(withEmbedding(document, store.vector(row)));
+            }
+        }
+        return similarDocuments;
+    }
+
+    private TopKSelector scan(VectorStore.Snapshot store, BitSet allowed, float[] normalizedQuery, int k) {
+        float[] vectors = store.data();
+        int dimension = store.dimension();
+
+        TopKSelector topK = new TopKSelector(k);
+        parallelScanComponent.scan(store.rows(), candidates(store, allowed), (from, to) -> {
+            TopKSelector segmentTopK = new TopKSelector(k);
+            int scanned = 0;
+            for (int row = nextRow(allowed, from); row >= 0 && row < to; row = nextRow(allowed, row + 1)) {
+                if (!store.isDeleted(row)) {
+                    segmentTopK.offer(row, mathComponent.dotProduct(normalizedQuery, vectors, row * dimension));
+                    scanned++;
+                }
+            }
+            candidatesScanned.add(scanned);
+            return segmentTopK;
+        }).forEach(topK::merge);
+        return topK;
     }
 
-    public abstract Map<String, Document> getDocumentsById();
+    private TopKSelector scanQuantized(VectorStore.Snapshot store, BitSet allowed, float[] normalizedQuery, int k) {
+        VectorQuantizer.QueryScorer scorer = store.quantizer().prepare(normalizedQuery);
+        byte[] codes = store.codes();
+        int codeSize = store.codeSize();
+        boolean rerank = store.rerankCandidates() > 0 && store.hasFullPrecision();
+        int candidates = rerank ? Math.max(k, store.rerankCandidates()) : k;
 
-    public abstract int size();
+        TopKSelector candidateTopK = new TopKSelector(candidates);
+        parallelScanComponent.scan(store.rows(), candidates(store, allowed), (from, to) -> {
+            TopKSelector segmentTopK = new TopKSelector(candidates);
+            int scanned = 0;
+            for (int row = nextRow(allowed, from); row >= 0 && row < to; row = nextRow(allowed, row + 1)) {
+                if (!store.isDeleted(row)) {
+                    segmentTopK.offer(row, scorer.score(codes, row * codeSize));
+                    scanned++;
+                }
+            }
+            candidatesScanned.add(scanned);
+            return segmentTopK;
+        }).forEach(candidateTopK::merge);
+        if (!rerank) {
+            return candidateTopK;
+        }
 
-    public abstract List<Document> saveAll(List<Document> documents);
+        TopKSelector topK = new TopKSelector(k);
+        for (int row : candidateTopK.sortedIndices()) {
+            topK.offer(row, mathComponent.dotProduct(normalizedQuery, store.data(), row * store.dimension()));
+        }
+        return topK;
+    }
+
+    /**
+     * @return The first row scanned from the given one, all rows being scanned if allowed is null
+     */
+    private static int nextRow(BitSet allowed, int row) {
+        return allowed == null ? row : allowed.nextSetBit(row);
+    }
+
+    private static int candidates(VectorStore.Snapshot store, BitSet allowed) {
+        return allowed == null ? store.rows() : allowed.cardinality();
+    }
+
+    /**
+     * Finds documents whose content best matches the query terms, ranked by BM25.
+     * Unlike {@link #findSimilarDocuments}, this needs no query embedding.
+     * @param query The query text
+     * @param limit Maximum number of documents to return
+     * @return List of documents sorted by relevance (most relevant first), without embedding
+     */
+    public List<Document> findLexicalDocuments(String query, int limit) {
+        return findLexicalDocuments(query, limit, DocumentFilter.ALL);
+    }
+
+    /**
+     * Finds the documents matching a filter whose content best matches the query terms, ranked by BM25.
+     * The filter is checked on the documents containing a query term only.
+     * @param query The query text
+     * @param limit Maximum number of documents to return
+     * @param filter The filter the documents must match
+     * @return List of documents sorted by relevance (most relevant first), without embedding
+     */
+    public List<Document> findLexicalDocuments(String query, int limit, DocumentFilter filter) {
+        Snapshot current = snapshot;
+        Predicate<String> accepted = filter.isUnrestricted() ? null : id -> {
+            Document document = current.documentsById().get(id);
+            return document != null && filter.matches(document);
+        };
+        List<Document> documents = new ArrayList<>();
+        for (String id : current.lexical().search(query, Math.max(limit, 0), accepted)) {
+            Document document = current.documentsById().get(id);
+            if (document != null) {
+                documents.add(withEmbedding(document, null));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Saves a single document to both maps, its normalized embedding to the vector store and its content
+     * to the lexical index, without publishing it.
+     * A document saved again with the same ID replaces the previous version.
+     * The stored copy holds the document metadata and content only, so that each
+     * embedding is kept once, in the vector store. Documents without an embedding are
+     * not added to the vector store and are never returned by similarity searches.
+     * Must be called while holding the lock of the repository.
+     * @param document The document to save
+     * @return The saved document
+     */
+    private Document save(Document document) {
+        boolean embedded = document.getEmbedding() != null && document.getEmbedding().length > 0;
+        store(withEmbedding(document, null), embedded ? mathComponent.normalize(document.getEmbedding()) : null);
+        return document;
+    }
+
+    /**
+     * Stores a document in both maps and the lexical index, and its normalized embedding in the vector store,
+     * without publishing it.
+     * Must be called while holding the lock of the repository.
+     * @param stored The document to store, without embedding
+     * @param normalizedEmbedding Its normalized embedding, copied into the vector store, or null if it has none
+     */
+    private void store(Document stored, float[] normalizedEmbedding) {
+        if (normalizedEmbedding != null) {
+            vectorStore.append(stored.getId(), normalizedEmbedding);
+        } else {
+            vectorStore.delete(stored.getId());
+        }
+        lexicalIndex.add(stored.getId(), stored.getContent());
+        changedIds.add(stored.getId());
+        Document previous = documentsById.put(stored.getId(), stored);
+        if (previous != null && documentsBySource.containsKey(previous.getSource())) {
+            documentsBySource.get(previous.getSource()).removeIf(doc -> doc.getId().equals(previous.getId()));
+        }
+        documentsBySource.computeIfAbsent(stored.getSource(), k -> new ArrayList<>())
+                        .add(stored);
+    }
+
+    /**
+     * Deletes every document of a source from both maps, the vector store and the lexical index, without
+     * publishing the deletion.
+     * Must be called while holding the lock of the repository.
+     * @param source The source whose documents are deleted
+     * @return Number of deleted documents
+     */
+    private int delete(String source) {
+        List<Document> documents = documentsBySource.remove(source);
+        if (documents == null) {
+            return 0;
+        }
+        for (Document document : documents) {
+            documentsById.remove(document.getId());
+            changedIds.add(document.getId());
+            vectorStore.delete(document.getId());
+            lexicalIndex.delete(document.getId());
+        }
+        return documents.size();
+    }
+
+    /**
+     * Publishes the documents, vectors and lexical index written since the previous call as a new
+     * {@link Snapshot}, replacing the one searches run on.
+     * The published documents map is derived from the previous one by applying the documents changed since,
+     * sharing everything else; the vector store and lexical index share their unchanged arrays and terms too. A
+     * batch of c changes in a repository of n documents thus costs O(c log n), plus copying the tombstone
+     * bitsets of both indexes (n / 64 words each, only if the batch deletes or replaces documents) and
+     * the metadata bitsets of the sources and collections of the batch.
+     * Must be called while holding the lock of the repository.
+     */
+    protected void publish() {
+        HashTrieMap<String, Document> documents = snapshot.documentsById();
+        for (String id : changedIds) {
+            Document document = documentsById.get(id);
+            documents = document != null ? documents.with(id, document) : documents.without(id);
+        }
+        changedIds.clear();
+        VectorStore.Snapshot vectors = vectorStore.publish();
+        snapshot = new Snapshot(snapshot.generation() + 1, documents, vectors, lexicalIndex.publish(),
+                MetadataIndex.update(snapshot.metadata(), vectors, documents));
+    }
+
+    /**
+     * Called at the end of each write batch once it is published, while holding the lock of the repository,
+     * e.g. to update an index derived from the published rows. Does nothing by default.
+     */
+    protected void afterWrite() {
+    }
+
+    /**
+     * @return The last published snapshot
+     */
+    protected Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Counts the published write batches, so that results derived from the repository can be
+     * invalidated when it changes.
+     * @return The generation of the last published snapshot
+     */
+    public long getGeneration() {
+        return snapshot.generation();
+    }
+
+    /**
+     * @return Number of stored vectors scored by brute-force similarity searches so far, for monitoring
+     */
+    public long getCandidatesScanned() {
+        return candidatesScanned.sum();
+    }
+
+    /**
+     * Copies a document, replacing its embedding.
+     * @param document The document to copy
+     * @param embedding The embedding of the copy, may be null
+     * @return A new document instance
+     */
+    protected static Document withEmbedding(Document document, float[] embedding) {
+        return new Document(document.getId(), document.getTitle(), document.getContent(), embedding,
+                document.getSource(), document.getTimestamp(), document.getCollection());
+    }
+
+    /**
+     * Reserves room for the embeddings of a number of documents, before saving many documents at once.
+     *
+     * @param documents Number of documents the repository is expected to hold
+     */
+    public void reserve(int documents) {
+        vectorStore.reserve(documents);
+    }
+
+    /**
+     * @return The store holding the normalized embedding of every searchable document
+     */
+    protected VectorStore getVectorStore() {
+        return vectorStore;
+    }
+
+    /**
+     * @return The documents by id, without embedding, as of the last published snapshot
+     */
+    public Map<String, Document> getDocumentsById() {
+        return snapshot.documentsById();
+    }
+
+    /**
+     * @return Number of documents as of the last published snapshot
+     */
+    public int size() {
+        return snapshot.documentsById().size();
+    }
+
+    /**
+     * Saves multiple documents to the repository and publishes them at once.
+     * @param documents List of documents to save
+     * @return List of saved documents
+     */
+    public synchronized List<Document> saveAll(List<Document> documents) {
+        List<Document> saved = documents.stream().map(this::save).toList();
+        publish();
+        afterWrite();
+        return saved;
+    }
+
+    /**
+     * Restores the documents of a persistent index and publishes them at once, e.g. at startup.
+     * Room is reserved for the rows of the index up front. Each embedding is read from the mapped segment
+     * into a single reused buffer, normalized there and copied into the vector store, so no array is
+     * allocated per row. The lexical index is not persisted: the content of each document is tokenized again.
+     * @param index The index to read
+     * @return Number of restored documents
+     * @throws IOException if the index cannot be read, the documents read until then being published anyway
+     */
+    public synchronized int restore(PersistentVectorIndex index) throws IOException {
+        vectorStore.reserve(documentsById.size() + index.rows());
+        try {
+            return index.load(new PersistentVectorIndex.RowReader() {
+                private float[] embedding = new float[0];
+
+                @Override
+                public void read(Document document, FloatBuffer row) {
+                    if (embedding.length != row.remaining()) {
+                        embedding = new float[row.remaining()];
+                    }
+                    row.get(embedding);
+                    mathComponent.normalizeInPlace(embedding);
+                    store(document, embedding);
+                }
+            });
+        } finally {
+            publish();
+            afterWrite();
+        }
+    }
+
+    /**
+     * Deletes every document of a source, e.g. when the file they were extracted from changed or was removed,
+     * and publishes the deletion at once.
+     * @param source The source whose documents are deleted
+     * @return Number of deleted documents
+     */
+    public synchronized int deleteBySource(String source) {
+        int deleted = delete(source);
+        if (deleted > 0) {
+            publish();
+            afterWrite();
+        }
+        return deleted;
+    }
+
+    /**
+     * Replaces every document of some sources in a single batch, e.g. with the documents of changed files
+     * once they are embedded, so that searches never see the sources missing or half replaced.
+     * @param sources The sources whose documents are deleted
+     * @param documents The documents to save after the deletion, usually of the same sources
+     * @return Number of deleted documents
+     */
+    public synchronized int replaceSources(Collection<String> sources, List<Document> documents) {
+        int deleted = 0;
+        for (String source : sources) {
+            deleted += delete(source);
+        }
+        documents.forEach(this::save);
+        publish();
+        afterWrite();
+        return deleted;
+    }
 }
@@ -0,0 +1,245 @@
+package io.hellorin.edusearchai.repository;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable hash map sharing its structure with the map it was derived from, so that publishing a snapshot
+ * derived from the previous one by a few changes costs O(changes * log32 n) instead of a copy of the whole map.
+ * <p>
+ * Entries are stored in a hash array mapped trie: each node consumes 5 bits of the hash of the keys and holds,
+ * in an array compacted by a 32-bit bitmap, entries and child nodes. {@link #with} and {@link #without} copy the
+ * nodes on the path to the changed key only. Once the 32 bits are consumed, keys with equal hashes are kept in a
+ * plain list at the bottom of the trie. Null keys and values are not supported.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+final class HashTrieMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final HashTrieMap<?, ?> EMPTY = new HashTrieMap<>(Node.EMPTY, 0);
+
+    /**
+     * Node of the trie. Its slots hold entries and child nodes, in the order of their bit in the bitmap; below
+     * the last level, they hold the entries whose keys have the same hash, in no particular order.
+     */
+    private static final class Node {
+        private static final Node EMPTY = new Node(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private HashTrieMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrieMap<K, V> empty() {
+        return (HashTrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key The key to map
+     * @param value The value of the key
+     * @return A map holding the entries of this one and the given entry, replacing any previous value of the key
+     */
+    HashTrieMap<K, V> with(K key, V value) {
+        Map.Entry<K, V> entry = Map.entry(key, value);
+        return new HashTrieMap<>(put(root, entry, key.hashCode(), 0), find(key) == null ? size + 1 : size);
+    }
+
+    /**
+     * @param key The key to remove
+     * @return A map holding the entries of this one but the given key, this map if it does not hold the key
+     */
+    HashTrieMap<K, V> without(Object key) {
+        Node removed = remove(root, key, key.hashCode(), 0);
+        return removed == root ? this : new HashTrieMap<>(removed, size - 1);
+    }
+
+    @Override
+    public V get(Object key) {
+        Map.Entry<K, V> entry = key == null ? null : find(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && find(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                List<Entry<K, V>> entries = new ArrayList<>(size);
+                collect(root, entries);
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, V> find(Object key) {
+        int hash = key.hashCode();
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (shift >= Integer.SIZE) {
+                for (Object slot : node.slots) {
+                    if (((Map.Entry<K, V>) slot).getKey().equals(key)) {
+                        return (Map.Entry<K, V>) slot;
+                    }
+                }
+                return null;
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[index(node.bitmap, bit)];
+            if (slot instanceof Node child) {
+                node = child;
+            } else {
+                Map.Entry<K, V> entry = (Map.Entry<K, V>) slot;
+                return entry.getKey().equals(key) ? entry : null;
+            }
+        }
+    }
+
+    private static Node put(Node node, Map.Entry<?, ?> entry, int hash, int shift) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.slots.length; i++) {
+                if (((Map.Entry<?, ?>) node.slots[i]).getKey().equals(entry.getKey())) {
+                    return new Node(0, replaced(node.slots, i, entry));
+                }
+            }
+            return new Node(0, inserted(node.slots, node.slots.length, entry));
+        }
+        int bit = bit(hash, shift);
+        int index = index(node.bitmap, bit);
+        if ((node.bitmap & bit) == 0) {
+            return new Node(node.bitmap | bit, inserted(node.slots, index, entry));
+        }
+        Object slot = node.slots[index];
+        if (slot instanceof Node child) {
+            return new Node(node.bitmap, replaced(node.slots, index, put(child, entry, hash, shift + BITS)));
+        }
+        Map.Entry<?, ?> existing = (Map.Entry<?, ?>) slot;
+        if (existing.getKey().equals(entry.getKey())) {
+            return new Node(node.bitmap, replaced(node.slots, index, entry));
+        }
+        // Both entries move one level down, where their hashes may still share the same bits
+        Node child = put(Node.EMPTY, existing, existing.getKey().hashCode(), shift + BITS);
+        child = put(child, entry, hash, shift + BITS);
+        return new Node(node.bitmap, replaced(node.slots, index, child));
+    }
+
+    /**
+     * @return The node without the key, the node itself if it does not hold the key
+     */
+    private static Node remove(Node node, Object key, int hash, int shift) {
+        if (shift >= Integer.SIZE) {
+            for (int i = 0; i < node.slots.length; i++) {
+                if (((Map.Entry<?, ?>) node.slots[i]).getKey().equals(key)) {
+                    return new Node(0, removed(node.slots, i));
+                }
+            }
+            return node;
+        }
+        int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = index(node.bitmap, bit);
+        Object slot = node.slots[index];
+        if (slot instanceof Node child) {
+            Node removedChild = remove(child, key, hash, shift + BITS);
+            if (removedChild == child) {
+                return node;
+            }
+            if (removedChild.slots.length == 0) {
+                return new Node(node.bitmap & ~bit, removed(node.slots, index));
+            }
+            // A child left with a single entry is inlined, lookups stop at the first entry they meet
+            Object replacement = removedChild.slots.length == 1 && !(removedChild.slots[0] instanceof Node)
+                    ? removedChild.slots[0] : removedChild;
+            return new Node(node.bitmap, replaced(node.slots, index, replacement));
+        }
+        if (!((Map.Entry<?, ?>) slot).getKey().equals(key)) {
+            return node;
+        }
+        return new Node(node.bitmap & ~bit, removed(node.slots, index));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void collect(Node node, List<Entry<K, V>> entries) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Node child) {
+                collect(child, entries);
+            } else {
+                entries.add((Entry<K, V>) slot);
+            }
+        }
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static Object[] inserted(Object[] slots, int index, Object slot) {
+        Object[] copy = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        copy[index] = slot;
+        System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+        return copy;
+    }
+
+    private static Object[] replaced(Object[] slots, int index, Object slot) {
+        Object[] copy = Arrays.copyOf(slots, slots.length);
+        copy[index] = slot;
+        return copy;
+    }
+
+    private static Object[] removed(Object[] slots, int index) {
+        Object[] copy = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+        return copy;
+    }
+}
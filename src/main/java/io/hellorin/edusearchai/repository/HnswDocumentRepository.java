@@ -0,0 +1,116 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
+
+import java.util.*;
+
+/**
+ * Document repository answering similarity searches with an approximate HNSW index
+ * instead of a brute-force scan, so query cost grows logarithmically with the corpus.
+ * Used by the application instead of the in-memory repositories with {@code app.search.index=hnsw}.
+ * Its vector store holds one graph node per row.
+ * Documents are inserted into the graph incrementally at the end of each write batch, once they
+ * are published. Unlike the maps and the vector store, the graph is modified in place, so its insertions
+ * still exclude searches.
+ * Deleted documents stay in the graph as tombstoned rows. Once at least half of the rows are tombstones,
+ * the index is retired, the vector store compacted and a new index built over the remaining rows; searches
+ * running meanwhile fall back to an exact scan.
+ */
+public class HnswDocumentRepository extends DocumentRepository {
+
+    private static final int MIN_ROWS_TO_REBUILD = 64;
+
+    private final MathComponent mathComponent;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private volatile HnswIndex index;
+
+    /**
+     * @param mathComponent Component used to normalize and compare vectors
+     * @param parallelScanComponent Component scanning the rows of filtered searches
+     * @param m Number of neighbors per node on the upper layers of the graph (twice as many on layer 0)
+     * @param efConstruction Size of the candidate list used when inserting documents
+     * @param efSearch Size of the candidate list used when searching
+     */
+    public HnswDocumentRepository(MathComponent mathComponent, ParallelScanComponent parallelScanComponent,
+                                  int m, int efConstruction, int efSearch) {
+        // Only compacted when the graph is rebuilt, graph nodes refer to rows
+        super(mathComponent, parallelScanComponent, new VectorStore(false));
+        this.mathComponent = mathComponent;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.index = new HnswIndex(getVectorStore(), mathComponent, m, efConstruction, efSearch);
+    }
+
+    /**
+     * Finds documents similar to the query embedding using the HNSW index.
+     * Results are approximate: a document may be missed if the graph search does not reach it.
+     * Filtered searches scan the rows matching the filter instead, since the graph cannot skip the
+     * other rows without losing its connectivity; the results are then exact, as are the results of searches
+     * running while the graph is rebuilt.
+     * @param queryEmbedding The embedding vector to compare against
+     * @param limit Maximum number of similar documents to return
+     * @param filter The filter the documents must match
+     * @return List of documents sorted by similarity (most similar first), carrying their normalized embedding
+     */
+    @Override
+    public List<Document> findSimilarDocuments(float[] queryEmbedding, int limit, DocumentFilter filter) {
+        if (!filter.isUnrestricted()) {
+            return super.findSimilarDocuments(queryEmbedding, limit, filter);
+        }
+        // Rows are resolved against the store snapshot the graph was searched on, since they are renumbered
+        // when the store is compacted
+        List<Document> similarDocuments = index.search(mathComponent.normalize(queryEmbedding), limit,
+                (vectors, rows) -> {
+                    Map<String, Document> documents = snapshot().documentsById();
+                    List<Document> found = new ArrayList<>(rows.length);
+                    for (int row : rows) {
+                        Document document = documents.get(vectors.id(row));
+                        if (document != null) {
+                            found.add(withEmbedding(document, vectors.vector(row)));
+                        }
+                    }
+                    return found;
+                });
+        if (similarDocuments == null) {
+            // The index was retired and is being rebuilt
+            return super.findSimilarDocuments(queryEmbedding, limit, filter);
+        }
+        return similarDocuments;
+    }
+
+    /**
+     * Inserts the embeddings of the published documents into the index, and rebuilds it once tombstones
+     * dominate.
+     */
+    @Override
+    protected void afterWrite() {
+        index.indexPendingRows();
+        rebuildIfNeeded();
+    }
+
+    /**
+     * Rebuilds the graph over the compacted vector store once at least half of its rows are tombstones,
+     * replaced versions of a document counting as tombstones too.
+     * Must be called while holding the lock of the repository.
+     */
+    private void rebuildIfNeeded() {
+        VectorStore.Snapshot vectors = snapshot().vectors();
+        int tombstones = vectors.rows() - vectors.size();
+        if (vectors.rows() < MIN_ROWS_TO_REBUILD || tombstones * 2 < vectors.rows()) {
+            return;
+        }
+        // Once retired, the index no longer reads the store, which can be compacted under it
+        index.retire();
+        getVectorStore().compact();
+        publish();
+        HnswIndex rebuilt = new HnswIndex(getVectorStore(), mathComponent, m, efConstruction, efSearch);
+        rebuilt.indexPendingRows();
+        index = rebuilt;
+    }
+}
@@ -0,0 +1,426 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.component.MathComponent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin) over the rows of a {@link VectorStore}.
+ * Each row of the store is a node of the graph; rows are indexed incrementally in the order they were
+ * appended, so the store must not be compacted while the index is in use. Vectors are expected to be normalized, the similarity
+ * between two nodes being their dot product.
+ * <p>
+ * Tombstoned rows stay in the graph to keep it connected but are never returned by {@link #search}.
+ * Since the store cannot be compacted under the graph, the owner replaces the whole index once tombstones
+ * dominate: the index is {@link #retire() retired}, the store compacted and a new index built over it.
+ * <p>
+ * Parameters:
+ * <ul>
+ *     <li>m: number of neighbors kept per node on the upper layers (2 * m on layer 0)</li>
+ *     <li>efConstruction: size of the candidate list when inserting a node</li>
+ *     <li>efSearch: size of the candidate list when searching, raised to k if k is larger</li>
+ * </ul>
+ */
+public class HnswIndex {
+
+    private static final int MAX_LEVEL = 16;
+
+    private final VectorStore vectorStore;
+    private final MathComponent mathComponent;
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // links[node][level] holds the neighbor count at index 0 followed by the neighbors
+    private int[][][] links = new int[16][][];
+    private int nodeCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private boolean retired;
+
+    public HnswIndex(VectorStore vectorStore, MathComponent mathComponent, int m, int efConstruction, int efSearch) {
+        this(vectorStore, mathComponent, m, efConstruction, efSearch, new Random(42));
+    }
+
+    public HnswIndex(VectorStore vectorStore, MathComponent mathComponent, int m, int efConstruction, int efSearch,
+                     Random random) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("m must be at least 2, efConstruction and efSearch at least 1");
+        }
+        this.vectorStore = vectorStore;
+        this.mathComponent = mathComponent;
+        this.m = m;
+        this.maxConnections0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = random;
+    }
+
+    /**
+     * Inserts every row published to the vector store since the last call into the graph.
+     */
+    public void indexPendingRows() {
+        lock.writeLock().lock();
+        try {
+            vectorStore.read(store -> {
+                while (nodeCount < store.rows()) {
+                    insert(store, nodeCount++);
+                }
+                return null;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the approximate nearest neighbors of the query.
+     *
+     * @param normalizedQuery Query vector of unit length, with the dimension of the stored vectors
+     * @param k Maximum number of rows to return
+     * @return Rows of the nearest non-deleted neighbors, most similar first, or null if the index is retired
+     * @throws IllegalArgumentException if the query dimension differs from the stored vectors
+     */
+    public int[] search(float[] normalizedQuery, int k) {
+        return search(normalizedQuery, k, (store, rows) -> rows);
+    }
+
+    /**
+     * Finds the approximate nearest neighbors of the query and reads them from the store snapshot the
+     * search ran on, in which the returned rows are valid.
+     *
+     * @param normalizedQuery Query vector of unit length, with the dimension of the stored vectors
+     * @param k Maximum number of rows to return
+     * @param reader Function reading the rows of the nearest non-deleted neighbors, most similar first
+     * @param <R> Type of the result
+     * @return Result of the reader, or null if the index is retired
+     * @throws IllegalArgumentException if the query dimension differs from the stored vectors
+     */
+    public <R> R search(float[] normalizedQuery, int k, BiFunction<VectorStore.Snapshot, int[], R> reader) {
+        lock.readLock().lock();
+        try {
+            if (retired) {
+                return null;
+            }
+            return vectorStore.read(store -> reader.apply(store, search(store, normalizedQuery, k)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for the searches in progress, after which searches return null and the store may be compacted.
+     */
+    public void retire() {
+        lock.writeLock().lock();
+        try {
+            retired = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int[] search(VectorStore.Snapshot store, float[] normalizedQuery, int k) {
+        if (k <= 0 || entryPoint == -1) {
+            return new int[0];
+        }
+        if (store.dimension() != normalizedQuery.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+        int current = greedySearch(store, normalizedQuery, entryPoint, maxLevel, 0);
+        NodeHeap entryPoints = new NodeHeap(1);
+        entryPoints.push(current, similarity(store, normalizedQuery, current));
+        NodeHeap results = searchLayer(store, normalizedQuery, entryPoints, Math.max(efSearch, k), 0);
+
+        TopKSelector topK = new TopKSelector(k);
+        for (int i = 0; i < results.size; i++) {
+            if (!store.isDeleted(results.nodes[i])) {
+                topK.offer(results.nodes[i], results.scores[i]);
+            }
+        }
+        return topK.sortedIndices();
+    }
+
+    /**
+     * @return Number of rows inserted into the graph
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(VectorStore.Snapshot store, int node) {
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + maxConnections(l)];
+        }
+        if (node >= links.length) {
+            links = Arrays.copyOf(links, Math.max(node + 1, links.length + (links.length >> 1)));
+        }
+        links[node] = nodeLinks;
+
+        if (entryPoint == -1) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = store.vector(node);
+        int current = greedySearch(store, vector, entryPoint, maxLevel, level + 1);
+        NodeHeap entryPoints = new NodeHeap(1);
+        entryPoints.push(current, similarity(store, vector, current));
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(store, vector, entryPoints, efConstruction, l);
+            int[] neighbors = selectNeighbors(store, candidates, m);
+            nodeLinks[l][0] = neighbors.length;
+            System.arraycopy(neighbors, 0, nodeLinks[l], 1, neighbors.length);
+            for (int neighbor : neighbors) {
+                addLink(store, neighbor, node, l);
+            }
+            entryPoints = candidates;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Walks greedily from the entry point towards the query on every layer from fromLevel down to toLevel.
+     */
+    private int greedySearch(VectorStore.Snapshot store, float[] query, int entry, int fromLevel, int toLevel) {
+        int current = entry;
+        double currentSimilarity = similarity(store, query, current);
+        for (int l = fromLevel; l >= toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links[current][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    double neighborSimilarity = similarity(store, query, neighbors[i]);
+                    if (neighborSimilarity > currentSimilarity) {
+                        current = neighbors[i];
+                        currentSimilarity = neighborSimilarity;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer, returning at most ef nodes in a min-heap keyed by similarity to the query.
+     */
+    private NodeHeap searchLayer(VectorStore.Snapshot store, float[] query, NodeHeap entryPoints, int ef, int level) {
+        BitSet visited = new BitSet(nodeCount);
+        // Max-heap emulated with negated similarities
+        NodeHeap candidates = new NodeHeap(ef);
+        NodeHeap results = new NodeHeap(ef + 1);
+        for (int i = 0; i < entryPoints.size; i++) {
+            int node = entryPoints.nodes[i];
+            visited.set(node);
+            candidates.push(node, -entryPoints.scores[i]);
+            results.push(node, entryPoints.scores[i]);
+            if (results.size > ef) {
+                results.pop();
+            }
+        }
+
+        while (candidates.size > 0) {
+            double candidateSimilarity = -candidates.peekScore();
+            int candidate = candidates.pop();
+            if (results.size >= ef && candidateSimilarity < results.peekScore()) {
+                break;
+            }
+            int[] neighbors = links[candidate][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                double neighborSimilarity = similarity(store, query, neighbor);
+                if (results.size < ef || neighborSimilarity > results.peekScore()) {
+                    candidates.push(neighbor, -neighborSimilarity);
+                    results.push(neighbor, neighborSimilarity);
+                    if (results.size > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Neighbor selection heuristic: a candidate is kept only if it is more similar to the base node than to
+     * any neighbor already kept, which favors neighbors in different directions and keeps the graph navigable.
+     *
+     * @param candidates Candidates with their similarity to the base node
+     * @param max Maximum number of neighbors to select
+     */
+    private int[] selectNeighbors(VectorStore.Snapshot store, NodeHeap candidates, int max) {
+        int[] order = candidates.nodesByDescendingScore();
+        double[] orderScores = candidates.scoresByDescendingScore();
+        int[] selected = new int[Math.min(max, order.length)];
+        int selectedCount = 0;
+        int dimension = store.dimension();
+        for (int i = 0; i < order.length && selectedCount < selected.length; i++) {
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                double similarityToSelected = mathComponent.dotProduct(store.data(),
+                        order[i] * dimension, selected[j] * dimension, dimension);
+                if (similarityToSelected > orderScores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = order[i];
+            }
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+
+    private void addLink(VectorStore.Snapshot store, int node, int newNeighbor, int level) {
+        int[] nodeLinks = links[node][level];
+        int count = nodeLinks[0];
+        if (count < nodeLinks.length - 1) {
+            nodeLinks[count + 1] = newNeighbor;
+            nodeLinks[0] = count + 1;
+            return;
+        }
+
+        int dimension = store.dimension();
+        NodeHeap candidates = new NodeHeap(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.push(nodeLinks[i], mathComponent.dotProduct(store.data(),
+                    node * dimension, nodeLinks[i] * dimension, dimension));
+        }
+        candidates.push(newNeighbor, mathComponent.dotProduct(store.data(),
+                node * dimension, newNeighbor * dimension, dimension));
+        int[] neighbors = selectNeighbors(store, candidates, maxConnections(level));
+        nodeLinks[0] = neighbors.length;
+        System.arraycopy(neighbors, 0, nodeLinks, 1, neighbors.length);
+    }
+
+    private double similarity(VectorStore.Snapshot store, float[] query, int node) {
+        return mathComponent.dotProduct(query, store.data(), node * store.dimension());
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnections0 : m;
+    }
+
+    private int randomLevel() {
+        double level = -Math.log(1.0 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(level, MAX_LEVEL);
+    }
+
+    /**
+     * Binary min-heap of nodes keyed by a double score, growing as needed.
+     */
+    private static final class NodeHeap {
+        private double[] scores;
+        private int[] nodes;
+        private int size;
+
+        NodeHeap(int capacity) {
+            this.scores = new double[Math.max(capacity, 1)];
+            this.nodes = new int[Math.max(capacity, 1)];
+        }
+
+        void push(int node, double score) {
+            if (size == nodes.length) {
+                scores = Arrays.copyOf(scores, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int position = size++;
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                scores[position] = scores[parent];
+                nodes[position] = nodes[parent];
+                position = parent;
+            }
+            scores[position] = score;
+            nodes[position] = node;
+        }
+
+        double peekScore() {
+            return scores[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            double score = scores[size];
+            int node = nodes[size];
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (score <= scores[child]) {
+                    break;
+                }
+                scores[position] = scores[child];
+                nodes[position] = nodes[child];
+                position = child;
+            }
+            scores[position] = score;
+            nodes[position] = node;
+            return top;
+        }
+
+        int[] nodesByDescendingScore() {
+            int[] order = sortedPositions();
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = nodes[order[i]];
+            }
+            return sorted;
+        }
+
+        double[] scoresByDescendingScore() {
+            int[] order = sortedPositions();
+            double[] sorted = new double[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = scores[order[i]];
+            }
+            return sorted;
+        }
+
+        private int[] sortedPositions() {
+            TopKSelector topK = new TopKSelector(size);
+            for (int i = 0; i < size; i++) {
+                topK.offer(i, scores[i]);
+            }
+            return topK.sortedIndices();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package io.hellorin.edusearchai.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index ranking documents by BM25 over their content, so that a query can be
+ * answered without computing its embedding.
+ * <p>
+ * Documents are numbered in insertion order. Each term maps to a postings list holding the numbers of
+ * the documents containing it and the term frequencies, in two growable int arrays; since numbers only
+ * grow, postings stay sorted and adding a document is amortized O(1) per term. Document lengths are kept
+ * in a parallel int array.
+ * <p>
+ * Like {@link VectorStore}, replaced and deleted documents are only marked as tombstones, and are
+ * physically removed once half of the documents are tombstones. Also like {@link VectorStore}, searches
+ * never take a lock: they run on the last {@link Snapshot} published by {@link #publish()}. Postings, ids
+ * and lengths are only appended past what a snapshot can see, and compaction copies them. A publication
+ * derives the term map of the new snapshot from the previous one by replacing the postings of the terms
+ * changed since, in O(changed terms * log terms), and copies the tombstones only if documents were deleted
+ * or replaced since; the postings themselves are never copied.
+ */
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_DOCUMENTS_TO_COMPACT = 64;
+
+    /**
+     * Documents containing a term, with the number of occurrences of the term in each of them.
+     */
+    private static final class Postings {
+        private int[] documents;
+        private int[] frequencies;
+        private int size;
+
+        private Postings(int capacity) {
+            documents = new int[capacity];
+            frequencies = new int[capacity];
+        }
+
+        private void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+
+    /**
+     * Postings of a term as of a publication, never read past their size.
+     */
+    private record PublishedPostings(int[] documents, int[] frequencies, int size) {
+    }
+
+    /**
+     * Scores of the documents matched by a query, in an open-addressing hash table from document numbers to
+     * scores, so that a query allocates in proportion to its matches rather than to the whole index.
+     */
+    private static final class Scores {
+        private static final int EMPTY = -1;
+
+        private int[] documents;
+        private double[] scores;
+        private int size;
+
+        private Scores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, expected * 2 - 1)) << 1;
+            documents = new int[capacity];
+            scores = new double[capacity];
+            Arrays.fill(documents, EMPTY);
+        }
+
+        private void add(int document, double score) {
+            int slot = slot(documents, document);
+            if (documents[slot] == EMPTY) {
+                if ((size + 1) * 2 > documents.length) {
+                    grow();
+                    slot = slot(documents, document);
+                }
+                documents[slot] = document;
+                size++;
+            }
+            scores[slot] += score;
+        }
+
+        private void grow() {
+            int[] oldDocuments = documents;
+            double[] oldScores = scores;
+            documents = new int[oldDocuments.length * 2];
+            scores = new double[oldScores.length * 2];
+            Arrays.fill(documents, EMPTY);
+            for (int i = 0; i < oldDocuments.length; i++) {
+                if (oldDocuments[i] != EMPTY) {
+                    int slot = slot(documents, oldDocuments[i]);
+                    documents[slot] = oldDocuments[i];
+                    scores[slot] = oldScores[i];
+                }
+            }
+        }
+
+        /**
+         * @return Slot holding the document, or the empty slot where it belongs
+         */
+        private static int slot(int[] documents, int document) {
+            int mask = documents.length - 1;
+            int hash = document * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (documents[slot] != EMPTY && documents[slot] != document) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+    // Terms whose postings changed since the last publication
+    private final Set<String> changedTerms = new HashSet<>();
+    private final Map<String, Integer> documentsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // Whether tombstones changed since the last publication, which shares them otherwise
+    private boolean deletedChanged;
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int documents;
+    private int tombstones;
+    private long totalLength;
+    private volatile Snapshot snapshot = new Snapshot(HashTrieMap.empty(), ids, lengths, new BitSet(), 0, 0);
+
+    /**
+     * Indexes the content of a document. If the id is already indexed, its previous content is replaced.
+     * The document is visible to searches once {@link #publish()} is called.
+     *
+     * @param id Id of the document
+     * @param content Content of the document, may be null
+     */
+    public void add(String id, String content) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> terms = tokenize(content);
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+
+        synchronized (this) {
+            deleteDocument(id);
+            if (documents == ids.length) {
+                ids = Arrays.copyOf(ids, documents * 2);
+                lengths = Arrays.copyOf(lengths, documents * 2);
+            }
+            int document = documents++;
+            ids[document] = id;
+            lengths[document] = terms.size();
+            totalLength += terms.size();
+            documentsById.put(id, document);
+            frequencies.forEach((term, frequency) ->
+                    postingsByTerm.computeIfAbsent(term, t -> new Postings(4)).add(document, frequency));
+            changedTerms.addAll(frequencies.keySet());
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Removes a document from the index.
+     * The removal is visible to searches once {@link #publish()} is called.
+     *
+     * @param id Id of the document to remove
+     * @return true if the document was indexed
+     */
+    public synchronized boolean delete(String id) {
+        boolean removed = deleteDocument(id);
+        compactIfNeeded();
+        return removed;
+    }
+
+    /**
+     * Makes every change since the previous call visible to searches at once.
+     *
+     * @return The published snapshot
+     */
+    public synchronized Snapshot publish() {
+        HashTrieMap<String, PublishedPostings> postings = snapshot.postingsByTerm;
+        for (String term : changedTerms) {
+            Postings termPostings = postingsByTerm.get(term);
+            if (termPostings == null) {
+                postings = postings.without(term);
+            } else {
+                postings = postings.with(term, new PublishedPostings(termPostings.documents, termPostings.frequencies,
+                        termPostings.size));
+            }
+        }
+        changedTerms.clear();
+        BitSet publishedDeleted = deletedChanged ? (BitSet) deleted.clone() : snapshot.deleted;
+        deletedChanged = false;
+        snapshot = new Snapshot(postings, ids, lengths, publishedDeleted, documentsById.size(), totalLength);
+        return snapshot;
+    }
+
+    /**
+     * @return The last published snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Finds the documents best matching a query with BM25, in the last published snapshot.
+     *
+     * @param query The query text
+     * @param k Maximum number of documents to return
+     * @return Ids of the documents containing at least one query term, best match first
+     */
+    public List<String> search(String query, int k) {
+        return snapshot.search(query, k);
+    }
+
+    /**
+     * @return Number of published documents, tombstones excluded
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Splits a text into lowercase terms made of letters and digits.
+     *
+     * @param text The text to split, may be null
+     * @return The terms of the text, in order, with repetitions
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean termChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private boolean deleteDocument(String id) {
+        Integer document = documentsById.remove(id);
+        if (document == null) {
+            return false;
+        }
+        deleted.set(document);
+        deletedChanged = true;
+        tombstones++;
+        totalLength -= lengths[document];
+        return true;
+    }
+
+    private void compactIfNeeded() {
+        if (documents >= MIN_DOCUMENTS_TO_COMPACT && tombstones * 2 >= documents) {
+            compact();
+        }
+    }
+
+    /**
+     * Renumbers the live documents contiguously and drops the postings of tombstones.
+     */
+    private void compact() {
+        int[] renumbered = new int[documents];
+        String[] compactedIds = new String[ids.length];
+        int[] compactedLengths = new int[lengths.length];
+        int live = 0;
+        for (int document = 0; document < documents; document++) {
+            if (deleted.get(document)) {
+                renumbered[document] = -1;
+                continue;
+            }
+            renumbered[document] = live;
+            compactedIds[live] = ids[document];
+            compactedLengths[live] = lengths[document];
+            documentsById.put(ids[document], live);
+            live++;
+        }
+        ids = compactedIds;
+        lengths = compactedLengths;
+
+        Iterator<Map.Entry<String, Postings>> iterator = postingsByTerm.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Postings> entry = iterator.next();
+            Postings postings = entry.getValue();
+            Postings compacted = new Postings(Math.max(postings.size, 4));
+            for (int i = 0; i < postings.size; i++) {
+                int document = renumbered[postings.documents[i]];
+                if (document >= 0) {
+                    compacted.add(document, postings.frequencies[i]);
+                }
+            }
+            if (compacted.size == 0) {
+                iterator.remove();
+            } else {
+                entry.setValue(compacted);
+            }
+        }
+        changedTerms.addAll(snapshot.postingsByTerm.keySet());
+        changedTerms.addAll(postingsByTerm.keySet());
+        deleted.clear();
+        deletedChanged = true;
+        tombstones = 0;
+        documents = live;
+    }
+
+    /**
+     * Immutable view of the index as of a publication.
+     */
+    public static final class Snapshot {
+
+        private final HashTrieMap<String, PublishedPostings> postingsByTerm;
+        private final String[] ids;
+        private final int[] lengths;
+        private final BitSet deleted;
+        private final int liveDocuments;
+        private final long totalLength;
+
+        private Snapshot(HashTrieMap<String, PublishedPostings> postingsByTerm, String[] ids, int[] lengths, BitSet deleted,
+                         int liveDocuments, long totalLength) {
+            this.postingsByTerm = postingsByTerm;
+            this.ids = ids;
+            this.lengths = lengths;
+            this.deleted = deleted;
+            this.liveDocuments = liveDocuments;
+            this.totalLength = totalLength;
+        }
+
+        /**
+         * Finds the documents best matching a query with BM25.
+         *
+         * @param query The query text
+         * @param k Maximum number of documents to return
+         * @return Ids of the documents containing at least one query term, best match first
+         */
+        public List<String> search(String query, int k) {
+            return search(query, k, null);
+        }
+
+        /**
+         * Finds the documents accepted by a test that best match a query with BM25.
+         *
+         * @param query The query text
+         * @param k Maximum number of documents to return
+         * @param accepted Test of the ids of the documents that can be returned, checked on the documents
+         *                 containing a query term only, null to accept every document
+         * @return Ids of the documents containing at least one query term, best match first
+         */
+        public List<String> search(String query, int k, Predicate<String> accepted) {
+            Set<String> terms = new LinkedHashSet<>(tokenize(query));
+            if (liveDocuments == 0 || k <= 0) {
+                return List.of();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / liveDocuments);
+            List<PublishedPostings> matchedPostings = new ArrayList<>(terms.size());
+            int largest = 0;
+            for (String term : terms) {
+                PublishedPostings postings = postingsByTerm.get(term);
+                if (postings != null) {
+                    matchedPostings.add(postings);
+                    largest = Math.max(largest, postings.size());
+                }
+            }
+            // Sized for the largest postings list, the table grows if the other terms match more documents
+            Scores scores = new Scores(largest);
+
+            for (PublishedPostings postings : matchedPostings) {
+                // Postings still count tombstones until the next compaction
+                int documentFrequency = Math.min(postings.size(), liveDocuments);
+                double idf = Math.log(1.0 + (liveDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < postings.size(); i++) {
+                    int document = postings.documents()[i];
+                    if (deleted.get(document)) {
+                        continue;
+                    }
+                    int frequency = postings.frequencies()[i];
+                    double norm = K1 * (1 - B + B * lengths[document] / averageLength);
+                    scores.add(document, idf * frequency * (K1 + 1) / (frequency + norm));
+                }
+            }
+
+            TopKSelector topK = new TopKSelector(Math.min(k, scores.size));
+            for (int slot = 0; slot < scores.documents.length; slot++) {
+                int document = scores.documents[slot];
+                if (document != Scores.EMPTY && (accepted == null || accepted.test(ids[document]))) {
+                    topK.offer(document, scores.scores[slot]);
+                }
+            }
+            List<String> result = new ArrayList<>(topK.size());
+            for (int document : topK.sortedIndices()) {
+                result.add(ids[document]);
+            }
+            return result;
+        }
+
+        /**
+         * @return Number of indexed documents, tombstones excluded
+         */
+        public int size() {
+            return liveDocuments;
+        }
+    }
+}
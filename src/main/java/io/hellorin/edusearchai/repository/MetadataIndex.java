@@ -0,0 +1,154 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed bitsets over the rows of a {@link VectorStore.Snapshot}, so that a filtered similarity search
+ * only scores the rows matching the filter instead of scanning every row.
+ * <p>
+ * Each source and each collection maps to the set of rows of its documents, and the timestamp of each row
+ * is kept in a column. A filter is evaluated by OR-ing the sets of its values within a condition and AND-ing
+ * the conditions; the timestamps are then only checked for the remaining rows.
+ * <p>
+ * Instances are immutable. Between two compactions of the store, the index of a new snapshot is derived
+ * from the previous one by indexing the appended rows only: the sets they change are copied, the maps of
+ * sets share every other set with the previous index, and the timestamps are appended past the rows of the
+ * previous index. A compaction renumbers rows, so the index
+ * is then rebuilt. Tombstoned rows are not removed from the sets, searches skip them anyway.
+ */
+public final class MetadataIndex {
+
+    static final MetadataIndex EMPTY = new MetadataIndex(HashTrieMap.empty(), HashTrieMap.empty(), new long[0], 0, 0);
+
+    private final HashTrieMap<String, BitSet> rowsBySource;
+    private final HashTrieMap<String, BitSet> rowsByCollection;
+    // Shared with the next indexes, never read past rows
+    private final long[] timestamps;
+    private final int rows;
+    private final int compactions;
+
+    private MetadataIndex(HashTrieMap<String, BitSet> rowsBySource, HashTrieMap<String, BitSet> rowsByCollection,
+                          long[] timestamps,
+                          int rows, int compactions) {
+        this.rowsBySource = rowsBySource;
+        this.rowsByCollection = rowsByCollection;
+        this.timestamps = timestamps;
+        this.rows = rows;
+        this.compactions = compactions;
+    }
+
+    /**
+     * Indexes the metadata of the rows of a newly published vector store snapshot.
+     *
+     * @param previous The index of the previous snapshot of the same store
+     * @param vectors The new snapshot
+     * @param documentsById The documents of the new snapshot, by id
+     * @return The index of the new snapshot
+     */
+    static MetadataIndex update(MetadataIndex previous, VectorStore.Snapshot vectors,
+                                Map<String, Document> documentsById) {
+        boolean incremental = previous.compactions == vectors.compactions() && previous.rows <= vectors.rows();
+        int from = incremental ? previous.rows : 0;
+        HashTrieMap<String, BitSet> previousSources = incremental ? previous.rowsBySource : HashTrieMap.empty();
+        HashTrieMap<String, BitSet> previousCollections = incremental ? previous.rowsByCollection : HashTrieMap.empty();
+        long[] timestamps = incremental ? previous.timestamps : new long[0];
+        if (timestamps.length < vectors.rows()) {
+            timestamps = Arrays.copyOf(timestamps, Math.max(vectors.rows(), timestamps.length + (timestamps.length >> 1)));
+        }
+
+        Map<String, BitSet> changedSources = new HashMap<>();
+        Map<String, BitSet> changedCollections = new HashMap<>();
+        for (int row = from; row < vectors.rows(); row++) {
+            Document document = vectors.isDeleted(row) ? null : documentsById.get(vectors.id(row));
+            if (document == null) {
+                continue;
+            }
+            add(changedSources, previousSources, document.getSource(), row);
+            add(changedCollections, previousCollections, document.getCollection(), row);
+            timestamps[row] = document.getTimestamp();
+        }
+        return new MetadataIndex(merge(previousSources, changedSources),
+                merge(previousCollections, changedCollections), timestamps, vectors.rows(), vectors.compactions());
+    }
+
+    /**
+     * Adds a row to the set of a value, copying the set of the previous index first since it is shared.
+     */
+    private static void add(Map<String, BitSet> changed, HashTrieMap<String, BitSet> previous, String value, int row) {
+        if (value == null) {
+            return;
+        }
+        changed.computeIfAbsent(value, v -> {
+            BitSet previousRows = previous.get(v);
+            return previousRows == null ? new BitSet() : (BitSet) previousRows.clone();
+        }).set(row);
+    }
+
+    private static HashTrieMap<String, BitSet> merge(HashTrieMap<String, BitSet> previous, Map<String, BitSet> changed) {
+        HashTrieMap<String, BitSet> merged = previous;
+        for (Map.Entry<String, BitSet> entry : changed.entrySet()) {
+            merged = merged.with(entry.getKey(), entry.getValue());
+        }
+        return merged;
+    }
+
+    /**
+     * Evaluates a filter over the rows.
+     *
+     * @param filter The filter
+     * @return A new set of the rows matching the filter, tombstones included, or null if the filter
+     *         matches every row
+     */
+    public BitSet rows(DocumentFilter filter) {
+        if (filter.isUnrestricted()) {
+            return null;
+        }
+        BitSet matching = null;
+        if (!filter.sources().isEmpty()) {
+            matching = union(rowsBySource, filter.sources());
+        }
+        if (!filter.collections().isEmpty()) {
+            BitSet collectionRows = union(rowsByCollection, filter.collections());
+            if (matching == null) {
+                matching = collectionRows;
+            } else {
+                matching.and(collectionRows);
+            }
+        }
+        if (filter.hasTimeRange()) {
+            if (matching == null) {
+                matching = new BitSet(rows);
+                for (int row = 0; row < rows; row++) {
+                    if (filter.matchesTimestamp(timestamps[row])) {
+                        matching.set(row);
+                    }
+                }
+            } else {
+                for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+                    if (!filter.matchesTimestamp(timestamps[row])) {
+                        matching.clear(row);
+                    }
+                }
+            }
+        }
+        return matching;
+    }
+
+    private static BitSet union(Map<String, BitSet> rowsByValue, Set<String> values) {
+        BitSet union = new BitSet();
+        for (String value : values) {
+            BitSet valueRows = rowsByValue.get(value);
+            if (valueRows != null) {
+                union.or(valueRows);
+            }
+        }
+        return union;
+    }
+}
@@ -0,0 +1,483 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.model.Document;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * On-disk storage of embedded documents, so they do not have to be re-embedded on every startup.
+ * The index is a directory of immutable segments, each written once after an ingestion:
+ * <ul>
+ *     <li>segment-N.vec: a 16-byte header (magic, version, dimension, rows) followed by the
+ *     embeddings as little-endian floats, row after row. It is written through a small buffer and read
+ *     through memory mappings of bounded size, so a segment is never copied whole on the heap;
+ *     {@link #load(RowReader)} hands each row to its reader as a view of the mapping.</li>
+ *     <li>segment-N.meta: the sidecar holding id, title, content, source, timestamp and collection of each row
+ *     (segments of version 1 have no collection).</li>
+ * </ul>
+ * Both files are written to a temporary file, flushed to disk and atomically renamed, the vector file
+ * last. A segment is only loaded once its vector file exists, so a crash during a write never leaves
+ * a partially written segment visible.
+ * <p>
+ * A manifest records the fingerprint of each indexed source file and the segment holding its current
+ * documents. {@link #update} re-indexes changed sources in a new segment, drops removed sources, then
+ * atomically replaces the manifest and deletes the segments no source refers to anymore. Without
+ * manifest, e.g. for an index written by {@link #writeSegment} only, every segment is current.
+ */
+public class PersistentVectorIndex {
+
+    private static final int MAGIC = 0x45445643;
+    private static final int VERSION = 2;
+    private static final int FIRST_VERSION_WITH_COLLECTION = 2;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    // Vectors are written through a buffer of this size and mapped by windows of at most this size
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+    private static final long MAX_MAPPED_BYTES = 1L << 30;
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d+)\\.vec");
+    private static final String MANIFEST = "manifest.properties";
+    private static final int NO_SEGMENT = -1;
+
+    /**
+     * Manifest entry of a source.
+     *
+     * @param fingerprint Fingerprint of the source file when it was indexed, empty if unknown
+     * @param segment Segment holding the documents of the source, -1 if it has none
+     */
+    private record SourceEntry(String fingerprint, int segment) {
+    }
+
+    private final Path directory;
+
+    /**
+     * @param directory Directory holding the segments, created on the first write
+     */
+    public PersistentVectorIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Receives the rows of the index as they are read.
+     */
+    @FunctionalInterface
+    public interface RowReader {
+
+        /**
+         * @param document The document of the row, without embedding
+         * @param embedding View of the embedding of the row in the mapped segment, valid during the call only
+         */
+        void read(Document document, FloatBuffer embedding);
+    }
+
+    /**
+     * Header of a vector file.
+     */
+    private record Header(int version, int dimension, int rows) {
+    }
+
+    /**
+     * Reads the current documents of every committed segment, in the order they were written.
+     *
+     * @return Documents of the indexed sources, with their embedding
+     * @throws IOException if a segment cannot be read or is corrupted
+     */
+    public List<Document> load() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        load((document, embedding) -> {
+            float[] copy = new float[embedding.remaining()];
+            embedding.get(copy);
+            document.setEmbedding(copy);
+            documents.add(document);
+        });
+        return documents;
+    }
+
+    /**
+     * Reads the current documents of every committed segment, in the order they were written, handing
+     * each embedding to the reader straight from the mapped segment instead of copying it on the heap.
+     *
+     * @param reader Reader of the rows
+     * @return Number of rows read
+     * @throws IOException if a segment cannot be read or is corrupted
+     */
+    public int load(RowReader reader) throws IOException {
+        Map<String, SourceEntry> manifest = readManifest();
+        Set<Integer> referenced = manifest != null ? referencedSegments(manifest) : Set.of();
+        int read = 0;
+        for (int segment : segments()) {
+            if (manifest != null && !referenced.contains(segment)) {
+                continue;
+            }
+            read += readSegment(segment, doc -> {
+                SourceEntry entry = manifest != null && doc.getSource() != null ? manifest.get(doc.getSource()) : null;
+                return manifest == null || (entry != null && entry.segment() == segment);
+            }, reader);
+        }
+        return read;
+    }
+
+    /**
+     * Counts the rows of the segments holding current documents, from their header only, e.g. to reserve
+     * room before {@link #load(RowReader)}.
+     *
+     * @return Number of rows of the current segments, at least the number of documents loaded
+     * @throws IOException if a segment cannot be read or is corrupted
+     */
+    public int rows() throws IOException {
+        Map<String, SourceEntry> manifest = readManifest();
+        Set<Integer> referenced = manifest != null ? referencedSegments(manifest) : Set.of();
+        int rows = 0;
+        for (int segment : segments()) {
+            if (manifest == null || referenced.contains(segment)) {
+                rows += readHeader(segment).rows();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return Fingerprint of each indexed source, empty for sources indexed without fingerprint
+     * @throws IOException if the manifest or a segment cannot be read
+     */
+    public Map<String, String> fingerprints() throws IOException {
+        Map<String, String> fingerprints = new HashMap<>();
+        currentManifest().forEach((source, entry) -> fingerprints.put(source, entry.fingerprint()));
+        return fingerprints;
+    }
+
+    /**
+     * Records changes of source files: the documents of changed sources are written to a new segment
+     * and replace their previous documents, removed sources are dropped, and segments holding no
+     * current document anymore are deleted.
+     *
+     * @param documents Documents of the changed sources
+     * @param fingerprints New fingerprint of each changed source, every source of the documents included
+     * @param removedSources Sources whose file no longer exists
+     * @throws IOException if the index cannot be written
+     */
+    public void update(List<Document> documents, Map<String, String> fingerprints, Set<String> removedSources)
+            throws IOException {
+        if (documents.isEmpty() && fingerprints.isEmpty() && removedSources.isEmpty()) {
+            return;
+        }
+        Map<String, SourceEntry> manifest = currentManifest();
+        int segment = writeSegment(documents);
+        Set<String> embeddedSources = new HashSet<>();
+        documents.stream()
+                .filter(doc -> doc.getEmbedding() != null && doc.getEmbedding().length > 0)
+                .forEach(doc -> embeddedSources.add(doc.getSource()));
+        fingerprints.forEach((source, fingerprint) -> manifest.put(source,
+                new SourceEntry(fingerprint, embeddedSources.contains(source) ? segment : NO_SEGMENT)));
+        removedSources.forEach(manifest::remove);
+        writeManifest(manifest);
+
+        Set<Integer> referenced = referencedSegments(manifest);
+        for (int existing : segments()) {
+            if (!referenced.contains(existing)) {
+                // Vector file first, so a partially deleted segment is no longer listed
+                Files.deleteIfExists(vectorPath(existing));
+                Files.deleteIfExists(metaPath(existing));
+            }
+        }
+    }
+
+    /**
+     * Atomically writes the documents having an embedding as a new segment.
+     *
+     * @param documents Documents to persist, all embeddings having the same dimension
+     * @return Number of the written segment, -1 if no document has an embedding
+     * @throws IOException if the segment cannot be written
+     */
+    public int writeSegment(List<Document> documents) throws IOException {
+        List<Document> embedded = documents.stream()
+                .filter(doc -> doc.getEmbedding() != null && doc.getEmbedding().length > 0)
+                .toList();
+        if (embedded.isEmpty()) {
+            return NO_SEGMENT;
+        }
+        int dimension = embedded.get(0).getEmbedding().length;
+        for (Document doc : embedded) {
+            if (doc.getEmbedding().length != dimension) {
+                throw new IllegalArgumentException("Vectors must have the same dimension");
+            }
+        }
+        Files.createDirectories(directory);
+        List<Integer> existing = segments();
+        int segment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+
+        writeAtomically(metaPath(segment), out -> {
+            out.writeInt(embedded.size());
+            for (Document doc : embedded) {
+                writeString(out, doc.getId());
+                writeString(out, doc.getTitle());
+                writeString(out, doc.getContent());
+                writeString(out, doc.getSource());
+                out.writeLong(doc.getTimestamp());
+                writeString(out, doc.getCollection());
+            }
+        });
+
+        int rowBytes = dimension * Float.BYTES;
+        writeChannelAtomically(vectorPath(segment), channel -> {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_BYTES, HEADER_BYTES + rowBytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(embedded.size());
+            for (Document doc : embedded) {
+                if (buffer.remaining() < rowBytes) {
+                    drain(buffer, channel);
+                }
+                buffer.asFloatBuffer().put(doc.getEmbedding());
+                buffer.position(buffer.position() + rowBytes);
+            }
+            drain(buffer, channel);
+        });
+        return segment;
+    }
+
+    /**
+     * @return Numbers of the committed segments, in ascending order
+     * @throws IOException if the directory cannot be listed
+     */
+    List<Integer> segments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_PATTERN.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .filter(segment -> Files.exists(metaPath(segment)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * @return The manifest, or null if the index has none
+     */
+    private Map<String, SourceEntry> readManifest() throws IOException {
+        Path file = directory.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        Map<String, SourceEntry> manifest = new HashMap<>();
+        for (String source : properties.stringPropertyNames()) {
+            String value = properties.getProperty(source);
+            int separator = value.lastIndexOf(' ');
+            manifest.put(source, new SourceEntry(value.substring(0, separator),
+                    Integer.parseInt(value.substring(separator + 1))));
+        }
+        return manifest;
+    }
+
+    /**
+     * @return The manifest, or for an index without manifest, the sources of every segment with unknown fingerprints
+     */
+    private Map<String, SourceEntry> currentManifest() throws IOException {
+        Map<String, SourceEntry> manifest = readManifest();
+        if (manifest != null) {
+            return manifest;
+        }
+        manifest = new HashMap<>();
+        for (int segment : segments()) {
+            for (Document doc : readMetadata(segment, readHeader(segment).version())) {
+                if (doc.getSource() != null) {
+                    manifest.put(doc.getSource(), new SourceEntry("", segment));
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, SourceEntry> manifest) throws IOException {
+        Properties properties = new Properties();
+        manifest.forEach((source, entry) -> properties.setProperty(source, entry.fingerprint() + " " + entry.segment()));
+        Files.createDirectories(directory);
+        writeAtomically(directory.resolve(MANIFEST), out -> properties.store(out, "Fingerprint and segment of each source"));
+    }
+
+    private static Set<Integer> referencedSegments(Map<String, SourceEntry> manifest) {
+        Set<Integer> segments = new HashSet<>();
+        manifest.values().forEach(entry -> segments.add(entry.segment()));
+        return segments;
+    }
+
+    /**
+     * Reads the rows of a segment, mapping its vector file by windows of bounded size.
+     *
+     * @param segment The segment to read
+     * @param current Whether a row holds a current document, the other rows being skipped
+     * @param reader Reader of the current rows
+     * @return Number of rows read
+     */
+    private int readSegment(int segment, Predicate<Document> current, RowReader reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(vectorPath(segment), StandardOpenOption.READ)) {
+            Header header = readHeader(channel, segment);
+            List<Document> documents = readMetadata(segment, header.version());
+            if (header.rows() != documents.size()) {
+                throw new IOException("Vector and metadata files of segment " + segment + " do not match");
+            }
+            int dimension = header.dimension();
+            long rowBytes = (long) dimension * Float.BYTES;
+            int rowsPerWindow = (int) Math.max(1, MAX_MAPPED_BYTES / rowBytes);
+            int read = 0;
+            for (int first = 0; first < header.rows(); first += rowsPerWindow) {
+                int windowRows = Math.min(rowsPerWindow, header.rows() - first);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * rowBytes, windowRows * rowBytes);
+                FloatBuffer vectors = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                for (int row = 0; row < windowRows; row++) {
+                    Document document = documents.get(first + row);
+                    if (current.test(document)) {
+                        reader.read(document, vectors.slice(row * dimension, dimension));
+                        read++;
+                    }
+                }
+            }
+            return read;
+        }
+    }
+
+    private Header readHeader(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(vectorPath(segment), StandardOpenOption.READ)) {
+            return readHeader(channel, segment);
+        }
+    }
+
+    /**
+     * Reads and validates the header of a vector file, checking the size of the file against it.
+     */
+    private Header readHeader(FileChannel channel, int segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new IOException("Truncated vector segment: " + vectorPath(segment));
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a vector segment: " + vectorPath(segment));
+        }
+        int version = header.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported version " + version + " of vector segment " + vectorPath(segment));
+        }
+        int dimension = header.getInt();
+        int rows = header.getInt();
+        long rowBytes = (long) dimension * Float.BYTES;
+        if (dimension <= 0 || rows < 0 || channel.size() != HEADER_BYTES + rows * rowBytes) {
+            throw new IOException("Vector segment " + vectorPath(segment) + " holds " + channel.size()
+                    + " bytes, not " + rows + " rows of dimension " + dimension);
+        }
+        return new Header(version, dimension, rows);
+    }
+
+    private List<Document> readMetadata(int segment, int version) throws IOException {
+        List<Document> documents = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(metaPath(segment))))) {
+            int rows = in.readInt();
+            for (int row = 0; row < rows; row++) {
+                Document doc = new Document();
+                doc.setId(readString(in));
+                doc.setTitle(readString(in));
+                doc.setContent(readString(in));
+                doc.setSource(readString(in));
+                doc.setTimestamp(in.readLong());
+                if (version >= FIRST_VERSION_WITH_COLLECTION) {
+                    doc.setCollection(readString(in));
+                }
+                documents.add(doc);
+            }
+        }
+        return documents;
+    }
+
+    @FunctionalInterface
+    private interface SegmentWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    private void writeAtomically(Path target, SegmentWriter writer) throws IOException {
+        writeChannelAtomically(target, channel -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            writer.write(out);
+            out.flush();
+        });
+    }
+
+    private void writeChannelAtomically(Path target, ChannelWriter writer) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writer.write(channel);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the content of the buffer to the channel and clears the buffer.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path vectorPath(int segment) {
+        return directory.resolve("segment-" + segment + ".vec");
+    }
+
+    private Path metaPath(int segment) {
+        return directory.resolve("segment-" + segment + ".meta");
+    }
+}
@@ -0,0 +1,208 @@
+package io.hellorin.edusearchai.repository;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantization: each vector is split into a fixed number of subspaces and every
+ * sub-vector is replaced by the index of its nearest centroid in a per-subspace codebook of
+ * up to 256 entries learned with k-means. A vector is encoded in one byte per subspace, e.g.
+ * 96 bytes for a 1536-dimensional vector with 96 subspaces instead of 6144.
+ * <p>
+ * Queries are prepared into a table holding the dot product of each query sub-vector with every
+ * centroid of its subspace, so scoring a code costs one table lookup per subspace.
+ */
+public class ProductQuantizer implements VectorQuantizer {
+
+    private static final int CENTROIDS = 256;
+    private static final int ITERATIONS = 8;
+
+    private final int subspaces;
+    private final int trainingRows;
+    private final long seed;
+
+    private volatile Codebooks codebooks;
+
+    /**
+     * @param subspaces Number of subspaces, i.e. bytes per code; capped to the vector dimension
+     * @param trainingRows Number of vectors collected before the codebooks are trained
+     */
+    public ProductQuantizer(int subspaces, int trainingRows) {
+        this(subspaces, trainingRows, 42);
+    }
+
+    public ProductQuantizer(int subspaces, int trainingRows, long seed) {
+        if (subspaces < 1 || trainingRows < 1) {
+            throw new IllegalArgumentException("subspaces and trainingRows must be positive");
+        }
+        this.subspaces = subspaces;
+        this.trainingRows = trainingRows;
+        this.seed = seed;
+    }
+
+    /**
+     * Centroids of every subspace; centroids[s] holds the centroids of subspace s row after row.
+     */
+    private record Codebooks(int[] starts, float[][] centroids, int[] centroidCounts) {
+        int subspaces() {
+            return centroids.length;
+        }
+
+        int start(int subspace) {
+            return starts[subspace];
+        }
+
+        int length(int subspace) {
+            return starts[subspace + 1] - starts[subspace];
+        }
+    }
+
+    @Override
+    public int trainingRows() {
+        return trainingRows;
+    }
+
+    @Override
+    public void train(float[] vectors, int rows, int dimension) {
+        int subspaceCount = Math.min(subspaces, dimension);
+        int[] starts = new int[subspaceCount + 1];
+        for (int s = 0; s <= subspaceCount; s++) {
+            starts[s] = s * dimension / subspaceCount;
+        }
+        int samples = Math.min(rows, trainingRows);
+        float[][] centroids = new float[subspaceCount][];
+        int[] centroidCounts = new int[subspaceCount];
+
+        IntStream.range(0, subspaceCount).parallel().forEach(s -> {
+            int length = starts[s + 1] - starts[s];
+            int k = Math.min(CENTROIDS, samples);
+            centroids[s] = kMeans(vectors, samples, dimension, starts[s], length, k, new Random(seed + s));
+            centroidCounts[s] = k;
+        });
+        codebooks = new Codebooks(starts, centroids, centroidCounts);
+    }
+
+    @Override
+    public int codeSize(int dimension) {
+        return Math.min(subspaces, dimension);
+    }
+
+    @Override
+    public void encode(float[] vectors, int vectorOffset, int dimension, byte[] codes, int codeOffset) {
+        Codebooks books = trainedCodebooks();
+        for (int s = 0; s < books.subspaces(); s++) {
+            int nearest = nearestCentroid(books.centroids()[s], books.centroidCounts()[s],
+                    vectors, vectorOffset + books.start(s), books.length(s));
+            codes[codeOffset + s] = (byte) nearest;
+        }
+    }
+
+    @Override
+    public float[] decode(byte[] codes, int codeOffset, int dimension) {
+        Codebooks books = trainedCodebooks();
+        float[] vector = new float[dimension];
+        for (int s = 0; s < books.subspaces(); s++) {
+            int length = books.length(s);
+            int centroid = codes[codeOffset + s] & 0xFF;
+            System.arraycopy(books.centroids()[s], centroid * length, vector, books.start(s), length);
+        }
+        return vector;
+    }
+
+    @Override
+    public QueryScorer prepare(float[] query) {
+        Codebooks books = trainedCodebooks();
+        int subspaceCount = books.subspaces();
+        float[] table = new float[subspaceCount * CENTROIDS];
+        for (int s = 0; s < subspaceCount; s++) {
+            float[] centroids = books.centroids()[s];
+            int start = books.start(s);
+            int length = books.length(s);
+            for (int c = 0; c < books.centroidCounts()[s]; c++) {
+                float dotProduct = 0.0f;
+                for (int i = 0; i < length; i++) {
+                    dotProduct += query[start + i] * centroids[c * length + i];
+                }
+                table[s * CENTROIDS + c] = dotProduct;
+            }
+        }
+        return (codes, offset) -> {
+            float dotProduct = 0.0f;
+            for (int s = 0; s < subspaceCount; s++) {
+                dotProduct += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+            }
+            return dotProduct;
+        };
+    }
+
+    private Codebooks trainedCodebooks() {
+        Codebooks books = codebooks;
+        if (books == null) {
+            throw new IllegalStateException("Product quantizer has not been trained");
+        }
+        return books;
+    }
+
+    /**
+     * Lloyd's k-means on one subspace of the sample vectors, seeded with k distinct samples.
+     */
+    private static float[] kMeans(float[] vectors, int samples, int dimension, int start, int length, int k,
+                                  Random random) {
+        float[] centroids = new float[k * length];
+        int[] order = IntStream.range(0, samples).toArray();
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(samples - i);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+            System.arraycopy(vectors, order[i] * dimension + start, centroids, i * length, length);
+        }
+
+        int[] assignments = new int[samples];
+        float[] sums = new float[k * length];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int row = 0; row < samples; row++) {
+                assignments[row] = nearestCentroid(centroids, k, vectors, row * dimension + start, length);
+            }
+            Arrays.fill(sums, 0.0f);
+            Arrays.fill(counts, 0);
+            for (int row = 0; row < samples; row++) {
+                int c = assignments[row];
+                counts[c]++;
+                for (int i = 0; i < length; i++) {
+                    sums[c * length + i] += vectors[row * dimension + start + i];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // Reseed empty clusters with a random sample
+                    System.arraycopy(vectors, random.nextInt(samples) * dimension + start, centroids, c * length, length);
+                    continue;
+                }
+                for (int i = 0; i < length; i++) {
+                    centroids[c * length + i] = sums[c * length + i] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearestCentroid(float[] centroids, int k, float[] vectors, int offset, int length) {
+        int nearest = 0;
+        float nearestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float distance = 0.0f;
+            for (int i = 0; i < length; i++) {
+                float diff = vectors[offset + i] - centroids[c * length + i];
+                distance += diff * diff;
+            }
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,69 @@
+package io.hellorin.edusearchai.repository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Scalar quantization of each vector component to a signed byte.
+ * Every vector gets its own scale (its largest absolute component divided by 127), stored as a
+ * float in the first four bytes of the code, so a 1536-dimensional vector takes 1540 bytes
+ * instead of 6144. Needs no training.
+ */
+public class ScalarInt8Quantizer implements VectorQuantizer {
+
+    private static final VarHandle FLOAT_VIEW =
+            MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int SCALE_BYTES = Float.BYTES;
+
+    @Override
+    public int trainingRows() {
+        return 0;
+    }
+
+    @Override
+    public void train(float[] vectors, int rows, int dimension) {
+        // Scales are computed per vector
+    }
+
+    @Override
+    public int codeSize(int dimension) {
+        return SCALE_BYTES + dimension;
+    }
+
+    @Override
+    public void encode(float[] vectors, int vectorOffset, int dimension, byte[] codes, int codeOffset) {
+        float maxAbs = 0.0f;
+        for (int i = 0; i < dimension; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(vectors[vectorOffset + i]));
+        }
+        float scale = maxAbs / 127.0f;
+        FLOAT_VIEW.set(codes, codeOffset, scale);
+        for (int i = 0; i < dimension; i++) {
+            codes[codeOffset + SCALE_BYTES + i] = scale == 0.0f ? 0 : (byte) Math.round(vectors[vectorOffset + i] / scale);
+        }
+    }
+
+    @Override
+    public float[] decode(byte[] codes, int codeOffset, int dimension) {
+        float scale = (float) FLOAT_VIEW.get(codes, codeOffset);
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = codes[codeOffset + SCALE_BYTES + i] * scale;
+        }
+        return vector;
+    }
+
+    @Override
+    public QueryScorer prepare(float[] query) {
+        return (codes, offset) -> {
+            float scale = (float) FLOAT_VIEW.get(codes, offset);
+            int start = offset + SCALE_BYTES;
+            float dotProduct = 0.0f;
+            for (int i = 0; i < query.length; i++) {
+                dotProduct += query[i] * codes[start + i];
+            }
+            return dotProduct * scale;
+        };
+    }
+}
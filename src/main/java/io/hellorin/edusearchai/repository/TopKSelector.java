@@ -0,0 +1,128 @@
+package io.hellorin.edusearchai.repository;
+
+/**
+ * Keeps the k highest scoring candidates seen so far.
+ * Candidates are identified by an int index (e.g. a row or a position in an array) and stored
+ * in a fixed-size binary min-heap over primitive arrays, so offering a candidate is O(log k)
+ * and never allocates. Selecting the top k out of n candidates is therefore O(n log k)
+ * instead of the O(n log n) of a full sort.
+ * Instances are not thread-safe; use one per thread and {@link #merge(TopKSelector)} the results.
+ */
+public final class TopKSelector {
+
+    private final double[] scores;
+    private final int[] indices;
+    private int size;
+
+    /**
+     * @param k Maximum number of candidates to keep, may be 0
+     * @throws IllegalArgumentException if k is negative
+     */
+    public TopKSelector(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        this.scores = new double[k];
+        this.indices = new int[k];
+    }
+
+    /**
+     * Offers a candidate, keeping it only if it scores higher than the current minimum
+     * or if fewer than k candidates have been kept.
+     *
+     * @param index Identifier of the candidate
+     * @param score Score of the candidate, higher is better
+     */
+    public void offer(int index, double score) {
+        if (size < scores.length) {
+            scores[size] = score;
+            indices[size] = index;
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            scores[0] = score;
+            indices[0] = index;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offers every candidate kept by another selector to this one.
+     *
+     * @param other Selector whose candidates should be merged into this one
+     */
+    public void merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.indices[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * @return Number of candidates currently kept, at most k
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the kept candidates ordered by descending score.
+     * The selector itself is left unchanged.
+     *
+     * @return Indices of the kept candidates, best first
+     */
+    public int[] sortedIndices() {
+        TopKSelector copy = new TopKSelector(size);
+        copy.merge(this);
+        int[] sorted = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            sorted[i] = copy.indices[0];
+            copy.removeMin();
+        }
+        return sorted;
+    }
+
+    private void removeMin() {
+        size--;
+        scores[0] = scores[size];
+        indices[0] = indices[size];
+        siftDown(0);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (scores[parent] <= scores[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[position] <= scores[smallest]) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+    }
+}
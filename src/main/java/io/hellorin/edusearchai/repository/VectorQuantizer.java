@@ -0,0 +1,69 @@
+package io.hellorin.edusearchai.repository;
+
+/**
+ * Lossy compression of normalized vectors into fixed-size byte codes.
+ * Searches use asymmetric distance computation: the query stays in full precision and is
+ * prepared once into a {@link QueryScorer}, which then scores codes without decoding them.
+ */
+public interface VectorQuantizer {
+
+    /**
+     * Scores codes against one prepared query.
+     */
+    @FunctionalInterface
+    interface QueryScorer {
+        /**
+         * @param codes Array holding the codes
+         * @param offset Index of the first byte of the code to score
+         * @return Approximate dot product between the query and the encoded vector
+         */
+        double score(byte[] codes, int offset);
+    }
+
+    /**
+     * @return Number of vectors needed by {@link #train}, 0 if the quantizer needs no training
+     */
+    int trainingRows();
+
+    /**
+     * Learns the quantizer parameters from the first rows of a contiguous vector array.
+     *
+     * @param vectors Vectors packed row after row
+     * @param rows Number of rows available for training
+     * @param dimension Number of components per vector
+     */
+    void train(float[] vectors, int rows, int dimension);
+
+    /**
+     * @param dimension Number of components per vector
+     * @return Number of bytes of the code of one vector
+     */
+    int codeSize(int dimension);
+
+    /**
+     * Encodes one vector.
+     *
+     * @param vectors Array holding the vector
+     * @param vectorOffset Index of the first component of the vector
+     * @param dimension Number of components of the vector
+     * @param codes Array receiving the code
+     * @param codeOffset Index of the first byte of the code
+     */
+    void encode(float[] vectors, int vectorOffset, int dimension, byte[] codes, int codeOffset);
+
+    /**
+     * Reconstructs an approximation of an encoded vector.
+     *
+     * @param codes Array holding the code
+     * @param codeOffset Index of the first byte of the code
+     * @param dimension Number of components of the vector
+     * @return The decoded vector
+     */
+    float[] decode(byte[] codes, int codeOffset, int dimension);
+
+    /**
+     * @param query Normalized query vector
+     * @return Scorer computing approximate dot products between the query and codes
+     */
+    QueryScorer prepare(float[] query);
+}
@@ -0,0 +1,410 @@
+package io.hellorin.edusearchai.repository;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Columnar storage for embedding vectors.
+ * All vectors are packed row after row into a single contiguous float array, with a parallel
+ * array holding the id of the document each row belongs to. A full scan therefore walks memory
+ * sequentially instead of chasing one pointer per document.
+ * <p>
+ * Deleting a document only marks its row as a tombstone; rows are physically removed by
+ * {@link #compact()}, which also runs automatically once half of the rows are tombstones
+ * unless auto-compaction is disabled. Compaction renumbers rows, so row numbers must not be
+ * kept outside of the {@link Snapshot} they were read from, except by owners that never compact the store.
+ * <p>
+ * With a {@link VectorQuantizer}, rows are additionally encoded into a contiguous byte array of
+ * codes once the quantizer has seen enough rows to be trained. From then on the float array is
+ * only kept if full precision was requested (e.g. to re-rank quantized search results).
+ * <p>
+ * Readers never take a lock: they read the last {@link Snapshot} published by {@link #publish()}, and
+ * writes stay invisible until the next publication. Writers are serialized and never modify what a
+ * published snapshot can see: rows are only appended past the published ones, growing, compacting or
+ * quantizing the store copies the arrays, and tombstones are copied into each snapshot following a deletion.
+ */
+public class VectorStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_ROWS_TO_COMPACT = 64;
+
+    private final boolean autoCompact;
+    private final VectorQuantizer quantizer;
+    private final int rerankCandidates;
+    private final boolean keepFullPrecision;
+    private final Map<String, Integer> rowsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    // Whether tombstones changed since the last publication, which shares them otherwise
+    private boolean deletedChanged;
+    private float[] vectors = new float[0];
+    private byte[] codes = new byte[0];
+    private String[] ids = new String[0];
+    private int dimension;
+    private int codeSize;
+    private int rows;
+    private int reservedRows;
+    private int tombstones;
+    private int compactions;
+    private boolean quantized;
+    private volatile Snapshot snapshot;
+
+    public VectorStore() {
+        this(true);
+    }
+
+    /**
+     * @param autoCompact Whether tombstoned rows are removed automatically. Disable it to keep
+     *                    row numbers stable, e.g. when they are referenced by a graph index.
+     */
+    public VectorStore(boolean autoCompact) {
+        this(autoCompact, null, 0);
+    }
+
+    /**
+     * @param autoCompact Whether tombstoned rows are removed automatically
+     * @param quantizer Quantizer encoding the rows, null to keep full precision vectors only
+     * @param rerankCandidates Number of quantized search candidates re-ranked in full precision,
+     *                         0 to drop full precision vectors once rows are quantized
+     */
+    public VectorStore(boolean autoCompact, VectorQuantizer quantizer, int rerankCandidates) {
+        this.autoCompact = autoCompact;
+        this.quantizer = quantizer;
+        this.rerankCandidates = rerankCandidates;
+        this.keepFullPrecision = quantizer == null || rerankCandidates > 0;
+        this.snapshot = new Snapshot(this);
+    }
+
+    /**
+     * Appends a vector as a new row. If the id is already stored, its previous row is tombstoned.
+     * The row is visible to readers once {@link #publish()} is called.
+     *
+     * @param id Id of the document the vector belongs to
+     * @param vector The vector to copy into the store
+     * @throws IllegalArgumentException if the vector dimension differs from the stored vectors
+     */
+    public synchronized void append(String id, float[] vector) {
+        if (dimension == 0) {
+            dimension = vector.length;
+            codeSize = quantizer != null ? quantizer.codeSize(dimension) : 0;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+        Integer previousRow = rowsById.get(id);
+        if (previousRow != null) {
+            deleted.set(previousRow);
+            deletedChanged = true;
+            tombstones++;
+        }
+        ensureCapacity(Math.max(rows + 1, reservedCapacity()));
+        if (hasFullPrecision()) {
+            System.arraycopy(vector, 0, vectors, rows * dimension, dimension);
+        }
+        if (quantized) {
+            quantizer.encode(vector, 0, dimension, codes, rows * codeSize);
+        }
+        ids[rows] = id;
+        rowsById.put(id, rows);
+        rows++;
+        if (quantizer != null && !quantized && rows >= quantizer.trainingRows()) {
+            quantize();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Reserves room for a number of rows, e.g. before a bulk load of known size, so that the arrays are
+     * allocated once instead of growing by half repeatedly, each growth briefly holding two copies of the rows.
+     * The room is allocated once the dimension is known, i.e. by the first append if nothing is stored yet,
+     * and for stores dropping full precision vectors, once the rows are quantized.
+     *
+     * @param expectedRows Number of rows the store is expected to hold, tombstones included
+     */
+    public synchronized void reserve(int expectedRows) {
+        reservedRows = expectedRows;
+        if (dimension > 0) {
+            ensureCapacity(reservedCapacity());
+        }
+    }
+
+    /**
+     * @return Number of rows to allocate room for, 0 while the full precision vectors are about to be dropped
+     */
+    private int reservedCapacity() {
+        return quantizer != null && !quantized && !keepFullPrecision ? 0 : reservedRows;
+    }
+
+    /**
+     * Marks the row of the given document as deleted.
+     * The deletion is visible to readers once {@link #publish()} is called.
+     *
+     * @param id Id of the document to delete
+     * @return true if a row was deleted
+     */
+    public synchronized boolean delete(String id) {
+        Integer row = rowsById.remove(id);
+        if (row == null) {
+            return false;
+        }
+        deleted.set(row);
+        deletedChanged = true;
+        tombstones++;
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Physically removes tombstoned rows, copying the remaining rows into new arrays so they stay
+     * contiguous while published snapshots keep the previous ones.
+     */
+    public synchronized void compact() {
+        float[] compactedVectors = hasFullPrecision() ? new float[vectors.length] : vectors;
+        byte[] compactedCodes = quantized ? new byte[codes.length] : codes;
+        String[] compactedIds = new String[ids.length];
+        int target = 0;
+        for (int row = 0; row < rows; row++) {
+            if (deleted.get(row)) {
+                continue;
+            }
+            if (hasFullPrecision()) {
+                System.arraycopy(vectors, row * dimension, compactedVectors, target * dimension, dimension);
+            }
+            if (quantized) {
+                System.arraycopy(codes, row * codeSize, compactedCodes, target * codeSize, codeSize);
+            }
+            compactedIds[target] = ids[row];
+            rowsById.put(ids[row], target);
+            target++;
+        }
+        vectors = compactedVectors;
+        codes = compactedCodes;
+        ids = compactedIds;
+        deleted.clear();
+        deletedChanged = true;
+        tombstones = 0;
+        rows = target;
+        compactions++;
+    }
+
+    /**
+     * Makes every write since the previous call visible to readers at once.
+     *
+     * @return The published snapshot
+     */
+    public synchronized Snapshot publish() {
+        snapshot = new Snapshot(this);
+        deletedChanged = false;
+        return snapshot;
+    }
+
+    /**
+     * @return The last published snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Runs the reader on the last published snapshot, which cannot change during the call.
+     *
+     * @param reader Function reading the store
+     * @param <R> Type of the result
+     * @return Result of the reader
+     */
+    public <R> R read(Function<Snapshot, R> reader) {
+        return reader.apply(snapshot);
+    }
+
+    /**
+     * @return Number of published rows that are not tombstones
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Trains the quantizer on the rows stored so far and encodes them.
+     */
+    private void quantize() {
+        quantizer.train(vectors, rows, dimension);
+        codes = new byte[ids.length * codeSize];
+        for (int row = 0; row < rows; row++) {
+            quantizer.encode(vectors, row * dimension, dimension, codes, row * codeSize);
+        }
+        quantized = true;
+        if (!keepFullPrecision) {
+            vectors = new float[0];
+        }
+    }
+
+    private boolean hasFullPrecision() {
+        return keepFullPrecision || !quantized;
+    }
+
+    private void ensureCapacity(int requiredRows) {
+        if (requiredRows <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, ids.length + (ids.length >> 1));
+        capacity = Math.max(capacity, requiredRows);
+        int rowSize = Math.max(hasFullPrecision() ? dimension : 0, quantized ? codeSize : 0);
+        long length = (long) capacity * rowSize;
+        if (length > Integer.MAX_VALUE - 8) {
+            capacity = (Integer.MAX_VALUE - 8) / rowSize;
+            if (capacity < requiredRows) {
+                throw new IllegalStateException("Vector store is full");
+            }
+        }
+        if (hasFullPrecision()) {
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+        }
+        if (quantized) {
+            codes = Arrays.copyOf(codes, capacity * codeSize);
+        }
+        ids = Arrays.copyOf(ids, capacity);
+    }
+
+    private void compactIfNeeded() {
+        if (autoCompact && rows >= MIN_ROWS_TO_COMPACT && tombstones * 2 >= rows) {
+            compact();
+        }
+    }
+
+    /**
+     * Immutable view of the store as of a publication. It shares the arrays of the store, of which it
+     * only reads the rows published at the time, and a copy of the tombstones with the previous snapshot
+     * if no row was deleted since.
+     */
+    public static final class Snapshot {
+
+        private final float[] vectors;
+        private final byte[] codes;
+        private final String[] ids;
+        private final BitSet deleted;
+        private final VectorQuantizer quantizer;
+        private final int rerankCandidates;
+        private final int dimension;
+        private final int codeSize;
+        private final int rows;
+        private final int size;
+        private final int compactions;
+        private final boolean quantized;
+        private final boolean fullPrecision;
+
+        private Snapshot(VectorStore store) {
+            this.vectors = store.vectors;
+            this.codes = store.codes;
+            this.ids = store.ids;
+            this.deleted = store.snapshot == null || store.deletedChanged
+                    ? (BitSet) store.deleted.clone() : store.snapshot.deleted;
+            this.quantizer = store.quantizer;
+            this.rerankCandidates = store.rerankCandidates;
+            this.dimension = store.dimension;
+            this.codeSize = store.codeSize;
+            this.rows = store.rows;
+            this.size = store.rowsById.size();
+            this.compactions = store.compactions;
+            this.quantized = store.quantized;
+            this.fullPrecision = store.hasFullPrecision();
+        }
+
+        /**
+         * @return Number of rows, including tombstones
+         */
+        public int rows() {
+            return rows;
+        }
+
+        /**
+         * @return Number of components per vector, 0 while the store is empty
+         */
+        public int dimension() {
+            return dimension;
+        }
+
+        /**
+         * @return The backing array of full precision vectors, row r starting at index r * dimension.
+         *         Empty once rows are quantized, unless full precision is kept.
+         *         Must not be read past {@link #rows()}.
+         */
+        public float[] data() {
+            return vectors;
+        }
+
+        /**
+         * @return Whether {@link #data()} holds every row
+         */
+        public boolean hasFullPrecision() {
+            return fullPrecision;
+        }
+
+        /**
+         * @return Whether {@link #codes()} holds every row
+         */
+        public boolean isQuantized() {
+            return quantized;
+        }
+
+        /**
+         * @return The quantizer encoding the rows, null if the store is not quantized
+         */
+        public VectorQuantizer quantizer() {
+            return quantizer;
+        }
+
+        /**
+         * @return The backing array of codes, row r starting at index r * codeSize.
+         *         Must not be read past {@link #rows()}.
+         */
+        public byte[] codes() {
+            return codes;
+        }
+
+        public int codeSize() {
+            return codeSize;
+        }
+
+        /**
+         * @return Number of quantized search candidates to re-rank in full precision, 0 to disable re-ranking
+         */
+        public int rerankCandidates() {
+            return rerankCandidates;
+        }
+
+        public boolean isDeleted(int row) {
+            return deleted.get(row);
+        }
+
+        public String id(int row) {
+            return ids[row];
+        }
+
+        /**
+         * @param row The row to copy
+         * @return A copy of the vector stored in the row, decoded from its code if full precision is not kept
+         */
+        public float[] vector(int row) {
+            if (fullPrecision) {
+                return Arrays.copyOfRange(vectors, row * dimension, (row + 1) * dimension);
+            }
+            return quantizer.decode(codes, row * codeSize, dimension);
+        }
+
+        /**
+         * @return Number of rows that are not tombstones
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return Number of compactions before the publication. A row holds the same vector in every
+         *         snapshot published between two compactions.
+         */
+        public int compactions() {
+            return compactions;
+        }
+    }
+}
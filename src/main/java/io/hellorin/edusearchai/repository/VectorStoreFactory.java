@@ -0,0 +1,63 @@
+package io.hellorin.edusearchai.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the vector stores of the in-memory repositories according to the configured storage mode:
+ * <ul>
+ *     <li>none: full precision floats only</li>
+ *     <li>int8: one signed byte per component, see {@link ScalarInt8Quantizer}</li>
+ *     <li>pq: one byte per subspace, see {@link ProductQuantizer}</li>
+ * </ul>
+ */
+@Component
+public class VectorStoreFactory {
+
+    private final String quantization;
+    private final int rerankCandidates;
+    private final int pqSubspaces;
+    private final int pqTrainingRows;
+
+    /**
+     * Creates a factory for full precision stores.
+     */
+    public VectorStoreFactory() {
+        this("none", 0, 96, 4096);
+    }
+
+    /**
+     * @param quantization Storage mode, one of none, int8 or pq
+     * @param rerankCandidates Number of quantized candidates re-ranked in full precision, 0 to disable
+     * @param pqSubspaces Number of product quantization subspaces, i.e. bytes per vector
+     * @param pqTrainingRows Number of vectors collected before the product quantizer is trained
+     */
+    @Autowired
+    public VectorStoreFactory(@Value("${app.search.quantization:none}") String quantization,
+                              @Value("${app.search.quantization.rerank-candidates:0}") int rerankCandidates,
+                              @Value("${app.search.quantization.pq-subspaces:96}") int pqSubspaces,
+                              @Value("${app.search.quantization.pq-training-rows:4096}") int pqTrainingRows) {
+        if (!"none".equalsIgnoreCase(quantization) && !"int8".equalsIgnoreCase(quantization)
+                && !"pq".equalsIgnoreCase(quantization)) {
+            throw new IllegalArgumentException("Unknown quantization: " + quantization);
+        }
+        this.quantization = quantization;
+        this.rerankCandidates = rerankCandidates;
+        this.pqSubspaces = pqSubspaces;
+        this.pqTrainingRows = pqTrainingRows;
+    }
+
+    /**
+     * @return A new, empty vector store using the configured storage mode
+     */
+    public VectorStore create() {
+        if ("int8".equalsIgnoreCase(quantization)) {
+            return new VectorStore(true, new ScalarInt8Quantizer(), rerankCandidates);
+        }
+        if ("pq".equalsIgnoreCase(quantization)) {
+            return new VectorStore(true, new ProductQuantizer(pqSubspaces, pqTrainingRows), rerankCandidates);
+        }
+        return new VectorStore();
+    }
+}
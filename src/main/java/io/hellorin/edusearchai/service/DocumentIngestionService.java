@@ -0,0 +1,277 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Ingests PDF files through a staged pipeline, so that files are processed concurrently instead of one after another:
+ * <ul>
+ *     <li>parse and chunk: CPU-bound, one task per file on a pool sized to the number of cores</li>
+ *     <li>embed: bound by the OpenAI API latency, on a pool limiting the number of concurrent requests</li>
+ *     <li>index: a single thread replacing the previous documents of each file in the repository with its new
+ *     ones, so that each file is searchable as soon as it is embedded</li>
+ * </ul>
+ * The chunks of a file are handed to the embed stage in fixed-size batches while the file is still being
+ * parsed, and at most as many batches per file as the embed concurrency wait for or are being embedded:
+ * parsing pauses when embedding falls behind, so the chunk text held by a file is bounded by its batches
+ * rather than by the whole file. At most a configured number of files are in flight at once: parsing of
+ * new files waits until earlier files are indexed, and the documents of a file are released once indexed, so
+ * the documents held by an ingestion are bounded by the files in flight rather than by the whole corpus.
+ * The embedding of each batch and the indexing of each file are timed, and the indexed documents counted.
+ */
+@Service
+public class DocumentIngestionService {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIngestionService.class);
+
+    /**
+     * A PDF file to ingest.
+     *
+     * @param source Source of the documents of the file, unique among the ingested files
+     * @param resource The file
+     * @param collection Collection of the documents of the file, may be null
+     */
+    public record Pdf(String source, Resource resource, String collection) {
+    }
+
+    /**
+     * Callback notified on the index thread once the documents of a file are indexed, e.g. to persist them.
+     */
+    @FunctionalInterface
+    public interface IndexListener {
+
+        /**
+         * @param pdf The indexed file
+         * @param documents The documents of the file
+         * @throws IOException if the documents cannot be processed, failing the ingestion
+         */
+        void indexed(Pdf pdf, List<Document> documents) throws IOException;
+    }
+
+    private final PDFProcessingService pdfProcessingService;
+    private final int parseThreads;
+    private final int embedConcurrency;
+    private final int maxPendingFiles;
+    private final int chunksPerBatch;
+    private final Timer embeddingTimer;
+    private final Timer indexingTimer;
+    private final Counter indexedDocuments;
+
+    /**
+     * @param parseThreads Number of files parsed concurrently, 0 to use the number of available processors
+     * @param embedConcurrency Number of batches of chunks embedded concurrently, also the number of batches of a file
+     *                         pending at once
+     * @param maxPendingFiles Maximum number of files being parsed, embedded or indexed at once
+     * @param chunksPerBatch Number of chunks of a file handed to the embed stage at once
+     */
+    @Autowired
+    public DocumentIngestionService(PDFProcessingService pdfProcessingService,
+                                    @Value("${app.ingestion.parse-threads:0}") int parseThreads,
+                                    @Value("${app.ingestion.embed-concurrency:4}") int embedConcurrency,
+                                    @Value("${app.ingestion.max-pending-files:16}") int maxPendingFiles,
+                                    @Value("${app.ingestion.chunks-per-batch:100}") int chunksPerBatch,
+                                    MeterRegistry meterRegistry) {
+        this.pdfProcessingService = pdfProcessingService;
+        this.parseThreads = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        this.embedConcurrency = Math.max(1, embedConcurrency);
+        this.maxPendingFiles = Math.max(1, maxPendingFiles);
+        this.chunksPerBatch = Math.max(1, chunksPerBatch);
+        this.embeddingTimer = Timer.builder("edusearch.ingestion.embedding")
+                .description("Embedding of a batch of chunks of a PDF").register(meterRegistry);
+        this.indexingTimer = Timer.builder("edusearch.ingestion.indexing")
+                .description("Saving of the documents of a PDF into their repository").register(meterRegistry);
+        this.indexedDocuments = Counter.builder("edusearch.ingestion.documents")
+                .description("Documents indexed").register(meterRegistry);
+    }
+
+    /**
+     * Parses, chunks, embeds and indexes PDF files.
+     *
+     * @param pdfs The PDF files to ingest
+     * @param repository The repository receiving the documents
+     * @return Number of indexed documents
+     * @throws IOException if a file cannot be read
+     */
+    public int ingest(List<Pdf> pdfs, DocumentRepository repository) throws IOException {
+        return ingest(pdfs, repository, (pdf, documents) -> { });
+    }
+
+    /**
+     * Parses, chunks, embeds and indexes PDF files. The documents of each file replace those of its source in a
+     * single repository batch, so a file being re-ingested stays searchable until its new documents are ready.
+     * If a file fails, the files indexed before the failure keep their new documents and the others their
+     * previous ones.
+     *
+     * @param pdfs The PDF files to ingest
+     * @param repository The repository receiving the documents
+     * @param listener Callback notified once the documents of each file are indexed
+     * @return Number of indexed documents
+     * @throws IOException if a file cannot be read or the listener fails
+     */
+    public int ingest(List<Pdf> pdfs, DocumentRepository repository, IndexListener listener) throws IOException {
+        ExecutorService parsePool = Executors.newFixedThreadPool(parseThreads, threadFactory("ingest-parse-"));
+        ExecutorService embedPool = Executors.newFixedThreadPool(embedConcurrency, threadFactory("ingest-embed-"));
+        ExecutorService indexPool = Executors.newSingleThreadExecutor(threadFactory("ingest-index-"));
+        Semaphore pendingFiles = new Semaphore(maxPendingFiles);
+        List<CompletableFuture<Integer>> files = new ArrayList<>(pdfs.size());
+        try {
+            for (Pdf pdf : pdfs) {
+                pendingFiles.acquire();
+                CompletableFuture<Integer> file = CompletableFuture
+                        .supplyAsync(() -> parseAndEmbed(pdf, embedPool), parsePool)
+                        .thenCompose(DocumentIngestionService::concat)
+                        .thenApplyAsync(documents -> {
+                            documents.forEach(document -> document.setCollection(pdf.collection()));
+                            indexingTimer.record(() -> repository.replaceSources(List.of(pdf.source()), documents));
+                            indexedDocuments.increment(documents.size());
+                            logger.info("Indexed {} chunks of {}", documents.size(), pdf.source());
+                            try {
+                                listener.indexed(pdf, documents);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return documents.size();
+                        }, indexPool);
+                file.whenComplete((documents, e) -> pendingFiles.release());
+                files.add(file);
+            }
+
+            int documents = 0;
+            for (CompletableFuture<Integer> file : files) {
+                documents += file.join();
+            }
+            return documents;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while ingesting documents");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        } finally {
+            parsePool.shutdownNow();
+            embedPool.shutdownNow();
+            indexPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses a file, submitting its chunks to the embed stage batch by batch as they are extracted.
+     *
+     * @return The embedding of each batch, in order
+     */
+    private List<CompletableFuture<List<Document>>> parseAndEmbed(Pdf pdf, ExecutorService embedPool) {
+        ChunkBatcher batcher = new ChunkBatcher(pdf, embedPool);
+        try (InputStream in = pdf.resource().getInputStream()) {
+            pdfProcessingService.extractChunks(in, batcher);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + pdf.resource().getFilename(), e);
+        }
+        batcher.submit();
+        return batcher.batches;
+    }
+
+    private static CompletableFuture<List<Document>> concat(List<CompletableFuture<List<Document>>> batches) {
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            List<Document> documents = new ArrayList<>();
+            batches.forEach(batch -> documents.addAll(batch.join()));
+            return documents;
+        });
+    }
+
+    /**
+     * Collects the chunks of a file into batches, submitting each full batch to the embed stage.
+     * Blocks the parsing thread while the file already has as many batches pending as the embed concurrency.
+     */
+    private final class ChunkBatcher implements Consumer<String> {
+        private final Pdf pdf;
+        private final ExecutorService embedPool;
+        private final Semaphore pendingBatches = new Semaphore(embedConcurrency);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final List<CompletableFuture<List<Document>>> batches = new ArrayList<>();
+        private List<String> batch = new ArrayList<>(chunksPerBatch);
+        private int submittedChunks;
+
+        ChunkBatcher(Pdf pdf, ExecutorService embedPool) {
+            this.pdf = pdf;
+            this.embedPool = embedPool;
+        }
+
+        @Override
+        public void accept(String chunk) {
+            batch.add(chunk);
+            if (batch.size() == chunksPerBatch) {
+                submit();
+            }
+        }
+
+        /**
+         * Submits the chunks collected so far, if any.
+         */
+        void submit() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                pendingBatches.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while parsing "
+                        + pdf.resource().getFilename()));
+            }
+            // Stop parsing a file whose embedding already failed
+            if (failure.get() != null) {
+                pendingBatches.release();
+                throw new CompletionException(failure.get());
+            }
+            List<String> chunks = batch;
+            int firstChunk = submittedChunks;
+            CompletableFuture<List<Document>> embedded = CompletableFuture.supplyAsync(() ->
+                    embeddingTimer.record(() -> pdfProcessingService.embedChunks(pdf.resource().getFilename(),
+                            pdf.source(), firstChunk, chunks)), embedPool);
+            embedded.whenComplete((documents, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, e);
+                }
+                pendingBatches.release();
+            });
+            batches.add(embedded);
+            submittedChunks += chunks.size();
+            batch = new ArrayList<>(chunksPerBatch);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
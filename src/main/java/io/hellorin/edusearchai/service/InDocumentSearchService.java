@@ -1,73 +1,513 @@
 package io.hellorin.edusearchai.service;
 
+import io.hellorin.edusearchai.component.AnswerCacheComponent;
+import io.hellorin.edusearchai.component.ContextAssemblyComponent;
+import io.hellorin.edusearchai.component.SorryClassifier;
+import io.hellorin.edusearchai.component.TokenEstimator;
+import io.hellorin.edusearchai.model.AnswerPart;
 import io.hellorin.edusearchai.model.Document;
-import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
-import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.hellorin.edusearchai.model.DocumentFilter;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Answers questions from the course documents, completed by the student's notes.
+ * <p>
+ * The answer is assembled as an asynchronous flow, so independent stages overlap instead of adding up:
+ * <ul>
+ *     <li>the query embedding is computed once; if it takes longer than its timeout, retrieval falls back
+ *     to lexical search</li>
+ *     <li>notes retrieval runs concurrently with the course answer</li>
+ *     <li>whether the course answer is a sorry message is decided locally by the {@link SorryClassifier},
+ *     so the sidenotes answer starts as soon as the course answer is known; only answers the classifier is
+ *     unsure about are checked by the chat model, when the LLM fallback is enabled</li>
+ * </ul>
+ * The retrieved documents are re-ranked, de-duplicated and packed into a token budget by the
+ * {@link ContextAssemblyComponent} before being sent to the chat model.
+ * <p>
+ * Answers are cached by the {@link AnswerCacheComponent}: a question asked before, in the same words or in
+ * similar ones, is answered from the cache as long as the documents have not changed.
+ * <p>
+ * A {@link DocumentFilter} restricts the course documents an answer is computed from; the notes completing it
+ * are always searched as a whole, since they are the student's own and not organized by course.
+ * <p>
+ * Each LLM call is timed and the estimated tokens of its prompt counted, by call, as well as whole answers.
+ * Each LLM call has its own timeout. A course answer timing out fails the search, while a timed out sorry
+ * check or sidenotes answer only drops the sidenotes. Timed out calls are cancelled, interrupting the thread
+ * running them so that a blocked HTTP call releases it.
+ * <p>
+ * The same flow can stream the answers token by token as the chat model produces them, the course answer
+ * first and then the sidenotes answer. Streamed calls time out when the chat model stays silent longer than
+ * the LLM timeout.
+ */
 @Service
 public class InDocumentSearchService {
+    private static final Logger logger = LoggerFactory.getLogger(InDocumentSearchService.class);
+
+    /**
+     * The LLM calls of the search flow, each with its own meters.
+     */
+    private enum LlmCall {
+        COURSE, SORRY_CHECK, SIDENOTES
+    }
+
+    private record LlmMeters(Timer timer, Counter promptTokens) {
+    }
 
     private final ChatModel chatModel;
-    private final OpenAIEmbeddingService embeddingService;
-    private final InMemoryDocumentRepository documentRepository;
-    private final InMemoryNotesDocumentRepository inMemoryNotesDocumentRepository;
+    private final RetrievalService retrievalService;
+    private final SorryClassifier sorryClassifier;
+    private final AnswerCacheComponent answerCache;
+    private final ContextAssemblyComponent contextAssembler;
+    private final DocumentRepository documentRepository;
+    private final DocumentRepository notesDocumentRepository;
+    private final ExecutorService executor;
+    private final long embeddingTimeoutMillis;
+    private final long llmTimeoutMillis;
+    private final boolean sorryLlmFallback;
+    private final Map<LlmCall, LlmMeters> llmMeters = new EnumMap<>(LlmCall.class);
+    private final Timer answerTimer;
+    private final Timer streamedAnswerTimer;
 
+    /**
+     * @param threads Number of threads running the blocking stages of searches
+     * @param embeddingTimeoutMillis Time after which a query is searched lexically instead of waiting for its embedding
+     * @param llmTimeoutMillis Timeout of each LLM call
+     * @param sorryLlmFallback Whether course answers the sorry classifier is unsure about are checked by the
+     *                        chat model, instead of by the most likely class
+     */
     @Autowired
     public InDocumentSearchService(ChatModel chatModel,
-                                   OpenAIEmbeddingService embeddingService,
-                                   InMemoryDocumentRepository documentRepository, 
-                                   InMemoryNotesDocumentRepository inMemoryNotesDocumentRepository) {
+                                   RetrievalService retrievalService,
+                                   SorryClassifier sorryClassifier,
+                                   AnswerCacheComponent answerCache,
+                                   ContextAssemblyComponent contextAssembler,
+                                   @Qualifier("documentRepository") DocumentRepository documentRepository, 
+                                   @Qualifier("notesDocumentRepository") DocumentRepository notesDocumentRepository,
+                                   @Value("${app.search.async.threads:32}") int threads,
+                                   @Value("${app.search.timeout.embedding-ms:2000}") long embeddingTimeoutMillis,
+                                   @Value("${app.search.timeout.llm-ms:30000}") long llmTimeoutMillis,
+                                   @Value("${app.search.sorry.llm-fallback:false}") boolean sorryLlmFallback,
+                                   MeterRegistry meterRegistry) {
         this.chatModel = chatModel;
-        this.embeddingService = embeddingService;
+        this.retrievalService = retrievalService;
+        this.sorryClassifier = sorryClassifier;
+        this.answerCache = answerCache;
+        this.contextAssembler = contextAssembler;
         this.documentRepository = documentRepository;
-        this.inMemoryNotesDocumentRepository = inMemoryNotesDocumentRepository;
+        this.notesDocumentRepository = notesDocumentRepository;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "search-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.embeddingTimeoutMillis = embeddingTimeoutMillis;
+        this.llmTimeoutMillis = llmTimeoutMillis;
+        this.sorryLlmFallback = sorryLlmFallback;
+        for (LlmCall call : LlmCall.values()) {
+            String name = call.name().toLowerCase(Locale.ROOT);
+            llmMeters.put(call, new LlmMeters(
+                    Timer.builder("edusearch.llm.calls").tag("call", name)
+                            .description("Calls to the chat model").register(meterRegistry),
+                    Counter.builder("edusearch.llm.prompt.tokens").tag("call", name)
+                            .description("Estimated tokens of the prompts sent to the chat model").register(meterRegistry)));
+        }
+        this.answerTimer = Timer.builder("edusearch.search.answers").tag("mode", "blocking")
+                .description("Answers to questions, cached or not").register(meterRegistry);
+        this.streamedAnswerTimer = Timer.builder("edusearch.search.answers").tag("mode", "stream")
+                .description("Answers to questions, cached or not").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 
     public String searchAndAnswer(String query) {
-        // Get query embedding
-        List<Float> queryEmbedding = embeddingService.generateEmbedding(query);
-        
-        // Find most relevant documents
-        List<Document> relevantDocs = documentRepository.findSimilarDocuments(queryEmbedding, 3);
-        
-        // Get course content response
-        String courseContent = getCourseContentResponse(query, relevantDocs);
+        return searchAndAnswer(query, DocumentFilter.ALL);
+    }
+
+    /**
+     * Answers a query from the course documents matching a filter, blocking until the answer is known.
+     *
+     * @param query The question
+     * @param filter The filter of the course documents
+     * @return The course answer, followed by the sidenotes answer unless the course answer is a sorry message
+     */
+    public String searchAndAnswer(String query, DocumentFilter filter) {
+        try {
+            return searchAndAnswerAsync(query, filter).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    /**
+     * Starts answering a query without blocking the caller.
+     *
+     * @param query The question
+     * @return The course answer, followed by the sidenotes answer unless the course answer is a sorry message
+     */
+    public CompletableFuture<String> searchAndAnswerAsync(String query) {
+        return searchAndAnswerAsync(query, DocumentFilter.ALL);
+    }
+
+    /**
+     * Starts answering a query from the course documents matching a filter without blocking the caller.
+     *
+     * @param query The question
+     * @param filter The filter of the course documents
+     * @return The course answer, followed by the sidenotes answer unless the course answer is a sorry message
+     */
+    public CompletableFuture<String> searchAndAnswerAsync(String query, DocumentFilter filter) {
+        Timer.Sample sample = Timer.start();
+        return searchAndAnswerUntimed(query, filter).whenComplete((answer, e) -> sample.stop(answerTimer));
+    }
+
+    private CompletableFuture<String> searchAndAnswerUntimed(String query, DocumentFilter filter) {
+        // Look the question up by its text, then by its embedding
+        long generation = repositoriesGeneration();
+        List<AnswerPart> cached = answerCache.get(query, filter, null, generation);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(joinAnswer(cached));
+        }
+        return embedQuery(query).thenCompose(embedding -> {
+            List<AnswerPart> similar = answerCache.get(query, filter, embedding, generation);
+            if (similar != null) {
+                return CompletableFuture.completedFuture(joinAnswer(similar));
+            }
+            return answer(query, filter, embedding, generation);
+        });
+    }
+
+    private CompletableFuture<String> answer(String query, DocumentFilter filter, float[] embedding, long generation) {
+        // Find the most relevant documents and get the course content response,
+        // while the most relevant note documents are found
+        CompletableFuture<String> rawCourseContent = stage(() ->
+                getCourseContentResponse(query, embedding, retrievalService.retrieve(documentRepository, query, embedding,
+                        contextAssembler.getCandidates(), filter)),
+                llmTimeoutMillis);
+        CompletableFuture<String> courseContent = rawCourseContent.thenApply(SorryClassifier::stripMarker);
+        CompletableFuture<List<Document>> relevantNoteDocs = CompletableFuture.supplyAsync(() ->
+                retrievalService.retrieve(notesDocumentRepository, query, embedding,
+                        contextAssembler.getCandidates(), DocumentFilter.ALL), executor);
 
         // Check if it's a sorry message
-        if (checkIfNoSorryMessage(courseContent)) {
-            // Find most relevant note documents
-            List<Document> relevantNoteDocs = inMemoryNotesDocumentRepository.findSimilarDocuments(queryEmbedding, 3);
-            
-            // Get sidenotes response
-            String sidenotesContent = getSidenotesResponse(courseContent, relevantNoteDocs);
-            
-            return courseContent + "\n\n" + sidenotesContent;
-        } else {
-            return courseContent;
+        CompletableFuture<Boolean> noSorryMessage = rawCourseContent
+                .thenCompose(this::isNoSorryMessage)
+                .exceptionally(e -> {
+                    logger.warn("Sorry check failed, answering without sidenotes: {}", e.getMessage());
+                    return false;
+                });
+
+        // Get sidenotes response once the course answer is known not to be a sorry message
+        CompletableFuture<String> sidenotesContent = noSorryMessage.thenCompose(noSorry -> noSorry
+                ? sidenotesResponse(courseContent, embedding, relevantNoteDocs)
+                : CompletableFuture.completedFuture(null));
+
+        return courseContent.thenCompose(content -> noSorryMessage.thenCompose(noSorry -> {
+            AnswerPart courseAnswer = new AnswerPart(AnswerPart.Section.COURSE, content);
+            if (!noSorry) {
+                answerCache.put(query, filter, embedding, generation, List.of(courseAnswer));
+                return CompletableFuture.completedFuture(content);
+            }
+            return sidenotesContent.handle((sidenotes, e) -> {
+                if (e != null) {
+                    // Not cached, the sidenotes may be available next time
+                    logger.warn("Sidenotes answer failed, answering without sidenotes: {}", e.getMessage());
+                    return content;
+                }
+                List<AnswerPart> answer = List.of(courseAnswer, new AnswerPart(AnswerPart.Section.SIDENOTES, sidenotes));
+                answerCache.put(query, filter, embedding, generation, answer);
+                return joinAnswer(answer);
+            });
+        }));
+    }
+
+    /**
+     * Streams the answer to a query as the chat model produces it. Nothing is requested before subscription.
+     * Cached answers are streamed as one part per section.
+     *
+     * @param query The question
+     * @return The parts of the course answer, followed by the parts of the sidenotes answer unless the course
+     *         answer is a sorry message
+     */
+    public Flux<AnswerPart> searchAndAnswerStream(String query) {
+        return searchAndAnswerStream(query, DocumentFilter.ALL);
+    }
+
+    /**
+     * Streams the answer to a query from the course documents matching a filter.
+     *
+     * @param query The question
+     * @param filter The filter of the course documents
+     * @return The parts of the course answer, followed by the parts of the sidenotes answer unless the course
+     *         answer is a sorry message
+     */
+    public Flux<AnswerPart> searchAndAnswerStream(String query, DocumentFilter filter) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return searchAndAnswerStreamUntimed(query, filter).doFinally(signal -> sample.stop(streamedAnswerTimer));
+        });
+    }
+
+    private Flux<AnswerPart> searchAndAnswerStreamUntimed(String query, DocumentFilter filter) {
+        return Flux.defer(() -> {
+            // Look the question up by its text, then by its embedding
+            long generation = repositoriesGeneration();
+            List<AnswerPart> cached = answerCache.get(query, filter, null, generation);
+            if (cached != null) {
+                return Flux.fromIterable(cached);
+            }
+            return Mono.fromFuture(embedQuery(query).thenApply(Optional::ofNullable)).flatMapMany(optionalEmbedding -> {
+                float[] embedding = optionalEmbedding.orElse(null);
+                List<AnswerPart> similar = answerCache.get(query, filter, embedding, generation);
+                if (similar != null) {
+                    return Flux.fromIterable(similar);
+                }
+                return answerStream(query, filter, embedding, generation);
+            });
+        });
+    }
+
+    private Flux<AnswerPart> answerStream(String query, DocumentFilter filter, float[] embedding, long generation) {
+        CompletableFuture<List<Document>> relevantDocs = CompletableFuture.supplyAsync(() ->
+                retrievalService.retrieve(documentRepository, query, embedding,
+                        contextAssembler.getCandidates(), filter), executor);
+        CompletableFuture<List<Document>> relevantNoteDocs = CompletableFuture.supplyAsync(() ->
+                retrievalService.retrieve(notesDocumentRepository, query, embedding,
+                        contextAssembler.getCandidates(), DocumentFilter.ALL), executor);
+
+        // Stream the course answer, keeping it whole for the sorry check, the sidenotes prompt and the cache
+        StringBuilder rawCourseContent = new StringBuilder();
+        StringBuilder courseContent = new StringBuilder();
+        StringBuilder sidenotesContent = new StringBuilder();
+        AtomicBoolean sidenotesFailed = new AtomicBoolean();
+        MarkerFilter markerFilter = new MarkerFilter();
+        Flux<AnswerPart> courseParts = Mono.fromFuture(relevantDocs)
+                .flatMapMany(docs -> stream(createCoursePrompt(query, embedding, docs), LlmCall.COURSE))
+                .doOnNext(rawCourseContent::append)
+                .map(markerFilter::accept)
+                .concatWith(Mono.fromSupplier(markerFilter::flush))
+                .filter(text -> !text.isEmpty())
+                .doOnNext(courseContent::append)
+                .map(text -> new AnswerPart(AnswerPart.Section.COURSE, text));
+
+        Flux<AnswerPart> sidenotesParts = Mono.defer(() -> Mono.fromFuture(
+                        isNoSorryMessage(rawCourseContent.toString())))
+                .flatMapMany(noSorry -> !noSorry ? Flux.<String>empty() : Mono.fromFuture(relevantNoteDocs)
+                        .flatMapMany(noteDocs -> stream(createSidenotesPrompt(
+                                SorryClassifier.stripMarker(rawCourseContent.toString()), embedding, noteDocs),
+                                LlmCall.SIDENOTES)))
+                .doOnNext(sidenotesContent::append)
+                .map(text -> new AnswerPart(AnswerPart.Section.SIDENOTES, text))
+                .onErrorResume(e -> {
+                    logger.warn("Sidenotes answer failed, answering without sidenotes: {}", e.getMessage());
+                    sidenotesFailed.set(true);
+                    return Flux.empty();
+                });
+
+        return courseParts.concatWith(sidenotesParts).doOnComplete(() -> {
+            // Not cached if the sidenotes failed, they may be available next time
+            if (sidenotesFailed.get()) {
+                return;
+            }
+            List<AnswerPart> answer = new ArrayList<>();
+            answer.add(new AnswerPart(AnswerPart.Section.COURSE, courseContent.toString()));
+            if (!sidenotesContent.isEmpty()) {
+                answer.add(new AnswerPart(AnswerPart.Section.SIDENOTES, sidenotesContent.toString()));
+            }
+            answerCache.put(query, filter, embedding, generation, answer);
+        });
+    }
+
+    /**
+     * @return A number changing whenever the documents of either repository change
+     */
+    private long repositoriesGeneration() {
+        return documentRepository.getGeneration() + notesDocumentRepository.getGeneration();
+    }
+
+    /**
+     * Joins the parts of an answer: the course answer, followed by the sidenotes answer if any.
+     */
+    private static String joinAnswer(List<AnswerPart> answer) {
+        StringBuilder course = new StringBuilder();
+        StringBuilder sidenotes = new StringBuilder();
+        for (AnswerPart part : answer) {
+            (part.section() == AnswerPart.Section.COURSE ? course : sidenotes).append(part.text());
         }
+        return sidenotes.isEmpty() ? course.toString() : course.append("\n\n").append(sidenotes).toString();
+    }
+
+    /**
+     * Gets the query embedding, null when searching lexically or when it fails or takes too long.
+     */
+    private CompletableFuture<float[]> embedQuery(String query) {
+        return stage(() -> retrievalService.embedQuery(query), embeddingTimeoutMillis)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        logger.warn("Query embedding timed out after {} ms, falling back to lexical search",
+                                embeddingTimeoutMillis);
+                    } else {
+                        logger.warn("Query embedding failed, falling back to lexical search: {}", cause.toString());
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Calls the chat model, recording the call in the meters of its kind.
+     */
+    private String call(Prompt prompt, LlmCall call) {
+        LlmMeters meters = llmMeters.get(call);
+        meters.promptTokens().increment(TokenEstimator.estimate(prompt.getContents()));
+        return meters.timer().record(() -> ChatClient.builder(chatModel).build().prompt(prompt).call().content());
+    }
+
+    /**
+     * Streams the answer of the chat model, recording the call from subscription to the last token.
+     */
+    private Flux<String> stream(Prompt prompt, LlmCall call) {
+        LlmMeters meters = llmMeters.get(call);
+        return Flux.defer(() -> {
+            meters.promptTokens().increment(TokenEstimator.estimate(prompt.getContents()));
+            Timer.Sample sample = Timer.start();
+            return ChatClient.builder(chatModel).build().prompt(prompt)
+                    .stream().content()
+                    .timeout(Duration.ofMillis(llmTimeoutMillis))
+                    .doFinally(signal -> sample.stop(meters.timer()));
+        });
     }
 
-    private String getCourseContentResponse(String query, List<Document> relevantDocs) {
-        String context = relevantDocs.stream()
-                .map(doc -> String.format("Title: %s%nSource: %s%nContent: %s",
-                    doc.getTitle(), doc.getSource(), doc.getContent()))
-                .collect(Collectors.joining("\n\n"));
+    /**
+     * Removes the not found marker from the start of a streamed answer, holding back the first tokens
+     * while they may still be part of it.
+     */
+    private static final class MarkerFilter {
+        private final StringBuilder held = new StringBuilder();
+        private boolean released;
+
+        /**
+         * @return The text to emit for the token, possibly empty
+         */
+        String accept(String token) {
+            if (released) {
+                return token;
+            }
+            held.append(token);
+            String text = held.toString().stripLeading();
+            if (text.startsWith(SorryClassifier.NOT_FOUND_MARKER)) {
+                text = text.substring(SorryClassifier.NOT_FOUND_MARKER.length()).stripLeading();
+            } else if (SorryClassifier.NOT_FOUND_MARKER.startsWith(text)) {
+                return "";
+            }
+            if (text.isEmpty()) {
+                return "";
+            }
+            released = true;
+            held.setLength(0);
+            return text;
+        }
+
+        /**
+         * @return The text still held back at the end of the answer, possibly empty
+         */
+        String flush() {
+            return released ? "" : SorryClassifier.stripMarker(held.toString());
+        }
+    }
+
+    /**
+     * Classifies the course answer locally, asking the chat model only if the classifier is unsure
+     * and the LLM fallback is enabled.
+     */
+    private CompletableFuture<Boolean> isNoSorryMessage(String content) {
+        return switch (sorryClassifier.classify(content)) {
+            case SORRY -> CompletableFuture.completedFuture(false);
+            case ANSWER -> CompletableFuture.completedFuture(true);
+            case UNSURE -> sorryLlmFallback
+                    ? stage(() -> checkIfNoSorryMessage(SorryClassifier.stripMarker(content)), llmTimeoutMillis)
+                    : CompletableFuture.completedFuture(sorryClassifier.sorryProbability(content) < 0.5);
+        };
+    }
+
+    private CompletableFuture<String> sidenotesResponse(CompletableFuture<String> courseContent, float[] embedding,
+                                                        CompletableFuture<List<Document>> relevantNoteDocs) {
+        return courseContent.thenCombine(relevantNoteDocs, (content, noteDocs) ->
+                stage(() -> getSidenotesResponse(content, embedding, noteDocs), llmTimeoutMillis))
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Runs a blocking task on the search executor, failing with a TimeoutException if it takes too long.
+     * The task is then cancelled, interrupting its thread so that a blocked HTTP call does not keep holding it.
+     */
+    private <T> CompletableFuture<T> stage(Supplier<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private String getCourseContentResponse(String query, float[] embedding, List<Document> relevantDocs) {
+        return call(createCoursePrompt(query, embedding, relevantDocs), LlmCall.COURSE);
+    }
+
+    private Prompt createCoursePrompt(String query, float[] embedding, List<Document> relevantDocs) {
+        String context = contextAssembler.assemble(relevantDocs, embedding);
 
         PromptTemplate promptTemplate = new PromptTemplate("""
             You are a helpful educational assistant that answers questions based on the provided course context.
             Always mention your sources at the end.
-            If the answer cannot be found in the course context, say so and say a sorry message.
+            If the answer cannot be found in the course context, start your answer with <NOT_FOUND>,
+            then say so and say a sorry message.
             
             Course Context:
             {context}
@@ -76,13 +516,10 @@ public class InDocumentSearchService {
             
             Answer:""");
 
-        Prompt prompt = promptTemplate.create(Map.of(
+        return promptTemplate.create(Map.of(
                 "context", context,
                 "query", query
         ));
-
-        return ChatClient.builder(chatModel).build().prompt(prompt)
-                .call().content();
     }
 
     private boolean checkIfNoSorryMessage(String message) {
@@ -99,17 +536,17 @@ public class InDocumentSearchService {
                 "message", message
         ));
 
-        var response = Optional.ofNullable(ChatClient.builder(chatModel).build().prompt(sorryPrompt)
-                .call().content());
+        var response = Optional.ofNullable(call(sorryPrompt, LlmCall.SORRY_CHECK));
                 
         return response.map(r -> !r.contains("<SORRY>")).orElse(false);
     }
 
-    private String getSidenotesResponse(String courseContent, List<Document> relevantNoteDocs) {
-        String sidenotes = relevantNoteDocs.stream()
-                .map(doc -> String.format("Title: %s%nSource: %s%nContent: %s",
-                        doc.getTitle(), doc.getSource(), doc.getContent()))
-                .collect(Collectors.joining("\n\n"));
+    private String getSidenotesResponse(String courseContent, float[] embedding, List<Document> relevantNoteDocs) {
+        return call(createSidenotesPrompt(courseContent, embedding, relevantNoteDocs), LlmCall.SIDENOTES);
+    }
+
+    private Prompt createSidenotesPrompt(String courseContent, float[] embedding, List<Document> relevantNoteDocs) {
+        String sidenotes = contextAssembler.assemble(relevantNoteDocs, embedding);
 
         PromptTemplate sideNotesPromptTemplate = new PromptTemplate("""
                 You are a helpful educational assistant that answers questions based on the provided course context answer and the sidenotes that was written by the student.
@@ -122,12 +559,9 @@ public class InDocumentSearchService {
                 
                 Answer:""");
 
-        Prompt sideNotesprompt = sideNotesPromptTemplate.create(Map.of(
+        return sideNotesPromptTemplate.create(Map.of(
                 "sidenotes", sidenotes,
                 "query", courseContent
         ));
-
-        return ChatClient.builder(chatModel).build().prompt(sideNotesprompt)
-                .call().content();
     }
 } 
\ No newline at end of file
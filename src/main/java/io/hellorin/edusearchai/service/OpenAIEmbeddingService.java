@@ -1,40 +1,167 @@
 package io.hellorin.edusearchai.service;
 
+import io.hellorin.edusearchai.component.EmbeddingCacheComponent;
+import io.hellorin.edusearchai.component.TokenEstimator;
 import io.hellorin.edusearchai.model.Document;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.IntStream;
 
 /**
  * Service class responsible for generating embeddings using OpenAI's embedding model.
  * This service provides functionality to convert text into vector embeddings and process documents
  * by generating embeddings for their content.
+ * Embeddings are cached by model and text hash, so identical texts are only sent to OpenAI once.
+ * Many texts can be embedded at once, in requests bounded by a number of inputs and an estimated token budget.
+ * Embedding requests are timed, by query or batch, and the estimated tokens sent are counted.
  */
 @Service
 public class OpenAIEmbeddingService {
     
     private final OpenAiEmbeddingModel embeddingModel;
+    private final EmbeddingCacheComponent embeddingCache;
+    private final String modelName;
+    private final int batchSize;
+    private final int maxTokensPerRequest;
+    private final Timer queryTimer;
+    private final Timer batchTimer;
+    private final Counter tokensSent;
     
+    /**
+     * @param batchSize Maximum number of texts sent in one embedding request
+     * @param maxTokensPerRequest Maximum estimated number of tokens sent in one embedding request
+     */
     @Autowired
-    public OpenAIEmbeddingService(OpenAiEmbeddingModel embeddingModel) {
+    public OpenAIEmbeddingService(OpenAiEmbeddingModel embeddingModel,
+                                  EmbeddingCacheComponent embeddingCache,
+                                  @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}")
+                                  String modelName,
+                                  @Value("${app.embedding.batch-size:100}") int batchSize,
+                                  @Value("${app.embedding.max-tokens-per-request:100000}") int maxTokensPerRequest,
+                                  MeterRegistry meterRegistry) {
         this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.modelName = modelName;
+        this.batchSize = batchSize;
+        this.maxTokensPerRequest = maxTokensPerRequest;
+        this.queryTimer = Timer.builder("edusearch.embedding.requests").tag("type", "query")
+                .description("Embedding requests sent to the embedding model").register(meterRegistry);
+        this.batchTimer = Timer.builder("edusearch.embedding.requests").tag("type", "batch")
+                .description("Embedding requests sent to the embedding model").register(meterRegistry);
+        this.tokensSent = Counter.builder("edusearch.embedding.tokens")
+                .description("Estimated tokens sent to the embedding model").register(meterRegistry);
     }
     
     /**
-     * Generates an embedding vector for the given text using OpenAI's embedding model.
+     * Generates an embedding vector for the given text using OpenAI's embedding model,
+     * or returns the cached embedding if the same text was embedded before.
      * @param text The input text to generate embedding for
-     * @return List of Float values representing the embedding vector
+     * @return Primitive float array representing the embedding vector
      */
-    public List<Float> generateEmbedding(String text) {
-        float[] output = embeddingModel.call(new EmbeddingRequest(List.of(text), null)).getResult().getOutput();
-        return IntStream.range(0, output.length)
-                .mapToObj(i -> output[i])
-                .toList();
+    public float[] generateEmbedding(String text) {
+        String key = embeddingCache.key(modelName, text);
+        float[] cached = embeddingCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        tokensSent.increment(TokenEstimator.estimate(text));
+        List<Embedding> results = queryTimer.record(() ->
+                embeddingModel.call(new EmbeddingRequest(List.of(text), null)).getResults());
+        if (results.size() != 1) {
+            throw new IllegalStateException("Embedding request of 1 text returned " + results.size() + " embeddings");
+        }
+        float[] embedding = results.get(0).getOutput();
+        embeddingCache.put(key, embedding);
+        return embedding;
+    }
+
+    /**
+     * Generates the embeddings of many texts, sending the texts that are not cached yet in batches.
+     * A batch is closed when it reaches the configured number of texts or when adding the next text
+     * would exceed the configured token budget; a single text is never split.
+     * @param texts The input texts to generate embeddings for
+     * @return The embedding of each text, in the order of the texts
+     * @throws IllegalStateException if the model does not return exactly one embedding per text of a batch
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        float[][] embeddings = new float[texts.size()][];
+        // Texts to embed, by cache key, with the positions they appear at
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        Map<String, String> pendingTexts = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = embeddingCache.key(modelName, texts.get(i));
+            List<Integer> positions = pending.get(key);
+            if (positions != null) {
+                positions.add(i);
+                continue;
+            }
+            float[] cached = embeddingCache.get(key);
+            if (cached != null) {
+                embeddings[i] = cached;
+            } else {
+                pending.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                pendingTexts.put(key, texts.get(i));
+            }
+        }
+
+        List<String> batchKeys = new ArrayList<>();
+        int batchTokens = 0;
+        int batch = 0;
+        for (Map.Entry<String, String> entry : pendingTexts.entrySet()) {
+            int tokens = TokenEstimator.estimate(entry.getValue());
+            if (!batchKeys.isEmpty() && (batchKeys.size() >= batchSize || batchTokens + tokens > maxTokensPerRequest)) {
+                embedBatch(batch++, batchKeys, pendingTexts, pending, embeddings);
+                batchKeys.clear();
+                batchTokens = 0;
+            }
+            batchKeys.add(entry.getKey());
+            batchTokens += tokens;
+        }
+        if (!batchKeys.isEmpty()) {
+            embedBatch(batch, batchKeys, pendingTexts, pending, embeddings);
+        }
+        return List.of(embeddings);
+    }
+
+    private void embedBatch(int batch, List<String> batchKeys, Map<String, String> texts,
+                            Map<String, List<Integer>> positions, float[][] embeddings) {
+        List<String> inputs = batchKeys.stream().map(texts::get).toList();
+        tokensSent.increment(inputs.stream().mapToInt(TokenEstimator::estimate).sum());
+        List<Embedding> results = batchTimer.record(() ->
+                embeddingModel.call(new EmbeddingRequest(inputs, null)).getResults());
+        // The first text of the batch, to find it in the input texts
+        int firstPosition = positions.get(batchKeys.get(0)).get(0);
+        if (results.size() != inputs.size()) {
+            throw new IllegalStateException("Embedding batch " + batch + " of " + inputs.size()
+                    + " texts, starting at text " + firstPosition + ", returned " + results.size() + " embeddings");
+        }
+        boolean[] embedded = new boolean[inputs.size()];
+        for (int i = 0; i < results.size(); i++) {
+            Embedding result = results.get(i);
+            int input = result.getIndex() != null ? result.getIndex() : i;
+            if (input < 0 || input >= inputs.size() || embedded[input]) {
+                throw new IllegalStateException("Embedding batch " + batch + " of " + inputs.size()
+                        + " texts, starting at text " + firstPosition + ", returned an embedding for index " + input);
+            }
+            embedded[input] = true;
+            String key = batchKeys.get(input);
+            embeddingCache.put(key, result.getOutput());
+            for (int position : positions.get(key)) {
+                embeddings[position] = result.getOutput();
+            }
+        }
     }
     
     /**
@@ -54,4 +181,22 @@ public class OpenAIEmbeddingService {
         document.setTimestamp(System.currentTimeMillis());
         return document;
     }
+
+    /**
+     * Processes many documents from the same source, generating their embeddings in batches.
+     * @param titles The title of each document
+     * @param contents The content of each document to be embedded, in the order of the titles
+     * @param source The source of the documents
+     * @return New Document instances with generated embeddings and metadata, in the order of the titles
+     */
+    public List<Document> processDocuments(List<String> titles, List<String> contents, String source) {
+        List<float[]> embeddings = generateEmbeddings(contents);
+        long timestamp = System.currentTimeMillis();
+        List<Document> documents = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            documents.add(new Document(UUID.randomUUID().toString(), titles.get(i), contents.get(i),
+                    embeddings.get(i), source, timestamp));
+        }
+        return documents;
+    }
 } 
\ No newline at end of file
@@ -1,34 +1,105 @@
 package io.hellorin.edusearchai.service;
 
+import io.hellorin.edusearchai.component.CharacterChunker;
+import io.hellorin.edusearchai.component.Chunker;
+import io.hellorin.edusearchai.component.SentenceChunker;
 import io.hellorin.edusearchai.model.Document;
-import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service responsible for processing PDF files and converting them into searchable documents.
  * This service handles PDF text extraction, chunking, and embedding generation for document search functionality.
+ * Each step is also exposed on its own, so that an ingestion pipeline can run them on different executors.
+ * <p>
+ * In streaming mode, the default, a PDF is parsed with PDFBox buffering its content in a temporary file
+ * beyond a configured amount of heap, and its text is extracted a few pages at a time and chunked as it
+ * arrives. The heap needed to extract a large book is then bounded by a range of pages rather than by
+ * the whole book held as raw bytes, parsed document and text at the same time.
+ * <p>
+ * Text is split by the configured {@link Chunker}: "sentence" (the default) sizes chunks in estimated
+ * tokens and keeps sentences whole, with some overlap between chunks; "character" cuts every chunk size
+ * characters at a word boundary.
+ * <p>
+ * The time spent extracting and chunking each PDF is recorded by two timers.
  */
 @Service
 public class PDFProcessingService {
-    
+
     private final OpenAIEmbeddingService embeddingService;
-    private final InMemoryDocumentRepository documentRepository;
-    
+    private final Chunker chunker;
+    private final boolean streaming;
+    private final long maxMainMemoryBytes;
+    private final int pagesPerExtraction;
+    private final Timer extractionTimer;
+    private final Timer chunkingTimer;
+
+    /**
+     * @param chunker The chunker splitting extracted text
+     * @param streaming Whether PDFs are extracted page range by page range instead of all at once
+     * @param maxMainMemoryBytes Heap PDFBox may use to buffer a PDF in streaming mode before using a temporary file
+     * @param pagesPerExtraction Number of pages extracted at once in streaming mode
+     */
     public PDFProcessingService(OpenAIEmbeddingService embeddingService,
-                              InMemoryDocumentRepository documentRepository) {
+                                Chunker chunker,
+                                boolean streaming,
+                                long maxMainMemoryBytes,
+                                int pagesPerExtraction,
+                                MeterRegistry meterRegistry) {
         this.embeddingService = embeddingService;
-        this.documentRepository = documentRepository;
+        this.chunker = chunker;
+        this.streaming = streaming;
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+        this.pagesPerExtraction = Math.max(1, pagesPerExtraction);
+        this.extractionTimer = Timer.builder("edusearch.ingestion.extraction")
+                .description("Text extraction of a PDF").register(meterRegistry);
+        this.chunkingTimer = Timer.builder("edusearch.ingestion.chunking")
+                .description("Chunking of the text of a PDF").register(meterRegistry);
+    }
+
+    /**
+     * @param chunker Either "sentence" or "character"
+     * @param chunkSize The maximum size of each chunk, in estimated tokens for "sentence", in characters for "character"
+     * @param chunkOverlap Estimated tokens of the previous chunk repeated at the start of a chunk, "sentence" only
+     */
+    @Autowired
+    public PDFProcessingService(OpenAIEmbeddingService embeddingService,
+                                @Value("${app.pdf.chunker:sentence}") String chunker,
+                                @Value("${app.pdf.chunk-size:300}") int chunkSize,
+                                @Value("${app.pdf.chunk-overlap:40}") int chunkOverlap,
+                                @Value("${app.pdf.streaming:true}") boolean streaming,
+                                @Value("${app.pdf.max-main-memory-bytes:16777216}") long maxMainMemoryBytes,
+                                @Value("${app.pdf.pages-per-extraction:8}") int pagesPerExtraction,
+                                MeterRegistry meterRegistry) {
+        this(embeddingService, createChunker(chunker, chunkSize, chunkOverlap), streaming, maxMainMemoryBytes,
+                pagesPerExtraction, meterRegistry);
+    }
+
+    private static Chunker createChunker(String name, int chunkSize, int chunkOverlap) {
+        if ("sentence".equalsIgnoreCase(name)) {
+            return new SentenceChunker(chunkSize, chunkOverlap);
+        } else if ("character".equalsIgnoreCase(name)) {
+            return new CharacterChunker(chunkSize);
+        }
+        throw new IllegalArgumentException("Unknown chunker: " + name);
     }
     
     /**
      * Processes multiple PDF files and converts them into searchable documents.
-     * Each PDF is split into chunks of 1500 characters for better search results.
+     * Each PDF is split into chunks by the configured chunker for better search results.
      *
      * @param files List of PDF files to process
      * @return List of processed Document objects
@@ -39,7 +110,7 @@ public class PDFProcessingService {
         
         for (MultipartFile file : files) {
             // Use chunking for each file
-            documents.addAll(processPDFWithChunks(file, 1500));
+            documents.addAll(processPDFWithChunks(file, chunker));
         }
         
         return documents;
@@ -48,63 +119,151 @@ public class PDFProcessingService {
     /**
      * Processes a single PDF file by splitting it into chunks and generating embeddings.
      * The text is extracted from the PDF and split into manageable chunks for better search results.
+     * The chunks are embedded in batches, see {@link OpenAIEmbeddingService#processDocuments}.
+     * Storing the documents is left to the caller, which knows the repository they belong to.
      *
      * @param file The PDF file to process
-     * @param chunkSize The maximum size of each text chunk
+     * @param chunker The chunker splitting the text of the file
      * @return List of processed Document objects with embeddings
      * @throws IOException if there's an error reading the PDF file
      */
-    public List<Document> processPDFWithChunks(MultipartFile file, int chunkSize) throws IOException {
-        try (PDDocument document = PDDocument.load(file.getBytes())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            String fullText = stripper.getText(document);
-            
-            // Split text into chunks
-            List<String> chunks = splitIntoChunks(fullText, chunkSize);
-            List<Document> documents = new ArrayList<>();
-            
-            for (int i = 0; i < chunks.size(); i++) {
-                String chunk = chunks.get(i);
-                Document doc = embeddingService.processDocument(
-                    file.getOriginalFilename() + " - Chunk " + (i + 1),
-                    chunk,
-                        file.getOriginalFilename()
-                );
-                documents.add(doc);
-            }
-            
-            // Save all chunks to repository
-            return documentRepository.saveAll(documents);
+    public List<Document> processPDFWithChunks(MultipartFile file, Chunker chunker) throws IOException {
+        List<String> chunks;
+        try (InputStream in = file.getInputStream()) {
+            chunks = extractChunks(in, chunker);
         }
+        return embedChunks(file.getOriginalFilename(), chunks);
     }
-    
+
+    /**
+     * Extracts the text of a PDF and splits it into chunks with the configured chunker.
+     *
+     * @param in Stream of the PDF file, not closed by this method
+     * @return List of text chunks
+     * @throws IOException if there's an error reading the PDF file
+     */
+    public List<String> extractChunks(InputStream in) throws IOException {
+        return extractChunks(in, chunker);
+    }
+
     /**
-     * Splits a text into chunks of specified size, trying to break at word boundaries.
-     * This method ensures that chunks don't break words in the middle and maintains
-     * readability of the text.
+     * Extracts the text of a PDF and splits it into chunks, streaming or not depending on the configuration.
+     * This step is CPU-bound.
      *
-     * @param text The text to split into chunks
-     * @param chunkSize The maximum size of each chunk
+     * @param in Stream of the PDF file, not closed by this method
+     * @param chunker The chunker splitting the text
      * @return List of text chunks
+     * @throws IOException if there's an error reading the PDF file
      */
-    private List<String> splitIntoChunks(String text, int chunkSize) {
+    public List<String> extractChunks(InputStream in, Chunker chunker) throws IOException {
+        if (!streaming) {
+            String text = extractText(in);
+            return chunkingTimer.record(() -> chunker.chunk(text));
+        }
         List<String> chunks = new ArrayList<>();
-        int start = 0;
-        while (start < text.length()) {
-            int end = Math.min(start + chunkSize, text.length());
-            if (end < text.length()) {
-                // Try to find a good breaking point (space or newline)
-                while (end > start && !Character.isWhitespace(text.charAt(end - 1))) {
-                    end--;
-                }
-                if (end == start) {
-                    // If no good breaking point found, just cut at chunkSize
-                    end = Math.min(start + chunkSize, text.length());
-                }
+        streamChunks(in, chunker, chunks::add);
+        return chunks;
+    }
+
+    /**
+     * Extracts the text of a PDF and splits it into chunks with the configured chunker, passing each chunk on
+     * as soon as it is complete in streaming mode, so that the caller never has to hold every chunk of the PDF.
+     *
+     * @param in Stream of the PDF file, not closed by this method
+     * @param chunkConsumer Receives the chunks in order
+     * @throws IOException if there's an error reading the PDF file
+     */
+    public void extractChunks(InputStream in, Consumer<String> chunkConsumer) throws IOException {
+        if (streaming) {
+            streamChunks(in, chunker, chunkConsumer);
+        } else {
+            extractChunks(in, chunker).forEach(chunkConsumer);
+        }
+    }
+
+    /**
+     * Extracts the text of a PDF a range of pages at a time, passing each chunk on as soon as it is complete.
+     * The chunks are the same as the chunker would produce from the text of the whole PDF.
+     *
+     * @param in Stream of the PDF file, not closed by this method
+     * @param chunker The chunker splitting the text
+     * @param chunkConsumer Receives the chunks in order
+     * @throws IOException if there's an error reading the PDF file
+     */
+    public void streamChunks(InputStream in, Chunker chunker, Consumer<String> chunkConsumer) throws IOException {
+        // Both stages alternate, their times are summed to record one sample of each per PDF
+        long extractionNanos = 0;
+        long chunkingNanos = 0;
+        long start = System.nanoTime();
+        try (PDDocument document = PDDocument.load(in, MemoryUsageSetting.setupMixed(maxMainMemoryBytes))) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            StringBuilder pending = new StringBuilder();
+            int pages = document.getNumberOfPages();
+            for (int first = 1; first <= pages; first += pagesPerExtraction) {
+                stripper.setStartPage(first);
+                stripper.setEndPage(Math.min(pages, first + pagesPerExtraction - 1));
+                pending.append(stripper.getText(document));
+                long extracted = System.nanoTime();
+                extractionNanos += extracted - start;
+                // Only emit chunks that later pages cannot extend
+                int chunked = chunker.chunk(pending, false, chunkConsumer);
+                pending.delete(0, chunked);
+                start = System.nanoTime();
+                chunkingNanos += start - extracted;
             }
-            chunks.add(text.substring(start, end).trim());
-            start = end;
+            chunker.chunk(pending, true, chunkConsumer);
+            chunkingNanos += System.nanoTime() - start;
         }
-        return chunks;
+        extractionTimer.record(extractionNanos, TimeUnit.NANOSECONDS);
+        chunkingTimer.record(chunkingNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Extracts the text of a PDF. This step is CPU-bound.
+     *
+     * @param in Stream of the PDF file, not closed by this method
+     * @return The text of all pages
+     * @throws IOException if there's an error reading the PDF file
+     */
+    public String extractText(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        try (PDDocument document = PDDocument.load(in)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            return stripper.getText(document);
+        } finally {
+            extractionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Generates the embeddings of the chunks of a PDF. This step is bound by the OpenAI API latency.
+     *
+     * @param filename Filename of the PDF, used as source and in the titles of the chunks
+     * @param chunks The text chunks of the PDF
+     * @return List of Document objects with embeddings, one per chunk
+     */
+    public List<Document> embedChunks(String filename, List<String> chunks) {
+        return embedChunks(filename, filename, 0, chunks);
+    }
+
+    /**
+     * Generates the embeddings of the chunks of a PDF. This step is bound by the OpenAI API latency.
+     *
+     * The chunks may be a batch of the chunks of the PDF, starting at the given position.
+     *
+     * @param filename Filename of the PDF, used in the titles of the chunks
+     * @param source Source of the documents, e.g. the path of the PDF
+     * @param firstChunk Position of the first chunk among the chunks of the PDF, from 0
+     * @param chunks The text chunks of the PDF
+     * @return List of Document objects with embeddings, one per chunk
+     */
+    public List<Document> embedChunks(String filename, String source, int firstChunk, List<String> chunks) {
+        List<String> titles = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            titles.add(filename + " - Chunk " + (firstChunk + i + 1));
+        }
+
+        // Embed the chunks in batches rather than one request per chunk
+        return embeddingService.processDocuments(titles, chunks, source);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Retrieves the documents relevant to a query, in one of three modes:
+ * <ul>
+ *     <li>vector: similarity search with the query embedding</li>
+ *     <li>lexical: BM25 search over the document content, without computing the query embedding</li>
+ *     <li>hybrid: both rankings fused with reciprocal rank fusion, so documents found by both come first</li>
+ * </ul>
+ * In vector and hybrid modes, a query whose embedding cannot be computed falls back to the lexical search,
+ * so answers keep flowing while the embedding service is unavailable.
+ * Retrieval can be restricted to the documents matching a {@link DocumentFilter}, in every mode.
+ * Vector and lexical searches are timed by repository.
+ */
+@Service
+public class RetrievalService {
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalService.class);
+
+    /**
+     * Rank offset of reciprocal rank fusion, damping the weight of the very first ranks.
+     */
+    static final int RRF_K = 60;
+
+    public enum Mode {
+        VECTOR, LEXICAL, HYBRID
+    }
+
+    private final OpenAIEmbeddingService embeddingService;
+    private final Mode mode;
+    private final int hybridCandidates;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> searchTimers = new ConcurrentHashMap<>();
+
+    /**
+     * @param mode Either "vector", "lexical" or "hybrid"
+     * @param hybridCandidates Number of documents taken from each ranking before fusing them in hybrid mode
+     */
+    @Autowired
+    public RetrievalService(OpenAIEmbeddingService embeddingService,
+                            @Value("${app.search.retrieval:hybrid}") String mode,
+                            @Value("${app.search.hybrid.candidates:20}") int hybridCandidates,
+                            MeterRegistry meterRegistry) {
+        this.embeddingService = embeddingService;
+        this.mode = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        this.hybridCandidates = hybridCandidates;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Computes the embedding of a query, unless the lexical mode makes it unnecessary.
+     *
+     * @param query The query text
+     * @return The query embedding, or null in lexical mode or if the embedding service failed
+     */
+    public float[] embedQuery(String query) {
+        if (mode == Mode.LEXICAL) {
+            return null;
+        }
+        try {
+            return embeddingService.generateEmbedding(query);
+        } catch (RuntimeException e) {
+            logger.warn("Could not embed the query, falling back to lexical search: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the documents of a repository most relevant to a query.
+     *
+     * @param repository The repository to search
+     * @param query The query text
+     * @param queryEmbedding The query embedding from {@link #embedQuery}, null to search lexically
+     * @param limit Maximum number of documents to return
+     * @return List of documents sorted by relevance (most relevant first)
+     */
+    public List<Document> retrieve(DocumentRepository repository, String query, float[] queryEmbedding, int limit) {
+        return retrieve(repository, query, queryEmbedding, limit, DocumentFilter.ALL);
+    }
+
+    /**
+     * Retrieves the documents of a repository matching a filter that are the most relevant to a query.
+     *
+     * @param repository The repository to search
+     * @param query The query text
+     * @param queryEmbedding The query embedding from {@link #embedQuery}, null to search lexically
+     * @param limit Maximum number of documents to return
+     * @param filter The filter the documents must match
+     * @return List of documents sorted by relevance (most relevant first)
+     */
+    public List<Document> retrieve(DocumentRepository repository, String query, float[] queryEmbedding, int limit,
+                                   DocumentFilter filter) {
+        if (queryEmbedding == null || mode == Mode.LEXICAL) {
+            return findLexicalDocuments(repository, query, limit, filter);
+        }
+        if (mode == Mode.VECTOR) {
+            return findSimilarDocuments(repository, queryEmbedding, limit, filter);
+        }
+        int candidates = Math.max(limit, hybridCandidates);
+        return reciprocalRankFusion(List.of(
+                findSimilarDocuments(repository, queryEmbedding, candidates, filter),
+                findLexicalDocuments(repository, query, candidates, filter)), limit);
+    }
+
+    private List<Document> findSimilarDocuments(DocumentRepository repository, float[] queryEmbedding, int limit,
+                                                DocumentFilter filter) {
+        return searchTimer(repository, "vector").record(() ->
+                repository.findSimilarDocuments(queryEmbedding, limit, filter));
+    }
+
+    private List<Document> findLexicalDocuments(DocumentRepository repository, String query, int limit,
+                                                DocumentFilter filter) {
+        return searchTimer(repository, "lexical").record(() ->
+                repository.findLexicalDocuments(query, limit, filter));
+    }
+
+    private Timer searchTimer(DocumentRepository repository, String type) {
+        String name = repository.getClass().getSimpleName();
+        return searchTimers.computeIfAbsent(name + "/" + type, key -> Timer.builder("edusearch.search.retrieval")
+                .tag("repository", name)
+                .tag("type", type)
+                .description("Searches of a repository")
+                .register(meterRegistry));
+    }
+
+    /**
+     * Fuses rankings by summing, for each document, 1 / (RRF_K + rank) over the rankings it appears in.
+     * Only ranks are used, so rankings with incomparable scores (cosine, BM25) can be fused.
+     *
+     * @param rankings Rankings of documents, best first, identified by id
+     * @param limit Maximum number of documents to return
+     * @return The documents with the highest fused scores, best first; ties keep the order of first appearance
+     */
+    static List<Document> reciprocalRankFusion(List<List<Document>> rankings, int limit) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed());
+        return new ArrayList<>(fused.subList(0, Math.min(Math.max(limit, 0), fused.size())));
+    }
+}
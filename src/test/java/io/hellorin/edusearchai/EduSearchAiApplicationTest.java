@@ -0,0 +1,36 @@
+package io.hellorin.edusearchai;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.hellorin.edusearchai.repository.HnswDocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.repository.VectorStoreFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EduSearchAiApplicationTest {
+
+    private final MathComponent mathComponent = new MathComponent();
+    private final ParallelScanComponent parallelScanComponent = new ParallelScanComponent();
+    private final Supplier<DocumentRepository> exact = () ->
+            new InMemoryDocumentRepository(mathComponent, parallelScanComponent, new VectorStoreFactory());
+
+    @Test
+    void createRepository_ShouldSelectConfiguredIndex() {
+        assertInstanceOf(InMemoryDocumentRepository.class, create("exact"));
+        assertInstanceOf(HnswDocumentRepository.class, create("HNSW"));
+    }
+
+    @Test
+    void createRepository_ShouldRejectUnknownIndex() {
+        assertThrows(IllegalArgumentException.class, () -> create("ivf"));
+    }
+
+    private DocumentRepository create(String index) {
+        return EduSearchAiApplication.createRepository(index, exact, mathComponent, parallelScanComponent, 8, 50, 50);
+    }
+}
@@ -0,0 +1,96 @@
+package io.hellorin.edusearchai.component;
+
+import io.hellorin.edusearchai.model.AnswerPart;
+import io.hellorin.edusearchai.model.DocumentFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerCacheComponentTest {
+
+    private static final List<AnswerPart> ANSWER = List.of(new AnswerPart(AnswerPart.Section.COURSE, "Answer"));
+
+    private final AtomicLong now = new AtomicLong();
+    private final AnswerCacheComponent cache = new AnswerCacheComponent(new MathComponent(), 2, 0.9, 60, now::get);
+
+    @Test
+    void get_ShouldFindQuestionByNormalizedText() {
+        cache.put("What is a prime?", null, 0, ANSWER);
+
+        assertEquals(ANSWER, cache.get(" what IS a\tprime? ", null, 0));
+        assertNull(cache.get("What is a primer?", null, 0));
+        assertEquals(1, cache.getExactHits());
+    }
+
+    @Test
+    void get_ShouldFindSimilarQuestionAboveThreshold() {
+        cache.put("What is a prime?", new float[]{1.0f, 0.0f}, 0, ANSWER);
+
+        assertEquals(ANSWER, cache.get("Define prime numbers", new float[]{2.0f, 0.5f}, 0));
+        assertNull(cache.get("How do plants grow?", new float[]{1.0f, 1.0f}, 0));
+        assertEquals(1, cache.getSimilarHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void get_ShouldOnlyFindExactQuestionsAboveOne() {
+        AnswerCacheComponent exactOnly = new AnswerCacheComponent(new MathComponent(), 2, 2.0, 60, now::get);
+        exactOnly.put("What is a prime number?", new float[]{1.0f, 0.0f}, 0, ANSWER);
+
+        // Even an identical embedding does not make a different question share the answer
+        assertNull(exactOnly.get("What is not a prime number?", new float[]{1.0f, 0.0f}, 0));
+        assertEquals(ANSWER, exactOnly.get("what is a prime number?", new float[]{1.0f, 0.0f}, 0));
+        assertEquals(0, exactOnly.getSimilarHits());
+        assertEquals(1, exactOnly.getMisses());
+    }
+
+    @Test
+    void get_ShouldOnlyFindAnswersOfTheSameScope() {
+        DocumentFilter math = new DocumentFilter(Set.of(), Set.of("math"), null, null);
+        cache.put("What is a prime?", math, new float[]{1.0f, 0.0f}, 0, ANSWER);
+
+        assertNull(cache.get("What is a prime?", null, 0));
+        assertNull(cache.get("Define prime numbers", new float[]{2.0f, 0.5f}, 0));
+        assertEquals(ANSWER, cache.get("what is a prime?", math, null, 0));
+        assertEquals(ANSWER, cache.get("Define prime numbers",
+                new DocumentFilter(null, Set.of("math"), null, null), new float[]{2.0f, 0.5f}, 0));
+    }
+
+    @Test
+    void get_ShouldMissOnceGenerationChangedOrEntryExpired() {
+        cache.put("question", new float[]{1.0f, 0.0f}, 0, ANSWER);
+
+        assertNull(cache.get("question", null, 1));
+        assertEquals(ANSWER, cache.get("question", null, 0));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertNull(cache.get("question", new float[]{1.0f, 0.0f}, 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsedAnswers() {
+        cache.put("first", null, 0, ANSWER);
+        cache.put("second", null, 0, ANSWER);
+        cache.get("first", null, 0);
+        cache.put("third", null, 0, ANSWER);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("first", null, 0));
+        assertNull(cache.get("second", null, 0));
+    }
+
+    @Test
+    void put_ShouldDoNothingWhenDisabled() {
+        AnswerCacheComponent disabled = new AnswerCacheComponent(new MathComponent(), 0, 0.9, 60);
+        disabled.put("question", null, 0, ANSWER);
+
+        assertNull(disabled.get("question", null, 0));
+        assertEquals(0, disabled.size());
+    }
+}
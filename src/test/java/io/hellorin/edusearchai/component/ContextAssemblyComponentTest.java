@@ -0,0 +1,79 @@
+package io.hellorin.edusearchai.component;
+
+import io.hellorin.edusearchai.model.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblyComponentTest {
+
+    private final ContextAssemblyComponent assembler =
+            new ContextAssemblyComponent(new MathComponent(), 8, 1500, 0.7, 0.9);
+
+    @Test
+    void select_ShouldPreferDiverseDocumentsOverRedundantOnes() {
+        Document first = document("1", "content", new float[]{1.0f, 0.0f, 0.0f});
+        Document redundant = document("2", "content", new float[]{0.85f, 0.527f, 0.0f});
+        Document diverse = document("3", "content", new float[]{0.6f, 0.0f, 0.8f});
+        ContextAssemblyComponent balanced = new ContextAssemblyComponent(new MathComponent(), 8, 1500, 0.5, 0.9);
+
+        // The redundant document is more relevant, but mostly repeats the first one
+        List<Document> selected = balanced.select(List.of(first, redundant, diverse), new float[]{1.0f, 0.2f, 0.3f});
+
+        assertEquals(List.of("1", "3", "2"), ids(selected));
+    }
+
+    @Test
+    void select_ShouldDropNearDuplicates() {
+        Document original = document("1", "content", new float[]{1.0f, 0.0f});
+        Document duplicate = document("2", "content", new float[]{0.99f, 0.01f});
+        Document other = document("3", "content", new float[]{0.0f, 1.0f});
+
+        List<Document> selected = assembler.select(List.of(original, duplicate, other), new float[]{1.0f, 0.0f});
+
+        assertEquals(List.of("1", "3"), ids(selected));
+    }
+
+    @Test
+    void select_ShouldCompareTermsOfDocumentsWithoutEmbeddings() {
+        Document chunk = document("1", "A prime number has exactly two divisors, one and itself.", null);
+        Document overlapping = document("2", "A prime number has exactly two divisors: one and itself", null);
+        Document other = document("3", "Photosynthesis turns light into chemical energy.", null);
+
+        assertEquals(List.of("1", "3"), ids(assembler.select(List.of(chunk, overlapping, other), null)));
+    }
+
+    @Test
+    void assemble_ShouldFormatDocumentsWithinTokenBudget() {
+        ContextAssemblyComponent small = new ContextAssemblyComponent(new MathComponent(), 8, 30, 1.0, 2.0);
+        Document first = new Document("1", "Primes", "a".repeat(20), null, "math.pdf", 0L);
+        Document tooLong = new Document("2", "Primes", "b".repeat(100), null, "math.pdf", 0L);
+        Document last = new Document("3", "Primes", "c".repeat(10), null, "math.pdf", 0L);
+
+        String context = small.assemble(List.of(first, tooLong, last), null);
+
+        assertEquals("Title: Primes\nSource: math.pdf\nContent: " + "a".repeat(20)
+                + "\n\nTitle: Primes\nSource: math.pdf\nContent: " + "c".repeat(10), context);
+        assertTrue(TokenEstimator.estimate(context) <= 30);
+    }
+
+    @Test
+    void assemble_ShouldTruncateFirstDocumentLongerThanBudget() {
+        ContextAssemblyComponent small = new ContextAssemblyComponent(new MathComponent(), 8, 15, 1.0, 2.0);
+
+        String context = small.assemble(List.of(new Document("1", "Primes", "a".repeat(100), null, "math.pdf", 0L)), null);
+
+        assertEquals(TokenEstimator.chars(15), context.length());
+        assertTrue(context.startsWith("Title: Primes\nSource: math.pdf\nContent: aaa"));
+    }
+
+    private static Document document(String id, String content, float[] embedding) {
+        return new Document(id, "title " + id, content, embedding, "source.pdf", 0L);
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
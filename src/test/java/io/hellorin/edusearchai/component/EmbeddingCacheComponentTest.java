@@ -0,0 +1,85 @@
+package io.hellorin.edusearchai.component;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheComponentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void get_ShouldReturnCopyOfCachedEmbedding() {
+        EmbeddingCacheComponent cache = new EmbeddingCacheComponent(10, "", 100);
+        String key = cache.key("model", "text");
+        float[] embedding = {1.0f, 2.0f};
+
+        assertNull(cache.get(key));
+        cache.put(key, embedding);
+        embedding[0] = 5.0f;
+        float[] cached = cache.get(key);
+
+        assertArrayEquals(new float[]{1.0f, 2.0f}, cached);
+        assertNotSame(cached, cache.get(key));
+        assertEquals(2, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void key_ShouldDependOnModelAndText() {
+        EmbeddingCacheComponent cache = new EmbeddingCacheComponent(10, "", 100);
+
+        assertEquals(cache.key("model", "text"), cache.key("model", "text"));
+        assertNotEquals(cache.key("model", "text"), cache.key("other-model", "text"));
+        assertNotEquals(cache.key("model", "text"), cache.key("model", "other text"));
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsedEntry() {
+        EmbeddingCacheComponent cache = new EmbeddingCacheComponent(2, "", 100);
+        cache.put("a", new float[]{1.0f});
+        cache.put("b", new float[]{2.0f});
+        cache.get("a");
+        cache.put("c", new float[]{3.0f});
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void get_ShouldFallBackToDiskTier() {
+        EmbeddingCacheComponent cache = new EmbeddingCacheComponent(10, directory.toString(), 100);
+        String key = cache.key("model", "text");
+        cache.put(key, new float[]{1.0f, 2.0f});
+
+        EmbeddingCacheComponent restarted = new EmbeddingCacheComponent(10, directory.toString(), 100);
+
+        assertArrayEquals(new float[]{1.0f, 2.0f}, restarted.get(key));
+        assertEquals(1, restarted.getDiskHits());
+        assertArrayEquals(new float[]{1.0f, 2.0f}, restarted.get(key));
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    @Test
+    void put_ShouldStopWritingToDiskOnceTheDiskTierIsFull() {
+        EmbeddingCacheComponent cache = new EmbeddingCacheComponent(10, directory.toString(), 2);
+        cache.put(cache.key("model", "a"), new float[]{1.0f});
+        cache.put(cache.key("model", "a"), new float[]{1.0f});
+        cache.put(cache.key("model", "b"), new float[]{2.0f});
+        cache.put(cache.key("model", "c"), new float[]{3.0f});
+
+        assertEquals(2, cache.getDiskEntries());
+        assertEquals(3, cache.size());
+
+        EmbeddingCacheComponent restarted = new EmbeddingCacheComponent(10, directory.toString(), 2);
+
+        assertEquals(2, restarted.getDiskEntries());
+        assertNotNull(restarted.get(cache.key("model", "b")));
+        assertNull(restarted.get(cache.key("model", "c")));
+    }
+}
@@ -0,0 +1,107 @@
+package io.hellorin.edusearchai.component;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MathComponentTest {
+
+    private MathComponent mathComponent;
+
+    @BeforeEach
+    void setUp() {
+        mathComponent = new MathComponent();
+    }
+
+    @Test
+    void dotProductOfNormalizedVectors_ShouldMatchCosineSimilarity() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            float[] vec1 = randomVector(random, 1536);
+            float[] vec2 = randomVector(random, 1536);
+
+            double expected = mathComponent.cosineSimilarity(vec1, vec2);
+            double actual = mathComponent.dotProduct(mathComponent.normalize(vec1), mathComponent.normalize(vec2));
+
+            assertEquals(expected, actual, 1e-5);
+        }
+    }
+
+    @Test
+    void simdScorer_ShouldMatchScalarScorer() {
+        assumeTrue(MathComponent.isVectorApiEnabled());
+        MathComponent simdMathComponent = new MathComponent("simd");
+        Random random = new Random(42);
+        // Odd dimensions exercise the scalar tail loop
+        for (int dimension : new int[]{3, 17, 1536}) {
+            float[] vec1 = randomVector(random, dimension);
+            float[] vec2 = randomVector(random, dimension);
+
+            assertEquals(mathComponent.dotProduct(vec1, vec2), simdMathComponent.dotProduct(vec1, vec2), 1e-3);
+        }
+    }
+
+    @Test
+    void simdScorer_ShouldFallBackToScalarScorerWithoutVectorApi() throws Exception {
+        // The tests run with the Vector API module, so the fallback is checked in a JVM started without it
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), WithoutVectorApi.class.getName())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, process.exitValue(), output);
+        assertTrue(output.contains(ScalarVectorScorer.class.getName()), output);
+    }
+
+    @Test
+    void unknownScorer_ShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MathComponent("gpu"));
+    }
+
+    @Test
+    void normalize_ShouldReturnUnitLengthCopy() {
+        float[] vec = {3.0f, 4.0f};
+
+        float[] normalized = mathComponent.normalize(vec);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, normalized, 1e-6f);
+        assertArrayEquals(new float[]{3.0f, 4.0f}, vec);
+    }
+
+    @Test
+    void normalize_ShouldLeaveZeroVectorUnchanged() {
+        assertArrayEquals(new float[]{0.0f, 0.0f}, mathComponent.normalize(new float[]{0.0f, 0.0f}));
+    }
+
+    @Test
+    void dotProduct_ShouldRejectDifferentDimensions() {
+        assertThrows(IllegalArgumentException.class,
+                () -> mathComponent.dotProduct(new float[]{1.0f}, new float[]{1.0f, 2.0f}));
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vec = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vec[i] = (float) random.nextGaussian();
+        }
+        return vec;
+    }
+
+    /**
+     * Prints the scorer used when "simd" is requested.
+     */
+    static class WithoutVectorApi {
+        public static void main(String[] args) {
+            System.out.println(new MathComponent("simd").getVectorScorer().getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.hellorin.edusearchai.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SentenceChunkerTest {
+
+    @Test
+    void chunk_ShouldKeepSentencesWholeWithinTheTokenBudget() {
+        String text = sentences(new Random(1), 200);
+
+        List<String> chunks = new SentenceChunker(50, 0).chunk(text);
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(TokenEstimator.estimate(chunk) <= 50, chunk);
+            assertTrue(chunk.endsWith("."), chunk);
+        }
+        assertEquals(text.replaceAll("\\s+", " ").trim(), String.join(" ", chunks).replaceAll("\\s+", " "));
+    }
+
+    @Test
+    void chunk_ShouldRepeatTrailingSentencesAtTheStartOfTheNextChunk() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("Sentence ").append(i).append(" is short. ");
+        }
+
+        List<String> chunks = new SentenceChunker(50, 15).chunk(text);
+
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            String current = chunks.get(i);
+            String firstSentence = current.substring(0, current.indexOf('.') + 1);
+            String lastSentence = previous.substring(previous.lastIndexOf("Sentence"));
+            assertTrue(previous.contains(firstSentence) && current.contains(lastSentence),
+                    "chunk " + i + " does not overlap the previous one");
+            assertTrue(TokenEstimator.estimate(previous.substring(previous.indexOf(firstSentence))) <= 15);
+        }
+    }
+
+    @Test
+    void chunk_ShouldBreakParagraphsAndOverlongSentences() {
+        String word = "lorem ";
+        String text = "Title line\n\nFirst paragraph without terminator\n\n" + word.repeat(100);
+
+        List<String> chunks = new SentenceChunker(20, 0).chunk(text);
+
+        assertEquals("Title line\n\nFirst paragraph without terminator", chunks.get(0));
+        for (String chunk : chunks.subList(1, chunks.size())) {
+            assertTrue(chunk.length() <= 80);
+            assertTrue(chunk.startsWith("lorem") && chunk.endsWith("lorem"), chunk);
+        }
+    }
+
+    @Test
+    void chunk_ShouldGiveTheSameChunksWhenTextArrivesIncrementally() {
+        Random random = new Random(3);
+        String text = sentences(random, 300);
+        SentenceChunker chunker = new SentenceChunker(40, 10);
+
+        List<String> incremental = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+        int offset = 0;
+        while (offset < text.length()) {
+            int end = Math.min(text.length(), offset + 1 + random.nextInt(300));
+            pending.append(text, offset, end);
+            pending.delete(0, chunker.chunk(pending, false, incremental::add));
+            offset = end;
+        }
+        chunker.chunk(pending, true, incremental::add);
+
+        assertEquals(chunker.chunk(text), incremental);
+    }
+
+    @Test
+    void constructor_ShouldRejectOverlapOfHalfTheChunkSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SentenceChunker(100, 50));
+    }
+
+    private static String sentences(Random random, int count) {
+        String[] words = {"vector", "search", "embedding", "course", "student", "answer", "question", "index"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int length = 3 + random.nextInt(12);
+            for (int w = 0; w < length; w++) {
+                text.append(w == 0 ? "The" : words[random.nextInt(words.length)]);
+                text.append(w == length - 1 ? ". " : " ");
+            }
+            if (random.nextInt(10) == 0) {
+                text.append("\n");
+            }
+        }
+        return text.toString();
+    }
+}
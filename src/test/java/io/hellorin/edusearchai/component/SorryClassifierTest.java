@@ -0,0 +1,62 @@
+package io.hellorin.edusearchai.component;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SorryClassifierTest {
+
+    private final SorryClassifier classifier = new SorryClassifier();
+
+    @Test
+    void classify_ShouldDetectMarkedAnswers() {
+        String answer = "<NOT_FOUND> The course context does not mention it.";
+
+        assertEquals(SorryClassifier.Verdict.SORRY, classifier.classify(answer));
+        assertEquals(1.0, classifier.sorryProbability(answer));
+    }
+
+    @Test
+    void classify_ShouldDetectUnmarkedSorryMessages() {
+        assertEquals(SorryClassifier.Verdict.SORRY,
+                classifier.classify("I'm sorry, but the answer cannot be found in the provided course context."));
+        assertEquals(SorryClassifier.Verdict.SORRY,
+                classifier.classify("Désolé, le contexte du cours ne contient pas cette information."));
+        assertEquals(SorryClassifier.Verdict.SORRY, classifier.classify(""));
+    }
+
+    @Test
+    void classify_ShouldAcceptAnswersCitingSources() {
+        String answer = "Photosynthesis converts light energy into chemical energy. " + "Chlorophyll absorbs light. ".repeat(12)
+                + "\nSources: biology.pdf";
+
+        assertEquals(SorryClassifier.Verdict.ANSWER, classifier.classify(answer));
+    }
+
+    @Test
+    void classify_ShouldAcceptApologiesWithinRealAnswers() {
+        String answer = "Unfortunately, the proof is long. " + "It proceeds by induction on n. ".repeat(12)
+                + "\nSources: algebra.pdf";
+
+        assertEquals(SorryClassifier.Verdict.ANSWER, classifier.classify(answer));
+    }
+
+    @Test
+    void classify_ShouldBeUnsureAboutPartialAnswers() {
+        String answer = "The course does not cover the history of the theorem. " + "It is used as follows. ".repeat(20);
+
+        assertEquals(SorryClassifier.Verdict.UNSURE, classifier.classify(answer));
+    }
+
+    @Test
+    void stripMarker_ShouldRemoveMarker() {
+        assertEquals("Sorry, not found.", SorryClassifier.stripMarker("<NOT_FOUND>\nSorry, not found."));
+        assertEquals("Answer", SorryClassifier.stripMarker("Answer"));
+        assertNull(SorryClassifier.stripMarker(null));
+    }
+
+    @Test
+    void constructor_ShouldRejectInvertedThresholds() {
+        assertThrows(IllegalArgumentException.class, () -> new SorryClassifier(0.8, 0.2));
+    }
+}
@@ -0,0 +1,175 @@
+package io.hellorin.edusearchai.config;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.hellorin.edusearchai.repository.VectorStoreFactory;
+import io.hellorin.edusearchai.service.DocumentIngestionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DocumentLoaderTest {
+
+    @TempDir
+    Path root;
+
+    private DocumentIngestionService ingestionService;
+    private InMemoryDocumentRepository repository;
+    private Path courses;
+
+    /**
+     * Ingests each "PDF" as a single document holding its content, failing on PDFs whose content is "fail".
+     */
+    private static Integer ingest(InvocationOnMock invocation) throws IOException {
+        DocumentRepository target = invocation.getArgument(1);
+        DocumentIngestionService.IndexListener listener = invocation.getArgument(2);
+        int count = 0;
+        for (DocumentIngestionService.Pdf pdf : invocation.<List<DocumentIngestionService.Pdf>>getArgument(0)) {
+            String content = new String(pdf.resource().getInputStream().readAllBytes());
+            if (content.equals("fail")) {
+                throw new IOException("unavailable");
+            }
+            List<Document> documents = List.of(new Document(UUID.randomUUID().toString(), pdf.resource().getFilename(),
+                    content, new float[]{1.0f, 0.0f}, pdf.source(), 0L, pdf.collection()));
+            target.replaceSources(List.of(pdf.source()), documents);
+            listener.indexed(pdf, documents);
+            count++;
+        }
+        return count;
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ingestionService = mock(DocumentIngestionService.class);
+        when(ingestionService.ingest(anyList(), any(), any())).thenAnswer(DocumentLoaderTest::ingest);
+        repository = new InMemoryDocumentRepository(new MathComponent(), new ParallelScanComponent(),
+                new VectorStoreFactory());
+        courses = Files.createDirectories(root.resolve("documents/courses"));
+    }
+
+    @Test
+    void synchronize_ShouldOnlyIngestNewAndChangedFiles() throws IOException {
+        DocumentLoader loader = loader(null);
+        Files.writeString(courses.resolve("a.pdf"), "a1");
+        Files.writeString(courses.resolve("b.pdf"), "b1");
+        assertEquals(2, loader.synchronize(loader.getStandardFolders()));
+
+        Files.writeString(courses.resolve("a.pdf"), "a2");
+
+        assertEquals(1, loader.synchronize(loader.getStandardFolders()));
+        assertEquals(Set.of("a2", "b1"), repository.getDocumentsById().values().stream()
+                .map(Document::getContent).collect(Collectors.toSet()));
+        assertEquals(0, loader.synchronize(loader.getStandardFolders()));
+        verify(ingestionService, times(2)).ingest(anyList(), any(), any());
+    }
+
+    @Test
+    void synchronize_ShouldRemoveDocumentsOfDeletedFiles() throws IOException {
+        DocumentLoader loader = loader(null);
+        Files.writeString(courses.resolve("a.pdf"), "a1");
+        Files.writeString(courses.resolve("b.pdf"), "b1");
+        loader.synchronize(loader.getStandardFolders());
+
+        Files.delete(courses.resolve("b.pdf"));
+        loader.synchronize(loader.getStandardFolders());
+
+        assertEquals(1, repository.size());
+        assertEquals("documents/courses/a.pdf", repository.getDocumentsById().values().iterator().next().getSource());
+        assertEquals("courses", repository.getDocumentsById().values().iterator().next().getCollection());
+    }
+
+    @Test
+    void synchronize_ShouldKeepFilesOfTheSameNameInDifferentFolders() throws IOException {
+        DocumentLoader loader = loader(null);
+        Path publicFolder = Files.createDirectories(root.resolve("documents/public"));
+        Files.writeString(courses.resolve("a.pdf"), "course");
+        Files.writeString(publicFolder.resolve("a.pdf"), "public");
+        loader.synchronize(loader.getStandardFolders());
+
+        Files.writeString(publicFolder.resolve("a.pdf"), "public2");
+        loader.synchronize(loader.getStandardFolders());
+
+        assertEquals(Set.of("course", "public2"), repository.getDocumentsById().values().stream()
+                .map(Document::getContent).collect(Collectors.toSet()));
+        assertEquals(Set.of("documents/courses/a.pdf", "documents/public/a.pdf"),
+                loader.getStandardFolders().fingerprints().keySet());
+    }
+
+    @Test
+    void synchronize_ShouldKeepPreviousDocumentsAndRetryWhenEmbeddingFails() throws IOException {
+        DocumentLoader loader = loader(null);
+        Files.writeString(courses.resolve("a.pdf"), "a1");
+        loader.synchronize(loader.getStandardFolders());
+        long generation = repository.getGeneration();
+
+        Files.writeString(courses.resolve("a.pdf"), "fail");
+        assertThrows(IOException.class, () -> loader.synchronize(loader.getStandardFolders()));
+
+        assertEquals(generation, repository.getGeneration());
+        assertEquals("a1", repository.getDocumentsById().values().iterator().next().getContent());
+
+        Files.writeString(courses.resolve("a.pdf"), "a2");
+        assertEquals(1, loader.synchronize(loader.getStandardFolders()));
+        assertEquals("a2", repository.getDocumentsById().values().iterator().next().getContent());
+    }
+
+    @Test
+    void synchronize_ShouldRecordFilesIndexedBeforeAFailure() throws IOException {
+        Path index = root.resolve("index");
+        DocumentLoader loader = loader(index);
+        Files.writeString(courses.resolve("a.pdf"), "a1");
+        Files.writeString(courses.resolve("b.pdf"), "fail");
+
+        assertThrows(IOException.class, () -> loader.synchronize(loader.getStandardFolders()));
+
+        assertEquals(Set.of("documents/courses/a.pdf"), loader.getStandardFolders().fingerprints().keySet());
+        assertEquals(Set.of("documents/courses/a.pdf"), loader.getStandardFolders().index().fingerprints().keySet());
+        assertEquals(1, repository.size());
+
+        Files.writeString(courses.resolve("b.pdf"), "b1");
+        assertEquals(1, loader.synchronize(loader.getStandardFolders()));
+        assertEquals(2, repository.size());
+    }
+
+    @Test
+    void restoreIndex_ShouldSkipFilesIndexedDuringPreviousRuns() throws IOException {
+        Path index = root.resolve("index");
+        Files.writeString(courses.resolve("a.pdf"), "a1");
+        DocumentLoader firstRun = loader(index);
+        firstRun.synchronize(firstRun.getStandardFolders());
+
+        repository = new InMemoryDocumentRepository(new MathComponent(), new ParallelScanComponent(),
+                new VectorStoreFactory());
+        DocumentLoader secondRun = loader(index);
+        secondRun.getStandardFolders().fingerprints().putAll(
+                secondRun.restoreIndex(secondRun.getStandardFolders().index(), repository));
+
+        assertEquals(0, secondRun.synchronize(secondRun.getStandardFolders()));
+        assertEquals(1, repository.size());
+        verify(ingestionService, times(1)).ingest(anyList(), any(), any());
+    }
+
+    private DocumentLoader loader(Path index) {
+        InMemoryNotesDocumentRepository notesRepository = new InMemoryNotesDocumentRepository(new MathComponent(),
+                new ParallelScanComponent(), new VectorStoreFactory());
+        return new DocumentLoader(ingestionService, repository, notesRepository,
+                index != null ? index.toString() : null, root.toUri().toString(), false);
+    }
+}
@@ -1,5 +1,7 @@
 package io.hellorin.edusearchai.controller;
 
+import io.hellorin.edusearchai.model.AnswerPart;
+import io.hellorin.edusearchai.model.DocumentFilter;
 import io.hellorin.edusearchai.service.InDocumentSearchService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,8 +9,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 class InDocumentSearchControllerTest {
@@ -29,15 +37,31 @@ class InDocumentSearchControllerTest {
         // Arrange
         String query = "test query";
         String expectedAnswer = "This is a test answer";
-        when(inDocumentSearchService.searchAndAnswer(query)).thenReturn(expectedAnswer);
+        when(inDocumentSearchService.searchAndAnswer(query, DocumentFilter.ALL)).thenReturn(expectedAnswer);
 
         // Act
-        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(query);
+        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(query, null, null, null, null);
 
         // Assert
         assertEquals(200, response.getStatusCode().value());
         assertEquals(expectedAnswer, response.getBody());
-        verify(inDocumentSearchService, times(1)).searchAndAnswer(query);
+        verify(inDocumentSearchService, times(1)).searchAndAnswer(query, DocumentFilter.ALL);
+    }
+
+    @Test
+    void searchInDocuments_WithScopeParameters_FiltersCourseDocuments() {
+        // Arrange
+        String query = "test query";
+        DocumentFilter filter = new DocumentFilter(Set.of("intro.pdf"), Set.of("math", "physics"), 10L, null);
+        when(inDocumentSearchService.searchAndAnswer(query, filter)).thenReturn("Scoped answer");
+
+        // Act
+        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(query,
+                List.of("math", "physics"), List.of("intro.pdf"), 10L, null);
+
+        // Assert
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("Scoped answer", response.getBody());
     }
 
     @Test
@@ -46,22 +70,53 @@ class InDocumentSearchControllerTest {
         String query = "";
 
         // Act
-        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(query);
+        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(query, null, null, null, null);
 
         // Assert
         assertEquals(400, response.getStatusCode().value());
         assertEquals("Query cannot be empty", response.getBody());
-        verify(inDocumentSearchService, never()).searchAndAnswer(anyString());
+        verify(inDocumentSearchService, never()).searchAndAnswer(anyString(), any());
     }
 
     @Test
     void searchInDocuments_WithNullQuery_ReturnsBadRequest() {
         // Act
-        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(null);
+        ResponseEntity<String> response = inDocumentSearchController.searchInDocuments(null, null, null, null, null);
 
         // Assert
         assertEquals(400, response.getStatusCode().value());
         assertEquals("Query cannot be empty", response.getBody());
-        verify(inDocumentSearchService, never()).searchAndAnswer(anyString());
+        verify(inDocumentSearchService, never()).searchAndAnswer(anyString(), any());
+    }
+
+    @Test
+    void streamSearchInDocuments_WithValidQuery_StreamsNamedEvents() {
+        // Arrange
+        String query = "test query";
+        AnswerPart course = new AnswerPart(AnswerPart.Section.COURSE, "Course");
+        AnswerPart sidenotes = new AnswerPart(AnswerPart.Section.SIDENOTES, "Sidenotes");
+        when(inDocumentSearchService.searchAndAnswerStream(query, DocumentFilter.ALL)).thenReturn(Flux.just(course, sidenotes));
+
+        // Act
+        ResponseEntity<Flux<ServerSentEvent<?>>> response = inDocumentSearchController.streamSearchInDocuments(query, null, null, null, null);
+
+        // Assert
+        assertEquals(200, response.getStatusCode().value());
+        List<ServerSentEvent<?>> events = response.getBody().collectList().block();
+        assertEquals(List.of("course", "sidenotes"), events.stream().map(ServerSentEvent::event).toList());
+        assertEquals(List.of(course, sidenotes), events.stream().map(ServerSentEvent::data).toList());
+    }
+
+    @Test
+    void streamSearchInDocuments_WithEmptyQuery_ReturnsBadRequest() {
+        // Act
+        ResponseEntity<Flux<ServerSentEvent<?>>> response = inDocumentSearchController.streamSearchInDocuments(" ", null, null, null, null);
+
+        // Assert
+        assertEquals(400, response.getStatusCode().value());
+        ServerSentEvent<?> event = response.getBody().blockFirst();
+        assertEquals("error", event.event());
+        assertEquals("Query cannot be empty", event.data());
+        verify(inDocumentSearchService, never()).searchAndAnswerStream(anyString(), any());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package io.hellorin.edusearchai.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashTrieMapTest {
+
+    @Test
+    void withAndWithout_ShouldMatchHashMap() {
+        Random random = new Random(5);
+        Map<String, Integer> expected = new HashMap<>();
+        HashTrieMap<String, Integer> map = HashTrieMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = "key-" + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, i);
+                map = map.with(key, i);
+            }
+        }
+
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(expected.get("key-" + i), map.get("key-" + i));
+        }
+    }
+
+    @Test
+    void with_ShouldLeaveThePreviousMapUnchanged() {
+        HashTrieMap<String, Integer> first = HashTrieMap.<String, Integer>empty().with("a", 1).with("b", 2);
+
+        HashTrieMap<String, Integer> second = first.with("a", 3).without("b").with("c", 4);
+
+        assertEquals(Map.of("a", 1, "b", 2), first);
+        assertEquals(Map.of("a", 3, "c", 4), second);
+        assertSame(second, second.without("missing"));
+    }
+
+    @Test
+    void withAndWithout_ShouldKeepKeysWithEqualHashesApart() {
+        // "Aa" and "BB" have the same hash code
+        HashTrieMap<String, Integer> map = HashTrieMap.<String, Integer>empty().with("Aa", 1).with("BB", 2);
+
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(2, map.size());
+
+        HashTrieMap<String, Integer> removed = map.without("Aa");
+
+        assertNull(removed.get("Aa"));
+        assertEquals(2, removed.get("BB"));
+        assertEquals(Map.of("BB", 2), removed);
+    }
+}
@@ -0,0 +1,136 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.model.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the HNSW repository against the brute-force in-memory repository.
+ * The parameterized recall test doubles as a tuning harness: add rows to the CSV source
+ * to see how m, efConstruction and efSearch trade recall for speed.
+ */
+class HnswDocumentRepositoryTest {
+
+    private static final int DIMENSION = 32;
+    private static final int DOCUMENTS = 2000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+
+    @ParameterizedTest(name = "m={0}, efConstruction={1}, efSearch={2}")
+    @CsvSource({
+            "8, 100, 50, 0.85",
+            "16, 200, 100, 0.95"
+    })
+    void findSimilarDocuments_ShouldReachRecallOfBruteForce(int m, int efConstruction, int efSearch, double minRecall) {
+        MathComponent mathComponent = new MathComponent();
+        InMemoryDocumentRepository bruteForce =
+                new InMemoryDocumentRepository(mathComponent, new ParallelScanComponent(), new VectorStoreFactory());
+        HnswDocumentRepository hnsw = new HnswDocumentRepository(mathComponent, new ParallelScanComponent(), m, efConstruction, efSearch);
+        Random random = new Random(1);
+        List<Document> documents = randomDocuments(random, DOCUMENTS);
+        bruteForce.saveAll(documents);
+        // Insert in several batches to exercise incremental indexing
+        for (int from = 0; from < DOCUMENTS; from += 500) {
+            hnsw.saveAll(documents.subList(from, from + 500));
+        }
+
+        double recall = recallAtK(bruteForce, hnsw, random);
+
+        assertTrue(recall >= minRecall, "recall@" + K + " was " + recall);
+    }
+
+    @Test
+    void findSimilarDocuments_ShouldNotReturnReplacedVersions() {
+        HnswDocumentRepository hnsw =
+                new HnswDocumentRepository(new MathComponent(), new ParallelScanComponent(), 8, 50, 50);
+        hnsw.saveAll(List.of(document("1", new float[]{1.0f, 0.0f}), document("2", new float[]{0.0f, 1.0f})));
+        hnsw.saveAll(List.of(document("1", new float[]{0.0f, 1.0f})));
+
+        List<Document> similarDocs = hnsw.findSimilarDocuments(new float[]{1.0f, 0.0f}, 5);
+
+        assertEquals(2, similarDocs.size());
+        assertEquals(2, hnsw.size());
+        assertEquals(0.0f, similarDocs.get(0).getEmbedding()[0]);
+    }
+
+    @Test
+    void deleteBySource_ShouldRebuildGraphOnceHalfOfTheRowsAreTombstones() {
+        HnswDocumentRepository hnsw =
+                new HnswDocumentRepository(new MathComponent(), new ParallelScanComponent(), 8, 50, 50);
+        Random random = new Random(1);
+        List<Document> kept = randomDocuments(random, 40);
+        List<Document> deleted = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            deleted.add(new Document("deleted" + i, "title", "content", randomVector(random), "deleted.pdf", 0L));
+        }
+        hnsw.saveAll(kept);
+        hnsw.saveAll(deleted);
+
+        assertEquals(60, hnsw.deleteBySource("deleted.pdf"));
+
+        assertEquals(1, hnsw.snapshot().vectors().compactions());
+        assertEquals(40, hnsw.snapshot().vectors().rows());
+        for (Document document : kept) {
+            List<Document> similarDocs = hnsw.findSimilarDocuments(document.getEmbedding(), 1);
+            assertEquals(document.getId(), similarDocs.get(0).getId());
+        }
+    }
+
+    @Test
+    void findSimilarDocuments_ShouldHandleEmptyRepository() {
+        HnswDocumentRepository hnsw =
+                new HnswDocumentRepository(new MathComponent(), new ParallelScanComponent(), 8, 50, 50);
+
+        assertTrue(hnsw.findSimilarDocuments(new float[]{1.0f, 0.0f}, 5).isEmpty());
+    }
+
+    private static double recallAtK(DocumentRepository exact, DocumentRepository approximate, Random random) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVector(random);
+            Set<String> expected = new HashSet<>();
+            exact.findSimilarDocuments(query, K).forEach(doc -> expected.add(doc.getId()));
+            for (Document doc : approximate.findSimilarDocuments(query, K)) {
+                if (expected.contains(doc.getId())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static List<Document> randomDocuments(Random random, int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(document(String.valueOf(i), randomVector(random)));
+        }
+        return documents;
+    }
+
+    private static Document document(String id, float[] embedding) {
+        Document doc = new Document();
+        doc.setId(id);
+        doc.setSource("source");
+        doc.setEmbedding(embedding);
+        return doc;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vec = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vec[i] = (float) random.nextGaussian();
+        }
+        return vec;
+    }
+}
@@ -1,13 +1,25 @@
 package io.hellorin.edusearchai.repository;
 
 import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
 import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryDocumentRepositoryTest {
@@ -19,25 +31,25 @@ class InMemoryDocumentRepositoryTest {
 
     @BeforeEach
     void setUp() {
-        MathComponent mathComponent = Mockito.mock(MathComponent.class);
-        Mockito.when(mathComponent.cosineSimilarity(Mockito.anyList(), Mockito.anyList())).thenCallRealMethod();
-        repository = new InMemoryDocumentRepository(mathComponent);
+        MathComponent mathComponent = new MathComponent();
+        repository = new InMemoryDocumentRepository(mathComponent, new ParallelScanComponent(),
+                new VectorStoreFactory());
         
         // Create test documents with embeddings
         doc1 = new Document();
         doc1.setId("1");
         doc1.setSource("source1");
-        doc1.setEmbedding(Arrays.asList(1.0f, 0.0f, 0.0f));
+        doc1.setEmbedding(new float[]{1.0f, 0.0f, 0.0f});
 
         doc2 = new Document();
         doc2.setId("2");
         doc2.setSource("source1");
-        doc2.setEmbedding(Arrays.asList(0.0f, 1.0f, 0.0f));
+        doc2.setEmbedding(new float[]{0.0f, 1.0f, 0.0f});
 
         doc3 = new Document();
         doc3.setId("3");
         doc3.setSource("source2");
-        doc3.setEmbedding(Arrays.asList(0.0f, 0.0f, 1.0f));
+        doc3.setEmbedding(new float[]{0.0f, 0.0f, 1.0f});
     }
 
     @Test
@@ -54,16 +66,26 @@ class InMemoryDocumentRepositoryTest {
         repository.saveAll(Arrays.asList(doc1, doc2, doc3));
         
         // Query vector similar to doc1
-        List<Float> queryEmbedding = Arrays.asList(0.9f, 0.1f, 0.0f);
+        float[] queryEmbedding = new float[]{0.9f, 0.1f, 0.0f};
         List<Document> similarDocs = repository.findSimilarDocuments(queryEmbedding, 2);
         
         assertEquals(2, similarDocs.size());
         assertEquals("1", similarDocs.get(0).getId()); // Should be most similar to doc1
     }
 
+    @Test
+    void findSimilarDocuments_ShouldCountScannedCandidates() {
+        repository.saveAll(Arrays.asList(doc1, doc2, doc3));
+
+        repository.findSimilarDocuments(new float[]{1.0f, 0.0f, 0.0f}, 1);
+        repository.findSimilarDocuments(new float[]{0.0f, 1.0f, 0.0f}, 1);
+
+        assertEquals(6, repository.getCandidatesScanned());
+    }
+
     @Test
     void findSimilarDocuments_ShouldHandleEmptyRepository() {
-        List<Float> queryEmbedding = Arrays.asList(1.0f, 0.0f, 0.0f);
+        float[] queryEmbedding = new float[]{1.0f, 0.0f, 0.0f};
         List<Document> similarDocs = repository.findSimilarDocuments(queryEmbedding, 5);
         
         assertTrue(similarDocs.isEmpty());
@@ -77,13 +99,154 @@ class InMemoryDocumentRepositoryTest {
         
         repository.saveAll(Arrays.asList(doc1, docWithoutEmbedding));
         
-        List<Float> queryEmbedding = Arrays.asList(1.0f, 0.0f, 0.0f);
+        float[] queryEmbedding = new float[]{1.0f, 0.0f, 0.0f};
         List<Document> similarDocs = repository.findSimilarDocuments(queryEmbedding, 5);
         
         assertEquals(1, similarDocs.size());
         assertEquals("1", similarDocs.get(0).getId());
     }
 
+    @Test
+    void findSimilarDocuments_ShouldRankLikeCosineSimilarity() {
+        MathComponent mathComponent = new MathComponent();
+        Random random = new Random(7);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Document doc = new Document();
+            doc.setId(String.valueOf(i));
+            doc.setSource("source");
+            doc.setEmbedding(randomVector(random, 64));
+            documents.add(doc);
+        }
+        float[] queryEmbedding = randomVector(random, 64);
+        List<String> expectedIds = documents.stream()
+                .sorted(Comparator.comparingDouble(
+                        (Document doc) -> mathComponent.cosineSimilarity(queryEmbedding, doc.getEmbedding())).reversed())
+                .limit(5)
+                .map(Document::getId)
+                .toList();
+
+        repository.saveAll(documents);
+        List<String> actualIds = repository.findSimilarDocuments(queryEmbedding, 5).stream()
+                .map(Document::getId)
+                .toList();
+
+        assertEquals(expectedIds, actualIds);
+    }
+
+    @Test
+    void findSimilarDocuments_ShouldReturnSameResultsWhenScanningInParallel() {
+        ParallelScanComponent parallelScanComponent = new ParallelScanComponent(1, 4);
+        InMemoryDocumentRepository parallelRepository =
+                new InMemoryDocumentRepository(new MathComponent(), parallelScanComponent, new VectorStoreFactory());
+        Random random = new Random(11);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            Document doc = new Document();
+            doc.setId(String.valueOf(i));
+            doc.setSource("source");
+            doc.setEmbedding(randomVector(random, 32));
+            documents.add(doc);
+        }
+        float[] queryEmbedding = randomVector(random, 32);
+
+        repository.saveAll(documents);
+        parallelRepository.saveAll(documents);
+
+        assertEquals(repository.findSimilarDocuments(queryEmbedding, 7).stream().map(Document::getId).toList(),
+                parallelRepository.findSimilarDocuments(queryEmbedding, 7).stream().map(Document::getId).toList());
+        parallelScanComponent.shutdown();
+    }
+
+    @Test
+    void saveAll_ShouldReplaceDocumentWithSameId() {
+        repository.saveAll(Arrays.asList(doc1, doc2));
+
+        Document updatedDoc1 = new Document();
+        updatedDoc1.setId("1");
+        updatedDoc1.setSource("source1");
+        updatedDoc1.setEmbedding(new float[]{0.0f, 1.0f, 0.0f});
+        repository.saveAll(List.of(updatedDoc1));
+
+        assertEquals(2, repository.size());
+        List<Document> similarDocs = repository.findSimilarDocuments(new float[]{1.0f, 0.0f, 0.0f}, 5);
+        assertEquals(2, similarDocs.size());
+        assertEquals(0.0f, similarDocs.get(0).getEmbedding()[0]);
+    }
+
+    @Test
+    void deleteBySource_ShouldRemoveEveryDocumentOfTheSource() {
+        repository.saveAll(Arrays.asList(doc1, doc2, doc3));
+
+        assertEquals(2, repository.deleteBySource("source1"));
+        assertEquals(0, repository.deleteBySource("source1"));
+
+        assertEquals(1, repository.size());
+        List<Document> similarDocs = repository.findSimilarDocuments(new float[]{1.0f, 0.0f, 0.0f}, 5);
+        assertEquals(List.of("3"), similarDocs.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void findSimilarDocuments_ShouldOnlyScanDocumentsMatchingTheFilter() {
+        repository.saveAll(List.of(
+                new Document("1", "Primes", "prime numbers", new float[]{1.0f, 0.0f}, "a.pdf", 100L, "math"),
+                new Document("2", "Primes", "prime numbers again", new float[]{0.9f, 0.1f}, "b.pdf", 200L, "math"),
+                new Document("3", "Forces", "prime movers", new float[]{0.8f, 0.2f}, "c.pdf", 300L, "physics")));
+        float[] queryEmbedding = new float[]{1.0f, 0.0f};
+
+        assertEquals(List.of("3"), ids(repository.findSimilarDocuments(queryEmbedding, 5,
+                new DocumentFilter(null, Set.of("physics"), null, null))));
+        assertEquals(List.of("2", "3"), ids(repository.findSimilarDocuments(queryEmbedding, 5,
+                new DocumentFilter(Set.of("b.pdf", "c.pdf"), null, null, null))));
+        assertEquals(List.of("2"), ids(repository.findSimilarDocuments(queryEmbedding, 5,
+                new DocumentFilter(null, Set.of("math"), 150L, 250L))));
+        assertEquals(List.of(), repository.findSimilarDocuments(queryEmbedding, 5,
+                new DocumentFilter(Set.of("unknown.pdf"), null, null, null)));
+        // Only the rows matching the filters were scored
+        assertEquals(4, repository.getCandidatesScanned());
+
+        assertEquals(List.of("3"), ids(repository.findLexicalDocuments("prime", 5,
+                new DocumentFilter(null, Set.of("physics"), null, null))));
+    }
+
+    @Test
+    void findSimilarDocuments_ShouldFilterDocumentsSavedAfterCompaction() {
+        for (int batch = 0; batch < 3; batch++) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                documents.add(new Document("doc-" + i, "title", "content", new float[]{1.0f, i},
+                        i % 2 == 0 ? "even.pdf" : "odd.pdf", batch, "batch-" + batch));
+            }
+            // Replacing every document tombstones every previous row, which triggers a compaction
+            repository.saveAll(documents);
+        }
+
+        List<Document> similarDocs = repository.findSimilarDocuments(new float[]{1.0f, 0.0f}, 100,
+                new DocumentFilter(Set.of("even.pdf"), Set.of("batch-2"), null, null));
+
+        assertEquals(32, similarDocs.size());
+        assertTrue(similarDocs.stream().allMatch(doc -> "even.pdf".equals(doc.getSource())));
+    }
+
+    @Test
+    void restore_ShouldPublishTheNormalizedDocumentsOfTheIndex(@TempDir Path directory) throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        doc1.setEmbedding(new float[]{3.0f, 4.0f, 0.0f});
+        doc1.setContent("Photosynthesis in plants");
+        index.update(List.of(doc1, doc3), Map.of("source1", "f1", "source2", "f2"), Set.of());
+        long generation = repository.getGeneration();
+
+        assertEquals(2, repository.restore(index));
+
+        assertEquals(generation + 1, repository.getGeneration());
+        assertEquals(2, repository.size());
+        List<Document> similar = repository.findSimilarDocuments(new float[]{3.0f, 4.0f, 0.0f}, 1);
+        assertEquals("1", similar.get(0).getId());
+        assertArrayEquals(new float[]{0.6f, 0.8f, 0.0f}, similar.get(0).getEmbedding(), 1e-6f);
+        assertEquals("1", repository.findLexicalDocuments("photosynthesis", 1).get(0).getId());
+        assertEquals(1, repository.deleteBySource("source1"));
+    }
+
     @Test
     void size_ShouldReturnCorrectNumberOfDocuments() {
         assertEquals(0, repository.size());
@@ -94,4 +257,62 @@ class InMemoryDocumentRepositoryTest {
         repository.saveAll(Arrays.asList(doc3));
         assertEquals(3, repository.size());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void searches_ShouldSeeWholeBatchesWhileDocumentsAreWritten() throws InterruptedException {
+        Random random = new Random(13);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int batch = 0; batch < 200; batch++) {
+                    List<Document> documents = new ArrayList<>();
+                    for (int i = 0; i < 10; i++) {
+                        documents.add(new Document(batch + "-" + i, "Title", "shared content " + i,
+                                randomVector(random, 8), "source" + batch, 0L));
+                    }
+                    repository.saveAll(documents);
+                    repository.deleteBySource("source" + (batch - 1));
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                writing.set(false);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                float[] queryEmbedding = randomVector(new Random(17), 8);
+                while (writing.get()) {
+                    assertEquals(0, repository.findSimilarDocuments(queryEmbedding, 100).size() % 10);
+                    assertEquals(0, repository.findLexicalDocuments("shared", 100).size() % 10);
+                    assertEquals(0, repository.getDocumentsById().size() % 10);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(10, repository.size());
+        // One publication per batch and per deletion, except the first deletion which found nothing
+        assertEquals(399, repository.getGeneration());
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vec = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vec[i] = (float) random.nextGaussian();
+        }
+        return vec;
+    }
+}
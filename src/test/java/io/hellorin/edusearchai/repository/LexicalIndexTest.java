@@ -0,0 +1,100 @@
+package io.hellorin.edusearchai.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexicalIndexTest {
+
+    @Test
+    void search_ShouldRankDocumentsByBm25() {
+        LexicalIndex index = new LexicalIndex();
+        index.add("1", "Photosynthesis converts light into chemical energy.");
+        index.add("2", "The cell membrane controls what enters the cell. Photosynthesis happens in chloroplasts.");
+        index.add("3", "Mitochondria produce energy for the cell.");
+        index.publish();
+
+        assertEquals(List.of("1", "2"), index.search("photosynthesis light", 5));
+        assertEquals(List.of("3", "1"), index.search("Energy mitochondria", 5));
+        assertEquals(List.of("2"), index.search("cell photosynthesis", 1));
+        assertTrue(index.search("quantum", 5).isEmpty());
+    }
+
+    @Test
+    void search_ShouldScoreEveryDocumentMatchingAnyTerm() {
+        LexicalIndex index = new LexicalIndex();
+        index.add("both", "prime numbers");
+        for (int i = 0; i < 100; i++) {
+            index.add("prime" + i, "prime");
+            index.add("numbers" + i, "numbers");
+        }
+        index.publish();
+
+        List<String> results = index.search("prime numbers", 500);
+
+        assertEquals(201, results.size());
+        assertEquals("both", results.get(0));
+    }
+
+    @Test
+    void add_ShouldReplaceContentOfTheSameId() {
+        LexicalIndex index = new LexicalIndex();
+        index.add("1", "old content");
+        index.add("1", "new content");
+        index.publish();
+
+        assertTrue(index.search("old", 5).isEmpty());
+        assertEquals(List.of("1"), index.search("new", 5));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void delete_ShouldRemoveDocumentsAndSurviveCompaction() {
+        LexicalIndex index = new LexicalIndex();
+        for (int i = 0; i < 200; i++) {
+            index.add(String.valueOf(i), "document number " + i + (i % 2 == 0 ? " even" : " odd"));
+        }
+        for (int i = 0; i < 150; i++) {
+            assertTrue(index.delete(String.valueOf(i)));
+        }
+        index.publish();
+
+        assertFalse(index.delete("0"));
+        assertEquals(50, index.size());
+        assertEquals(List.of("199"), index.search("199", 5));
+        assertEquals(25, index.search("even", 100).size());
+    }
+
+    @Test
+    void publish_ShouldKeepPreviousSnapshotsUnchanged() {
+        LexicalIndex index = new LexicalIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(String.valueOf(i), "shared term " + i);
+        }
+        LexicalIndex.Snapshot first = index.publish();
+
+        for (int i = 0; i < 80; i++) {
+            index.delete(String.valueOf(i));
+        }
+        index.add("new", "shared fresh");
+        assertEquals(100, index.size());
+        assertTrue(index.search("fresh", 5).isEmpty());
+
+        LexicalIndex.Snapshot second = index.publish();
+
+        assertEquals(100, first.size());
+        assertEquals(List.of("5"), first.search("5", 5));
+        assertEquals(100, first.search("shared", 200).size());
+        assertEquals(21, second.size());
+        assertTrue(second.search("5", 5).isEmpty());
+        assertEquals(List.of("new"), second.search("fresh", 5));
+    }
+
+    @Test
+    void tokenize_ShouldSplitOnNonAlphanumericCharactersAndLowercase() {
+        assertEquals(List.of("héllo", "world", "42"), LexicalIndex.tokenize("Héllo, WORLD! (42)"));
+        assertTrue(LexicalIndex.tokenize(null).isEmpty());
+    }
+}
@@ -0,0 +1,150 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.model.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentVectorIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void load_ShouldRestoreAllSegmentsInOrder() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.writeSegment(List.of(document("1", "a.pdf", new float[]{1.0f, 2.0f})));
+        index.writeSegment(List.of(document("2", "b.pdf", new float[]{3.0f, 4.0f}),
+                document("3", "b.pdf", new float[]{5.0f, 6.0f})));
+
+        List<Document> documents = new PersistentVectorIndex(directory).load();
+
+        assertEquals(List.of("1", "2", "3"), documents.stream().map(Document::getId).toList());
+        assertArrayEquals(new float[]{5.0f, 6.0f}, documents.get(2).getEmbedding());
+        assertEquals("b.pdf", documents.get(1).getSource());
+        assertEquals("Content of 2 with ünïcödé", documents.get(1).getContent());
+        assertEquals(42L, documents.get(1).getTimestamp());
+        assertEquals("courses", documents.get(1).getCollection());
+    }
+
+    @Test
+    void load_ShouldRejectTruncatedVectorFiles() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        int segment = index.writeSegment(List.of(document("1", "a.pdf", new float[]{1.0f, 2.0f}),
+                document("2", "a.pdf", new float[]{3.0f, 4.0f})));
+        Path vectors = directory.resolve("segment-" + segment + ".vec");
+        byte[] bytes = Files.readAllBytes(vectors);
+
+        Files.write(vectors, Arrays.copyOf(bytes, bytes.length - Float.BYTES));
+        assertThrows(IOException.class, () -> new PersistentVectorIndex(directory).load());
+
+        Files.write(vectors, Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> new PersistentVectorIndex(directory).load());
+    }
+
+    @Test
+    void writeSegment_ShouldWriteSegmentsLargerThanTheWriteBuffer() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            float[] embedding = new float[1536];
+            Arrays.fill(embedding, i);
+            documents.add(document(String.valueOf(i), "a.pdf", embedding));
+        }
+        index.writeSegment(documents);
+
+        List<Document> loaded = new PersistentVectorIndex(directory).load();
+
+        assertEquals(100, loaded.size());
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(documents.get(i).getEmbedding(), loaded.get(i).getEmbedding());
+        }
+    }
+
+    @Test
+    void writeSegment_ShouldSkipDocumentsWithoutEmbedding() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.writeSegment(List.of(document("1", "a.pdf", null)));
+
+        assertTrue(index.load().isEmpty());
+    }
+
+    @Test
+    void load_ShouldHandEachCurrentRowToTheReader() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.update(List.of(document("1", "a.pdf", new float[]{1.0f, 2.0f}), document("2", "b.pdf", new float[]{3.0f, 4.0f})),
+                Map.of("a.pdf", "fa1", "b.pdf", "fb1"), Set.of());
+        index.update(List.of(document("3", "a.pdf", new float[]{5.0f, 6.0f})), Map.of("a.pdf", "fa2"), Set.of());
+        List<String> ids = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+
+        int read = index.load((document, embedding) -> {
+            float[] copy = new float[embedding.remaining()];
+            embedding.get(copy);
+            ids.add(document.getId());
+            embeddings.add(copy);
+        });
+
+        assertEquals(2, read);
+        assertEquals(List.of("2", "3"), ids);
+        assertArrayEquals(new float[]{5.0f, 6.0f}, embeddings.get(1));
+        // The superseded row of a.pdf is still counted, both segments being current
+        assertEquals(3, index.rows());
+    }
+
+    @Test
+    void load_ShouldIgnoreUncommittedSegments() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.writeSegment(List.of(document("1", "a.pdf", new float[]{1.0f})));
+        // A crash after writing the metadata leaves a segment without vector file
+        Files.copy(directory.resolve("segment-0.meta"), directory.resolve("segment-1.meta"));
+
+        assertEquals(1, index.load().size());
+    }
+
+    @Test
+    void update_ShouldReplaceChangedSourcesAndDropRemovedOnes() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.update(List.of(document("1", "a.pdf", new float[]{1.0f}), document("2", "b.pdf", new float[]{2.0f})),
+                Map.of("a.pdf", "fa1", "b.pdf", "fb1"), Set.of());
+        index.update(List.of(document("3", "a.pdf", new float[]{3.0f})), Map.of("a.pdf", "fa2"), Set.of());
+
+        assertEquals(List.of("2", "3"), index.load().stream().map(Document::getId).toList());
+        assertEquals(Map.of("a.pdf", "fa2", "b.pdf", "fb1"), index.fingerprints());
+
+        index.update(List.of(), Map.of(), Set.of("b.pdf"));
+
+        assertEquals(List.of("3"), index.load().stream().map(Document::getId).toList());
+        assertEquals(Map.of("a.pdf", "fa2"), index.fingerprints());
+        // Only the segment of the current a.pdf documents is left
+        assertEquals(List.of(1), index.segments());
+    }
+
+    @Test
+    void fingerprints_ShouldBeUnknownForIndexWithoutManifest() throws IOException {
+        PersistentVectorIndex index = new PersistentVectorIndex(directory);
+        index.writeSegment(List.of(document("1", "a.pdf", new float[]{1.0f})));
+
+        assertEquals(Map.of("a.pdf", ""), index.fingerprints());
+    }
+
+    @Test
+    void load_ShouldReturnNothingWhenDirectoryDoesNotExist() throws IOException {
+        assertTrue(new PersistentVectorIndex(directory.resolve("missing")).load().isEmpty());
+    }
+
+    private static Document document(String id, String source, float[] embedding) {
+        return new Document(id, source + " - Chunk " + id, "Content of " + id + " with ünïcödé", embedding, source, 42L,
+                "courses");
+    }
+}
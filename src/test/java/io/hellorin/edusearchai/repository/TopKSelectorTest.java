@@ -0,0 +1,62 @@
+package io.hellorin.edusearchai.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKSelectorTest {
+
+    @Test
+    void sortedIndices_ShouldMatchFullSort() {
+        Random random = new Random(3);
+        double[] scores = random.doubles(1000).toArray();
+        TopKSelector topK = new TopKSelector(10);
+
+        for (int i = 0; i < scores.length; i++) {
+            topK.offer(i, scores[i]);
+        }
+
+        int[] expected = IntStream.range(0, scores.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+                .limit(10)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        assertArrayEquals(expected, topK.sortedIndices());
+    }
+
+    @Test
+    void sortedIndices_ShouldReturnAllCandidatesWhenFewerThanK() {
+        TopKSelector topK = new TopKSelector(5);
+        topK.offer(0, 0.1);
+        topK.offer(1, 0.9);
+
+        assertArrayEquals(new int[]{1, 0}, topK.sortedIndices());
+        assertEquals(2, topK.size());
+    }
+
+    @Test
+    void merge_ShouldKeepBestCandidatesOfBothSelectors() {
+        TopKSelector first = new TopKSelector(2);
+        first.offer(0, 0.5);
+        first.offer(1, 0.1);
+        TopKSelector second = new TopKSelector(2);
+        second.offer(2, 0.9);
+        second.offer(3, 0.2);
+
+        first.merge(second);
+
+        assertArrayEquals(new int[]{2, 0}, first.sortedIndices());
+    }
+
+    @Test
+    void offer_ShouldKeepNothingWhenKIsZero() {
+        TopKSelector topK = new TopKSelector(0);
+        topK.offer(0, 1.0);
+
+        assertEquals(0, topK.sortedIndices().length);
+    }
+}
@@ -0,0 +1,114 @@
+package io.hellorin.edusearchai.repository;
+
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.ParallelScanComponent;
+import io.hellorin.edusearchai.model.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorQuantizerTest {
+
+    private static final int DIMENSION = 64;
+    private static final int DOCUMENTS = 1000;
+    private static final int QUERIES = 50;
+    private static final int K = 10;
+
+    private final MathComponent mathComponent = new MathComponent();
+
+    @Test
+    void int8_ShouldApproximateDotProduct() {
+        ScalarInt8Quantizer quantizer = new ScalarInt8Quantizer();
+        Random random = new Random(5);
+        float[] vector = mathComponent.normalize(randomVector(random));
+        float[] query = mathComponent.normalize(randomVector(random));
+        byte[] codes = new byte[quantizer.codeSize(DIMENSION)];
+
+        quantizer.encode(vector, 0, DIMENSION, codes, 0);
+
+        assertEquals(mathComponent.dotProduct(query, vector), quantizer.prepare(query).score(codes, 0), 0.01);
+        assertArrayEquals(vector, quantizer.decode(codes, 0, DIMENSION), 0.01f);
+    }
+
+    @Test
+    void int8Repository_ShouldReachRecallOfFullPrecision() {
+        assertTrue(recallAtK(new VectorStoreFactory("int8", 0, 8, 256)) >= 0.9);
+    }
+
+    @Test
+    void pqRepository_ShouldReachRecallOfFullPrecisionWhenReranking() {
+        double withoutRerank = recallAtK(new VectorStoreFactory("pq", 0, 16, 256));
+        double withRerank = recallAtK(new VectorStoreFactory("pq", 100, 16, 256));
+
+        assertTrue(withoutRerank >= 0.3, "recall without re-ranking was " + withoutRerank);
+        assertTrue(withRerank >= 0.9, "recall with re-ranking was " + withRerank);
+    }
+
+    @Test
+    void quantizedStore_ShouldDropFullPrecisionWithoutReranking() {
+        VectorStore store = new VectorStoreFactory("pq", 0, 16, 256).create();
+        Random random = new Random(9);
+        for (int i = 0; i < 300; i++) {
+            store.append(String.valueOf(i), mathComponent.normalize(randomVector(random)));
+        }
+        store.publish();
+
+        store.read(s -> {
+            assertTrue(s.isQuantized());
+            assertFalse(s.hasFullPrecision());
+            assertEquals(0, s.data().length);
+            assertEquals(DIMENSION, s.vector(0).length);
+            return null;
+        });
+    }
+
+    @Test
+    void factory_ShouldRejectUnknownQuantization() {
+        assertThrows(IllegalArgumentException.class, () -> new VectorStoreFactory("fp16", 0, 8, 256));
+    }
+
+    private double recallAtK(VectorStoreFactory quantizedFactory) {
+        InMemoryDocumentRepository exact =
+                new InMemoryDocumentRepository(mathComponent, new ParallelScanComponent(), new VectorStoreFactory());
+        InMemoryDocumentRepository quantized =
+                new InMemoryDocumentRepository(mathComponent, new ParallelScanComponent(), quantizedFactory);
+        Random random = new Random(1);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Document doc = new Document();
+            doc.setId(String.valueOf(i));
+            doc.setSource("source");
+            doc.setEmbedding(randomVector(random));
+            documents.add(doc);
+        }
+        exact.saveAll(documents);
+        quantized.saveAll(documents);
+
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVector(random);
+            Set<String> expected = new HashSet<>();
+            exact.findSimilarDocuments(query, K).forEach(doc -> expected.add(doc.getId()));
+            for (Document doc : quantized.findSimilarDocuments(query, K)) {
+                if (expected.contains(doc.getId())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vec = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vec[i] = (float) random.nextGaussian();
+        }
+        return vec;
+    }
+}
@@ -0,0 +1,106 @@
+package io.hellorin.edusearchai.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorStoreTest {
+
+    @Test
+    void append_ShouldPackVectorsContiguously() {
+        VectorStore store = new VectorStore();
+        store.append("a", new float[]{1.0f, 2.0f});
+        store.append("b", new float[]{3.0f, 4.0f});
+        store.publish();
+
+        store.read(s -> {
+            assertEquals(2, s.rows());
+            assertEquals(2, s.dimension());
+            assertArrayEquals(new float[]{1.0f, 2.0f, 3.0f, 4.0f}, Arrays.copyOf(s.data(), 4));
+            assertEquals("b", s.id(1));
+            return null;
+        });
+    }
+
+    @Test
+    void reserve_ShouldAllocateRoomForExpectedRowsOnce() {
+        VectorStore store = new VectorStore();
+        store.reserve(100);
+        for (int i = 0; i < 100; i++) {
+            store.append(String.valueOf(i), new float[]{i, i});
+        }
+        store.publish();
+
+        float[] data = store.snapshot().data();
+        assertEquals(200, data.length);
+        assertEquals(99.0f, data[199]);
+    }
+
+    @Test
+    void delete_ShouldTombstoneRowUntilCompaction() {
+        VectorStore store = new VectorStore();
+        store.append("a", new float[]{1.0f});
+        store.append("b", new float[]{2.0f});
+        store.append("c", new float[]{3.0f});
+
+        assertTrue(store.delete("b"));
+        assertFalse(store.delete("b"));
+        store.publish();
+        assertEquals(2, store.size());
+        assertEquals(Boolean.TRUE, store.read(s -> s.isDeleted(1)));
+
+        store.compact();
+        store.publish();
+
+        store.read(s -> {
+            assertEquals(2, s.rows());
+            assertEquals("c", s.id(1));
+            assertArrayEquals(new float[]{3.0f}, s.vector(1));
+            return null;
+        });
+    }
+
+    @Test
+    void append_ShouldTombstonePreviousRowOfSameId() {
+        VectorStore store = new VectorStore();
+        store.append("a", new float[]{1.0f});
+        store.append("a", new float[]{2.0f});
+        store.publish();
+
+        assertEquals(1, store.size());
+        assertEquals(Boolean.TRUE, store.read(s -> s.isDeleted(0)));
+    }
+
+    @Test
+    void append_ShouldRejectDifferentDimension() {
+        VectorStore store = new VectorStore();
+        store.append("a", new float[]{1.0f, 2.0f});
+
+        assertThrows(IllegalArgumentException.class, () -> store.append("b", new float[]{1.0f}));
+    }
+
+    @Test
+    void publish_ShouldKeepPreviousSnapshotsUnchanged() {
+        VectorStore store = new VectorStore();
+        store.append("a", new float[]{1.0f});
+        store.append("b", new float[]{2.0f});
+        VectorStore.Snapshot first = store.publish();
+
+        store.append("c", new float[]{3.0f});
+        store.delete("a");
+        assertEquals(2, store.snapshot().rows());
+        assertFalse(store.snapshot().isDeleted(0));
+
+        store.compact();
+        VectorStore.Snapshot second = store.publish();
+
+        assertEquals(2, first.rows());
+        assertEquals("a", first.id(0));
+        assertArrayEquals(new float[]{2.0f}, first.vector(1));
+        assertEquals(2, second.rows());
+        assertEquals("b", second.id(0));
+        assertArrayEquals(new float[]{3.0f}, second.vector(1));
+    }
+}
@@ -0,0 +1,152 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DocumentIngestionServiceTest {
+
+    private PDFProcessingService pdfProcessingService;
+    private DocumentRepository repository;
+    private final AtomicInteger embedding = new AtomicInteger();
+    private final AtomicInteger maxEmbedding = new AtomicInteger();
+    private final AtomicInteger extractedChunks = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pdfProcessingService = mock(PDFProcessingService.class);
+        repository = mock(DocumentRepository.class);
+        // The "PDF" holds its chunks as plain bytes, separated by |
+        doAnswer(invocation -> {
+            String text = new String(invocation.<InputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8);
+            for (String chunk : text.split("\\|")) {
+                extractedChunks.incrementAndGet();
+                invocation.<Consumer<String>>getArgument(1).accept(chunk);
+            }
+            return null;
+        }).when(pdfProcessingService).extractChunks(any(InputStream.class), ArgumentMatchers.<Consumer<String>>any());
+        when(pdfProcessingService.embedChunks(anyString(), anyString(), anyInt(), anyList())).thenAnswer(invocation -> {
+            maxEmbedding.accumulateAndGet(embedding.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            embedding.decrementAndGet();
+            List<Document> documents = new ArrayList<>();
+            int position = invocation.getArgument(2);
+            for (String chunk : invocation.<List<String>>getArgument(3)) {
+                documents.add(new Document(chunk, invocation.getArgument(0) + " - Chunk " + ++position, chunk,
+                        new float[]{1.0f}, invocation.getArgument(1), 0L));
+            }
+            return documents;
+        });
+    }
+
+    @Test
+    void ingest_ShouldIndexEveryFile() throws IOException {
+        DocumentIngestionService ingestionService = new DocumentIngestionService(pdfProcessingService, 4, 2, 3, 100,
+                new SimpleMeterRegistry());
+        List<DocumentIngestionService.Pdf> pdfs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pdfs.add(new DocumentIngestionService.Pdf("folder/file" + i + ".pdf", pdf("file" + i + ".pdf",
+                    "content " + i), null));
+        }
+        Map<String, List<Document>> indexed = new ConcurrentHashMap<>();
+
+        int documents = ingestionService.ingest(pdfs, repository,
+                (pdf, pdfDocuments) -> indexed.put(pdf.source(), pdfDocuments));
+
+        assertEquals(10, documents);
+        for (int i = 0; i < 10; i++) {
+            List<Document> pdfDocuments = indexed.get("folder/file" + i + ".pdf");
+            assertEquals("content " + i, pdfDocuments.get(0).getContent());
+            verify(repository).replaceSources(List.of("folder/file" + i + ".pdf"), pdfDocuments);
+        }
+        assertTrue(maxEmbedding.get() <= 2, "embedded " + maxEmbedding.get() + " files concurrently");
+    }
+
+    @Test
+    void ingest_ShouldReplaceDocumentsOfEachSourceSeparately() throws IOException {
+        DocumentIngestionService ingestionService = new DocumentIngestionService(pdfProcessingService, 2, 2, 2, 100,
+                new SimpleMeterRegistry());
+
+        ingestionService.ingest(List.of(
+                new DocumentIngestionService.Pdf("courses/a.pdf", pdf("a.pdf", "course"), "courses"),
+                new DocumentIngestionService.Pdf("public/a.pdf", pdf("a.pdf", "public"), "public")), repository);
+
+        verify(repository).replaceSources(eq(List.of("courses/a.pdf")), argThat(documents ->
+                documents.size() == 1 && documents.get(0).getCollection().equals("courses")));
+        verify(repository).replaceSources(eq(List.of("public/a.pdf")), argThat(documents ->
+                documents.size() == 1 && documents.get(0).getCollection().equals("public")));
+    }
+
+    @Test
+    void ingest_ShouldEmbedBatchesOfChunksWhileTheFileIsParsed() throws IOException {
+        DocumentIngestionService ingestionService = new DocumentIngestionService(pdfProcessingService, 1, 1, 1, 2,
+                new SimpleMeterRegistry());
+        List<Integer> extractedBeforeEmbedding = new ArrayList<>();
+        when(pdfProcessingService.embedChunks(anyString(), anyString(), anyInt(), anyList())).thenAnswer(invocation -> {
+            extractedBeforeEmbedding.add(extractedChunks.get());
+            List<Document> documents = new ArrayList<>();
+            for (String chunk : invocation.<List<String>>getArgument(3)) {
+                documents.add(new Document(chunk, "title", chunk, new float[]{1.0f}, "book.pdf", 0L));
+            }
+            return documents;
+        });
+
+        List<Document> documents = new ArrayList<>();
+
+        ingestionService.ingest(List.of(new DocumentIngestionService.Pdf("book.pdf", pdf("book.pdf", "1|2|3|4|5|6|7"),
+                null)), repository, (pdf, pdfDocuments) -> documents.addAll(pdfDocuments));
+
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7"), documents.stream().map(Document::getContent).toList());
+        InOrder order = inOrder(pdfProcessingService);
+        order.verify(pdfProcessingService).embedChunks("book.pdf", "book.pdf", 0, List.of("1", "2"));
+        order.verify(pdfProcessingService).embedChunks("book.pdf", "book.pdf", 2, List.of("3", "4"));
+        order.verify(pdfProcessingService).embedChunks("book.pdf", "book.pdf", 4, List.of("5", "6"));
+        order.verify(pdfProcessingService).embedChunks("book.pdf", "book.pdf", 6, List.of("7"));
+        // With one batch pending at a time, parsing waits for each batch to be embedded before going on
+        assertTrue(extractedBeforeEmbedding.get(0) <= 4, "embedding started after " + extractedBeforeEmbedding);
+    }
+
+    @Test
+    void ingest_ShouldPropagateParsingErrors() throws IOException {
+        DocumentIngestionService ingestionService = new DocumentIngestionService(pdfProcessingService, 2, 2, 2, 100,
+                new SimpleMeterRegistry());
+        doThrow(new IOException("corrupted")).when(pdfProcessingService)
+                .extractChunks(any(InputStream.class), ArgumentMatchers.<Consumer<String>>any());
+
+        IOException e = assertThrows(IOException.class,
+                () -> ingestionService.ingest(List.of(new DocumentIngestionService.Pdf("broken.pdf",
+                        pdf("broken.pdf", ""), null)), repository));
+
+        assertEquals("corrupted", e.getMessage());
+        verify(repository, never()).replaceSources(anyCollection(), anyList());
+    }
+
+    private static Resource pdf(String filename, String text) {
+        return new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+    }
+}
@@ -0,0 +1,250 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.component.AnswerCacheComponent;
+import io.hellorin.edusearchai.component.ContextAssemblyComponent;
+import io.hellorin.edusearchai.component.MathComponent;
+import io.hellorin.edusearchai.component.SorryClassifier;
+import io.hellorin.edusearchai.model.AnswerPart;
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.model.DocumentFilter;
+import io.hellorin.edusearchai.repository.InMemoryDocumentRepository;
+import io.hellorin.edusearchai.repository.InMemoryNotesDocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InDocumentSearchServiceTest {
+
+    private ChatModel chatModel;
+    private RetrievalService retrievalService;
+    private InMemoryDocumentRepository documentRepository;
+    private InMemoryNotesDocumentRepository notesRepository;
+    private InDocumentSearchService searchService;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong sidenotesDelayMillis = new AtomicLong();
+    private volatile String courseAnswer = "Course answer";
+
+    @BeforeEach
+    void setUp() {
+        chatModel = mock(ChatModel.class);
+        retrievalService = mock(RetrievalService.class);
+        documentRepository = mock(InMemoryDocumentRepository.class);
+        notesRepository = mock(InMemoryNotesDocumentRepository.class);
+        when(retrievalService.embedQuery(anyString())).thenReturn(new float[]{1.0f});
+        when(retrievalService.retrieve(any(), anyString(), any(), anyInt(), any()))
+                .thenReturn(List.of(new Document("1", "title", "content", null, "source", 0L)));
+        // Answers each of the three prompts of the search flow
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            String prompt = invocation.<Prompt>getArgument(0).getContents();
+            String answer;
+            if (prompt.contains("determine if a message is a sorry message")) {
+                answer = courseAnswer.startsWith("Sorry") ? "<SORRY>" : "<OK>";
+            } else if (prompt.contains("Sidenotes:")) {
+                Thread.sleep(sidenotesDelayMillis.get());
+                answer = "Sidenotes answer";
+            } else {
+                answer = courseAnswer;
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+        });
+        // Streams the answers two characters at a time
+        when(chatModel.stream(any(Prompt.class))).thenAnswer(invocation -> {
+            String prompt = invocation.<Prompt>getArgument(0).getContents();
+            String answer = prompt.contains("Sidenotes:") ? "Sidenotes answer" : courseAnswer;
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < answer.length(); i += 2) {
+                tokens.add(answer.substring(i, Math.min(i + 2, answer.length())));
+            }
+            return Flux.fromIterable(tokens)
+                    .map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+        });
+        searchService = createSearchService(false, 0);
+    }
+
+    private InDocumentSearchService createSearchService(boolean sorryLlmFallback, int cachedAnswers) {
+        return new InDocumentSearchService(chatModel, retrievalService, new SorryClassifier(),
+                new AnswerCacheComponent(new MathComponent(), cachedAnswers, 0.95, 3600),
+                new ContextAssemblyComponent(new MathComponent(), 3, 1500, 0.7, 0.9),
+                documentRepository, notesRepository, 4, 1000, 500, sorryLlmFallback, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchService.shutdown();
+    }
+
+    @Test
+    void searchAndAnswer_ShouldAppendSidenotesToCourseAnswer() {
+        assertEquals("Course answer\n\nSidenotes answer", searchService.searchAndAnswer("question"));
+        verify(retrievalService).retrieve(same(notesRepository), eq("question"), any(), eq(3), eq(DocumentFilter.ALL));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldDropSidenotesOfSorryAnswers() {
+        courseAnswer = "Sorry, the course does not cover this.";
+
+        assertEquals(courseAnswer, searchService.searchAndAnswer("question"));
+        // Neither a sorry check nor a sidenotes answer is requested from the chat model
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldStripNotFoundMarker() {
+        courseAnswer = "<NOT_FOUND> The course does not say.";
+
+        assertEquals("The course does not say.", searchService.searchAndAnswer("question"));
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldAskChatModelWhenClassifierIsUnsure() {
+        searchService.shutdown();
+        searchService = createSearchService(true, 0);
+        // Only a missing information statement, in a long answer without sources
+        courseAnswer = "The course does not cover the history of the theorem. " + "It is used as follows. ".repeat(20);
+
+        assertEquals(courseAnswer.strip() + "\n\nSidenotes answer", searchService.searchAndAnswer("question"));
+        verify(chatModel, times(3)).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldAnswerWithoutSidenotesWhenTheyTimeOut() {
+        sidenotesDelayMillis.set(2000);
+
+        assertEquals("Course answer", searchService.searchAndAnswer("question"));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldInterruptStagesThatTimeOut() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(retrievalService.embedQuery(anyString())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return new float[]{1.0f};
+        });
+
+        searchService.searchAndAnswer("question");
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldSearchLexicallyWhenEmbeddingTimesOut() {
+        when(retrievalService.embedQuery(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(3000);
+            return new float[]{1.0f};
+        });
+
+        assertEquals("Course answer\n\nSidenotes answer", searchService.searchAndAnswer("question"));
+        verify(retrievalService, times(2)).retrieve(any(), eq("question"), isNull(), eq(3), any());
+    }
+
+    @Test
+    void searchAndAnswer_ShouldSearchLexicallyWhenEmbeddingFails() {
+        when(retrievalService.embedQuery(anyString())).thenThrow(new IllegalStateException("unavailable"));
+
+        assertEquals("Course answer\n\nSidenotes answer", searchService.searchAndAnswer("question"));
+        verify(retrievalService, times(2)).retrieve(any(), eq("question"), isNull(), eq(3), any());
+    }
+
+    @Test
+    void searchAndAnswerStream_ShouldStreamCourseAnswerThenSidenotes() {
+        List<AnswerPart> parts = searchService.searchAndAnswerStream("question").collectList().block();
+
+        assertEquals("Course answer", join(parts, AnswerPart.Section.COURSE));
+        assertEquals("Sidenotes answer", join(parts, AnswerPart.Section.SIDENOTES));
+        assertEquals(AnswerPart.Section.COURSE, parts.get(0).section());
+        assertEquals(AnswerPart.Section.SIDENOTES, parts.get(parts.size() - 1).section());
+        verify(chatModel, never()).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswerStream_ShouldStripMarkerAndDropSidenotesOfSorryAnswers() {
+        courseAnswer = "<NOT_FOUND>\nSorry, the course does not cover this.";
+
+        List<AnswerPart> parts = searchService.searchAndAnswerStream("question").collectList().block();
+
+        assertEquals("Sorry, the course does not cover this.", join(parts, AnswerPart.Section.COURSE));
+        assertEquals("", join(parts, AnswerPart.Section.SIDENOTES));
+        verify(chatModel, times(1)).stream(any(Prompt.class));
+    }
+
+    private static String join(List<AnswerPart> parts, AnswerPart.Section section) {
+        StringBuilder text = new StringBuilder();
+        parts.stream().filter(part -> part.section() == section).forEach(part -> text.append(part.text()));
+        return text.toString();
+    }
+
+    @Test
+    void searchAndAnswer_ShouldAnswerRepeatedQuestionsFromCache() {
+        searchService.shutdown();
+        searchService = createSearchService(false, 10);
+
+        String answer = searchService.searchAndAnswer("What is a prime?");
+
+        assertEquals(answer, searchService.searchAndAnswer("  what is a   PRIME? "));
+        assertEquals(answer, searchService.searchAndAnswer("What are primes?"));
+        verify(chatModel, times(2)).call(any(Prompt.class));
+        // Only the first question was embedded and answered, the second was found by its text
+        verify(retrievalService, times(2)).embedQuery(anyString());
+    }
+
+    @Test
+    void searchAndAnswer_ShouldNotUseCacheOnceDocumentsChanged() {
+        searchService.shutdown();
+        searchService = createSearchService(false, 10);
+
+        searchService.searchAndAnswer("question");
+        when(documentRepository.getGeneration()).thenReturn(1L);
+        searchService.searchAndAnswer("question");
+
+        verify(chatModel, times(4)).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswerStream_ShouldStreamCachedAnswer() {
+        searchService.shutdown();
+        searchService = createSearchService(false, 10);
+
+        searchService.searchAndAnswerStream("question").collectList().block();
+        List<AnswerPart> parts = searchService.searchAndAnswerStream("question").collectList().block();
+
+        assertEquals(List.of(new AnswerPart(AnswerPart.Section.COURSE, "Course answer"),
+                new AnswerPart(AnswerPart.Section.SIDENOTES, "Sidenotes answer")), parts);
+        assertEquals("Course answer\n\nSidenotes answer", searchService.searchAndAnswer("question"));
+        verify(chatModel, times(2)).stream(any(Prompt.class));
+        verify(chatModel, never()).call(any(Prompt.class));
+    }
+
+    @Test
+    void searchAndAnswer_ShouldRecordLlmCallsByKind() {
+        searchService.searchAndAnswer("question");
+
+        assertEquals(1, meterRegistry.get("edusearch.llm.calls").tag("call", "course").timer().count());
+        assertEquals(1, meterRegistry.get("edusearch.llm.calls").tag("call", "sidenotes").timer().count());
+        assertEquals(0, meterRegistry.get("edusearch.llm.calls").tag("call", "sorry_check").timer().count());
+        assertTrue(meterRegistry.get("edusearch.llm.prompt.tokens").tag("call", "course").counter().count() > 0);
+        assertEquals(1, meterRegistry.get("edusearch.search.answers").tag("mode", "blocking").timer().count());
+    }
+}
@@ -0,0 +1,83 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.component.EmbeddingCacheComponent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OpenAIEmbeddingServiceTest {
+
+    private OpenAiEmbeddingModel embeddingModel;
+    private OpenAIEmbeddingService embeddingService;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = mock(OpenAiEmbeddingModel.class);
+        // Embeds each text as a one-dimensional vector holding its length
+        when(embeddingModel.call(any(EmbeddingRequest.class))).thenAnswer(invocation -> {
+            EmbeddingRequest request = invocation.getArgument(0);
+            List<Embedding> results = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                results.add(new Embedding(new float[]{request.getInstructions().get(i).length()}, i));
+            }
+            return new EmbeddingResponse(results);
+        });
+        embeddingService = new OpenAIEmbeddingService(embeddingModel, new EmbeddingCacheComponent(100, "", 100),
+                "model", 2, 100, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void generateEmbeddings_ShouldSendTextsInBatchesAndKeepOrder() {
+        List<float[]> embeddings = embeddingService.generateEmbeddings(List.of("a", "bb", "ccc", "dddd", "eeeee"));
+
+        assertEquals(List.of(1.0f, 2.0f, 3.0f, 4.0f, 5.0f), embeddings.stream().map(e -> e[0]).toList());
+        ArgumentCaptor<EmbeddingRequest> requests = ArgumentCaptor.forClass(EmbeddingRequest.class);
+        verify(embeddingModel, times(3)).call(requests.capture());
+        assertEquals(List.of("a", "bb"), requests.getAllValues().get(0).getInstructions());
+        assertEquals(List.of("eeeee"), requests.getAllValues().get(2).getInstructions());
+    }
+
+    @Test
+    void generateEmbeddings_ShouldRespectTokenBudget() {
+        String longText = "x".repeat(300);
+
+        embeddingService.generateEmbeddings(List.of(longText, "y".repeat(300)));
+
+        // Each text is about 75 tokens, so two texts exceed the budget of 100 tokens
+        verify(embeddingModel, times(2)).call(any(EmbeddingRequest.class));
+    }
+
+    @Test
+    void generateEmbeddings_ShouldOnlySendUncachedAndDistinctTexts() {
+        embeddingService.generateEmbedding("a");
+
+        List<float[]> embeddings = embeddingService.generateEmbeddings(List.of("a", "bb", "bb"));
+
+        assertEquals(List.of(1.0f, 2.0f, 2.0f), embeddings.stream().map(e -> e[0]).toList());
+        ArgumentCaptor<EmbeddingRequest> requests = ArgumentCaptor.forClass(EmbeddingRequest.class);
+        verify(embeddingModel, times(2)).call(requests.capture());
+        assertEquals(List.of("bb"), requests.getAllValues().get(1).getInstructions());
+    }
+
+    @Test
+    void generateEmbeddings_ShouldRejectBatchWithMissingEmbeddings() {
+        when(embeddingModel.call(any(EmbeddingRequest.class))).thenReturn(
+                new EmbeddingResponse(List.of(new Embedding(new float[]{1.0f}, 0))));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> embeddingService.generateEmbeddings(List.of("a", "bb", "ccc")));
+
+        assertEquals("Embedding batch 0 of 2 texts, starting at text 0, returned 1 embeddings", e.getMessage());
+    }
+}
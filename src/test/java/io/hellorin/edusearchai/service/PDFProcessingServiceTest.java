@@ -0,0 +1,79 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.component.CharacterChunker;
+import io.hellorin.edusearchai.component.Chunker;
+import io.hellorin.edusearchai.component.SentenceChunker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PDFProcessingServiceTest {
+
+    private static final int PAGES = 12;
+    private static byte[] pdf;
+
+    @BeforeAll
+    static void createPdf() throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int page = 0; page < PAGES; page++) {
+                PDPage pdPage = new PDPage();
+                document.addPage(pdPage);
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.newLineAtOffset(50, 700);
+                    for (int line = 0; line < 20; line++) {
+                        content.showText("Page " + page + " line " + line + " of the sample course material.");
+                        content.newLineAtOffset(0, -14);
+                    }
+                    content.endText();
+                }
+            }
+            document.save(out);
+            pdf = out.toByteArray();
+        }
+    }
+
+    @Test
+    void extractChunks_ShouldStreamTheSameChunksAsWholeDocumentExtraction() throws IOException {
+        for (Chunker chunker : List.of(new CharacterChunker(500), new SentenceChunker(120, 20))) {
+            PDFProcessingService streaming = service(chunker, true, 3);
+            PDFProcessingService whole = service(chunker, false, 3);
+
+            List<String> streamedChunks = streaming.extractChunks(new ByteArrayInputStream(pdf));
+            List<String> wholeChunks = whole.extractChunks(new ByteArrayInputStream(pdf));
+
+            assertTrue(streamedChunks.size() > PAGES / 2);
+            assertEquals(wholeChunks, streamedChunks);
+            streamedChunks.forEach(chunk -> assertTrue(chunk.length() <= 500));
+        }
+    }
+
+    @Test
+    void extractChunks_ShouldHandleChunksSpanningManyPages() throws IOException {
+        PDFProcessingService streaming = service(new SentenceChunker(100_000, 0), true, 1);
+
+        List<String> chunks = streaming.extractChunks(new ByteArrayInputStream(pdf));
+
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).startsWith("Page 0 line 0"));
+        assertTrue(chunks.get(0).contains("Page " + (PAGES - 1) + " line 19"));
+    }
+
+    private static PDFProcessingService service(Chunker chunker, boolean streaming, int pagesPerExtraction) {
+        return new PDFProcessingService(mock(OpenAIEmbeddingService.class), chunker, streaming, 1024,
+                pagesPerExtraction, new SimpleMeterRegistry());
+    }
+}
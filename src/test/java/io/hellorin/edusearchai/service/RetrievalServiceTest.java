@@ -0,0 +1,80 @@
+package io.hellorin.edusearchai.service;
+
+import io.hellorin.edusearchai.model.Document;
+import io.hellorin.edusearchai.repository.DocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RetrievalServiceTest {
+
+    private OpenAIEmbeddingService embeddingService;
+    private DocumentRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        embeddingService = mock(OpenAIEmbeddingService.class);
+        repository = mock(DocumentRepository.class);
+        when(repository.findSimilarDocuments(any(float[].class), anyInt(), any()))
+                .thenReturn(documents("a", "b", "c"));
+        when(repository.findLexicalDocuments(anyString(), anyInt(), any()))
+                .thenReturn(documents("c", "d", "a"));
+    }
+
+    @Test
+    void retrieve_ShouldFuseVectorAndLexicalRankings() {
+        RetrievalService retrievalService = new RetrievalService(embeddingService, "hybrid", 20, new SimpleMeterRegistry());
+
+        List<Document> documents = retrievalService.retrieve(repository, "query", new float[]{1.0f}, 3);
+
+        // a and c are found by both rankings, a ranks higher on average
+        assertEquals(List.of("a", "c", "b"), ids(documents));
+    }
+
+    @Test
+    void embedQuery_ShouldFallBackToLexicalSearchWhenEmbeddingFails() {
+        RetrievalService retrievalService = new RetrievalService(embeddingService, "hybrid", 20, new SimpleMeterRegistry());
+        when(embeddingService.generateEmbedding("query")).thenThrow(new IllegalStateException("unavailable"));
+
+        float[] queryEmbedding = retrievalService.embedQuery("query");
+        List<Document> documents = retrievalService.retrieve(repository, "query", queryEmbedding, 3);
+
+        assertNull(queryEmbedding);
+        assertEquals(List.of("c", "d", "a"), ids(documents));
+        verify(repository, never()).findSimilarDocuments(any(float[].class), anyInt(), any());
+    }
+
+    @Test
+    void embedQuery_ShouldNotCallTheEmbeddingServiceInLexicalMode() {
+        RetrievalService retrievalService = new RetrievalService(embeddingService, "lexical", 20, new SimpleMeterRegistry());
+
+        assertNull(retrievalService.embedQuery("query"));
+        verifyNoInteractions(embeddingService);
+    }
+
+    @Test
+    void reciprocalRankFusion_ShouldScoreByReciprocalRanks() {
+        List<Document> fused = RetrievalService.reciprocalRankFusion(
+                List.of(documents("a", "b"), documents("b"), documents("c")), 10);
+
+        // b: 1/62 + 1/61, then a and c tie at 1/61 and keep their order of first appearance
+        assertEquals(List.of("b", "a", "c"), ids(fused));
+    }
+
+    private static List<Document> documents(String... ids) {
+        return Arrays.stream(ids)
+                .map(id -> new Document(id, id, "content " + id, null, "source", 0L))
+                .toList();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}